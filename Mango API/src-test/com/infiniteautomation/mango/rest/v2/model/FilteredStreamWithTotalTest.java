@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.util.RQLUtils;
+
+/**
+ * Verifies the single pass page/total matches a full filter, sort, skip and limit of the items.
+ */
+public class FilteredStreamWithTotalTest {
+
+    private static final Comparator<Item> BY_VALUE = Comparator.comparingInt(Item::getValue);
+
+    @Test
+    public void sortedAndLimited() {
+        List<Item> items = createItems(1000);
+        assertQuery(items, "gt(value,20)&sort(value)&limit(10,5)", i -> i.getValue() > 20, BY_VALUE, 5, 10);
+        assertQuery(items, "sort(-value)&limit(25)", i -> true, BY_VALUE.reversed(), 0, 25);
+    }
+
+    @Test
+    public void offsetPastEnd() {
+        List<Item> items = createItems(100);
+        assertQuery(items, "sort(value)&limit(10,200)", i -> true, BY_VALUE, 200, 10);
+    }
+
+    @Test
+    public void unsorted() {
+        List<Item> items = createItems(100);
+        assertQuery(items, "lt(value,10)&limit(7,3)", i -> i.getValue() < 10, null, 3, 7);
+        assertQuery(items, "lt(value,10)", i -> i.getValue() < 10, null, 0, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void unlimitedIsStreamed() {
+        List<Item> items = createItems(100);
+        AtomicInteger visited = new AtomicInteger();
+        FilteredStreamWithTotal<Item> result = new FilteredStreamWithTotal<>(() -> items.stream().peek(i -> visited.incrementAndGet()),
+                RQLUtils.parseRQLtoAST("lt(value,10)"));
+
+        Stream<Item> page = result.getItems();
+        // nothing is read until the items are consumed
+        assertEquals(0, visited.get());
+        assertEquals(items.stream().filter(i -> i.getValue() < 10).collect(Collectors.toList()), page.collect(Collectors.toList()));
+        assertEquals(items.stream().filter(i -> i.getValue() < 10).count(), result.getTotal());
+    }
+
+    @Test
+    public void pageFilter() {
+        List<Item> items = createItems(1000);
+        Predicate<Item> after = i -> i.getValue() > 100;
+        FilteredStreamWithTotal<Item> result = new FilteredStreamWithTotal<>(items::stream,
+                new RQLFilterCachedJavaBean<>(RQLUtils.parseRQLtoAST("gt(value,20)&sort(value)&limit(10,2)")), after);
+
+        // total counts all matches, offset and limit apply to the items passing the page filter
+        assertEquals(items.stream().filter(i -> i.getValue() > 20).count(), result.getTotal());
+        assertEquals(items.stream().filter(after).sorted(BY_VALUE).skip(2).limit(10).collect(Collectors.toList()),
+                result.getItems().collect(Collectors.toList()));
+    }
+
+    private void assertQuery(List<Item> items, String rql, Predicate<Item> filter, Comparator<Item> sort, int offset, int limit) {
+        FilteredStreamWithTotal<Item> result = new FilteredStreamWithTotal<>(items, RQLUtils.parseRQLtoAST(rql));
+
+        List<Item> matching = items.stream().filter(filter).collect(Collectors.toList());
+        Stream<Item> expected = matching.stream();
+        if (sort != null) {
+            expected = expected.sorted(sort);
+        }
+
+        assertEquals(matching.size(), result.getTotal());
+        assertEquals(expected.skip(offset).limit(limit).collect(Collectors.toList()),
+                result.getItems().collect(Collectors.toList()));
+    }
+
+    private List<Item> createItems(int count) {
+        Random random = new Random(42);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // plenty of duplicate values to check ties keep stream order
+            items.add(new Item(i, random.nextInt(count / 4)));
+        }
+        return items;
+    }
+
+    public static class Item {
+        private final int id;
+        private final int value;
+
+        Item(int id, int value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + value;
+        }
+    }
+}
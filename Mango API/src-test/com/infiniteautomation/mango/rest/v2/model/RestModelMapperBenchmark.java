@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Compares the per item cost of mapping an object using the cached dispatch of {@link RestModelMapper} against a linear
+ * scan of every registered mapping (how the mapper used to dispatch). Not a unit test, run the main method with the test
+ * classpath, e.g. with {@code -Xms1g -Xmx1g}. JMH is not on the module's classpath so this is a plain timing harness,
+ * each case is warmed up and the median of several rounds is reported.
+ *
+ * <p>Arguments (optional): mapping counts to measure, defaults to 25 100 200.</p>
+ */
+public class RestModelMapperBenchmark {
+
+    private static final int ROUNDS = 7;
+    private static final int ITERATIONS = 2_000_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int[] counts = args.length == 0 ? new int[] {25, 100, 200} : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.println("mappings  winner   linear scan (ns/item)  cached dispatch (ns/item)  speedup");
+        for (int count : counts) {
+            run(count, count / 2);
+            run(count, count - 1);
+        }
+    }
+
+    /**
+     * @param count number of registered mappings
+     * @param winner position of the mapping which supports the mapped class
+     */
+    private static void run(int count, int winner) {
+        Model model = new Model();
+        List<RestModelMapping<?,?>> mappings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mappings.add(i == winner ? new BenchmarkMapping<>(Integer.class, model) : new BenchmarkMapping<>(String.class, model));
+        }
+        RestModelMapper mapper = new RestModelMapper(Optional.of(mappings));
+        Integer from = 1;
+
+        // warm up both paths before measuring either
+        measure(() -> linearScan(mappings, from, Model.class));
+        measure(() -> mapper.map(from, Model.class, null));
+
+        double linear = median(() -> linearScan(mappings, from, Model.class));
+        double cached = median(() -> mapper.map(from, Model.class, null));
+        System.out.println(String.format("%8d  %6d  %21.1f  %25.1f  %6.1fx", count, winner, linear, cached, linear / cached));
+    }
+
+    private static double median(MapCall call) {
+        double[] rounds = new double[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            rounds[i] = measure(call);
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+
+    /**
+     * @return average cost per call (ns)
+     */
+    private static double measure(MapCall call) {
+        Object last = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            last = call.map();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = last;
+        return (double) elapsed / ITERATIONS;
+    }
+
+    private static Object linearScan(List<RestModelMapping<?,?>> mappings, Object from, Class<?> model) {
+        for (RestModelMapping<?,?> mapping : mappings) {
+            if (mapping.supports(from.getClass(), model)) {
+                Object result = mapping.map(from, null, null);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private interface MapCall {
+        Object map();
+    }
+
+    private static class Model {
+    }
+
+    private static class BenchmarkMapping<F> implements RestModelMapping<F, Model> {
+        private final Class<F> fromClass;
+        private final Model model;
+
+        BenchmarkMapping(Class<F> fromClass, Model model) {
+            this.fromClass = fromClass;
+            this.model = model;
+        }
+
+        @Override
+        public Class<? extends F> fromClass() {
+            return fromClass;
+        }
+
+        @Override
+        public Class<? extends Model> toClass() {
+            return Model.class;
+        }
+
+        @Override
+        public Model map(Object from, PermissionHolder user, RestModelMapper mapper) {
+            return model;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Verifies the cached dispatch preserves the mapping priority and null fall through
+ */
+public class RestModelMapperTest {
+
+    private static final int MAPPING_COUNT = 200;
+
+    @Test
+    public void firstSupportingMappingWins() {
+        List<RestModelMapping<?,?>> mappings = new ArrayList<>();
+        mappings.add(new TestMapping<>(Integer.class, Model.class, i -> new Model("integer")));
+        mappings.add(new TestMapping<>(Number.class, Model.class, n -> new Model("number")));
+        mappings.add(new TestMapping<>(Number.class, SubModel.class, n -> new SubModel("subModel")));
+        RestModelMapper mapper = new RestModelMapper(Optional.of(mappings));
+
+        assertEquals("integer", mapper.map(1, Model.class, null).name);
+        assertEquals("number", mapper.map(1L, Model.class, null).name);
+        assertEquals("subModel", mapper.map(1L, SubModel.class, null).name);
+        // cached result is the same
+        assertEquals("integer", mapper.map(2, Model.class, null).name);
+    }
+
+    @Test
+    public void nullResultFallsThrough() {
+        List<RestModelMapping<?,?>> mappings = new ArrayList<>();
+        mappings.add(new TestMapping<>(Integer.class, Model.class, i -> i < 0 ? null : new Model("positive")));
+        mappings.add(new TestMapping<>(Integer.class, Model.class, i -> new Model("negative")));
+        RestModelMapper mapper = new RestModelMapper(Optional.of(mappings));
+
+        assertEquals("positive", mapper.map(1, Model.class, null).name);
+        assertEquals("negative", mapper.map(-1, Model.class, null).name);
+        assertEquals("positive", mapper.map(2, Model.class, null).name);
+    }
+
+    @Test
+    public void unMapUsesReverseDirection() {
+        Model model = new Model("model");
+        List<RestModelMapping<?,?>> mappings = new ArrayList<>();
+        mappings.add(new TestMapping<>(Integer.class, Model.class, i -> model));
+        RestModelMapper mapper = new RestModelMapper(Optional.of(mappings));
+
+        assertSame(model, mapper.map(1, Model.class, null));
+        assertEquals(Integer.valueOf(42), mapper.unMap(model, Integer.class, null));
+    }
+
+    /**
+     * The winning mapping is at the end of a long list of mappings, repeated calls are answered from the cache
+     */
+    @Test
+    public void lastMappingOfMany() {
+        List<RestModelMapping<?,?>> mappings = new ArrayList<>();
+        for (int i = 0; i < MAPPING_COUNT - 1; i++) {
+            mappings.add(new TestMapping<>(String.class, Model.class, s -> new Model(s)));
+        }
+        Model model = new Model("model");
+        mappings.add(new TestMapping<>(Integer.class, Model.class, i -> model));
+        RestModelMapper mapper = new RestModelMapper(Optional.of(mappings));
+
+        for (int i = 0; i < 3; i++) {
+            assertSame(model, mapper.map(1, Model.class, null));
+            assertEquals("a", mapper.map("a", Model.class, null).name);
+        }
+    }
+
+    private static class Model {
+        final String name;
+        Model(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class SubModel extends Model {
+        SubModel(String name) {
+            super(name);
+        }
+    }
+
+    private interface MapFunction<F, T> {
+        T apply(F from);
+    }
+
+    private static class TestMapping<F, T> implements RestModelMapping<F, T> {
+        private final Class<F> fromClass;
+        private final Class<T> toClass;
+        private final MapFunction<F, T> function;
+
+        TestMapping(Class<F> fromClass, Class<T> toClass, MapFunction<F, T> function) {
+            this.fromClass = fromClass;
+            this.toClass = toClass;
+            this.function = function;
+        }
+
+        @Override
+        public Class<? extends F> fromClass() {
+            return fromClass;
+        }
+
+        @Override
+        public Class<? extends T> toClass() {
+            return toClass;
+        }
+
+        @Override
+        public T map(Object from, PermissionHolder user, RestModelMapper mapper) {
+            return function.apply(fromClass.cast(from));
+        }
+
+        @Override
+        public F unmap(Object from, PermissionHolder user, RestModelMapper mapper) {
+            return fromClass.cast(42);
+        }
+    }
+}
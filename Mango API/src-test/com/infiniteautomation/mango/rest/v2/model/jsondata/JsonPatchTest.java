@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.jsondata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.exception.ConfictRestException;
+
+/**
+ * Patch examples from RFC 6902 appendix A, diffs are checked by applying them to the source
+ */
+public class JsonPatchTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void add() throws IOException {
+        assertPatch("{'foo':'bar'}", "[{'op':'add','path':'/baz','value':'qux'}]", "{'baz':'qux','foo':'bar'}");
+        assertPatch("{'foo':['bar','baz']}", "[{'op':'add','path':'/foo/1','value':'qux'}]", "{'foo':['bar','qux','baz']}");
+        assertPatch("{'foo':['bar']}", "[{'op':'add','path':'/foo/-','value':['abc','def']}]", "{'foo':['bar',['abc','def']]}");
+        assertPatch("{'foo':'bar'}", "[{'op':'add','path':'','value':[1]}]", "[1]");
+    }
+
+    @Test
+    public void removeAndReplace() throws IOException {
+        assertPatch("{'baz':'qux','foo':'bar'}", "[{'op':'remove','path':'/baz'}]", "{'foo':'bar'}");
+        assertPatch("{'foo':['bar','qux','baz']}", "[{'op':'remove','path':'/foo/1'}]", "{'foo':['bar','baz']}");
+        assertPatch("{'baz':'qux','foo':'bar'}", "[{'op':'replace','path':'/baz','value':'boo'}]", "{'baz':'boo','foo':'bar'}");
+        assertPatch("{'a/b':1,'m~n':2}", "[{'op':'replace','path':'/a~1b','value':3},{'op':'remove','path':'/m~0n'}]", "{'a/b':3}");
+    }
+
+    @Test
+    public void moveAndCopy() throws IOException {
+        assertPatch("{'foo':{'bar':'baz','waldo':'fred'},'qux':{'corge':'grault'}}",
+                "[{'op':'move','from':'/foo/waldo','path':'/qux/thud'}]",
+                "{'foo':{'bar':'baz'},'qux':{'corge':'grault','thud':'fred'}}");
+        assertPatch("{'foo':['all','grass','cows','eat']}", "[{'op':'move','from':'/foo/1','path':'/foo/3'}]",
+                "{'foo':['all','cows','eat','grass']}");
+        assertPatch("{'foo':{'a':1}}", "[{'op':'copy','from':'/foo','path':'/bar'},{'op':'add','path':'/bar/b','value':2}]",
+                "{'foo':{'a':1},'bar':{'a':1,'b':2}}");
+    }
+
+    @Test
+    public void test() throws IOException {
+        assertPatch("{'baz':'qux','foo':['a',2,'c']}",
+                "[{'op':'test','path':'/baz','value':'qux'},{'op':'test','path':'/foo/1','value':2.0}]",
+                "{'baz':'qux','foo':['a',2,'c']}");
+        assertConflict("{'baz':'qux'}", "[{'op':'test','path':'/baz','value':'bar'}]");
+    }
+
+    @Test
+    public void errors() throws IOException {
+        assertConflict("{'foo':'bar'}", "[{'op':'add','path':'/baz/bat','value':'qux'}]");
+        assertConflict("{'foo':'bar'}", "[{'op':'remove','path':'/baz'}]");
+        assertConflict("{'foo':[1,2]}", "[{'op':'add','path':'/foo/3','value':3}]");
+        assertConflict("{'foo':[1,2]}", "[{'op':'replace','path':'/foo/01','value':3}]");
+        assertBadRequest("{'foo':'bar'}", "{'op':'add','path':'/baz','value':'qux'}");
+        assertBadRequest("{'foo':'bar'}", "[{'op':'add','path':'/baz'}]");
+        assertBadRequest("{'foo':'bar'}", "[{'op':'frobnicate','path':'/baz'}]");
+        assertBadRequest("{'foo':{'a':1}}", "[{'op':'move','from':'/foo','path':'/foo/a'}]");
+    }
+
+    @Test
+    public void nullDocument() throws IOException {
+        assertEquals(json("{'a':1}"), JsonPatch.apply(json("[{'op':'add','path':'','value':{'a':1}}]"), null));
+        assertEquals(null, JsonPatch.apply(json("[]"), null));
+        assertConflict(null, "[{'op':'add','path':'/a','value':1}]");
+        assertConflict(null, "[{'op':'remove','path':'/a'}]");
+        assertConflict(null, "[{'op':'replace','path':'','value':1}]");
+        assertConflict(null, "[{'op':'copy','from':'/a','path':'/b'}]");
+        assertConflict(null, "[{'op':'test','path':'/a','value':1}]");
+    }
+
+    @Test
+    public void diff() throws IOException {
+        assertDiff("{'a':1,'b':{'c':[1,2,3]},'d':'x'}", "{'a':1,'b':{'c':[1,4,2,3]},'e':'y'}", 3);
+        assertDiff("{'list':[1,2,3,4,5]}", "{'list':[1,2,4,5]}", 1);
+        assertDiff("{'list':[1,2,3]}", "{'list':[{'x':1},'a',2,3,4]}", 5);
+        assertDiff("{'a/b':{'m~n':1}}", "{'a/b':{'m~n':2}}", 1);
+        assertDiff("[1,2]", "{'a':1}", 1);
+        assertDiff("{'a':1}", "{'a':1}", 0);
+    }
+
+    @Test
+    public void diffPath() throws IOException {
+        JsonNode source = json("{'a':{'b':1,'c':2},'d':1}");
+        JsonNode target = json("{'a':{'b':1,'c':3},'d':2}");
+        assertEquals(json("[{'op':'replace','path':'/a/c','value':3}]"), JsonPatch.diff(source, target, JsonPointer.compile("/a")));
+        assertEquals(json("[]"), JsonPatch.diff(source, target, JsonPointer.compile("/a/b")));
+        assertEquals(json("[{'op':'add','path':'/x','value':1}]"), JsonPatch.diff(source, json("{'x':1}"), JsonPointer.compile("/x")));
+        assertEquals(json("[{'op':'remove','path':'/d'}]"), JsonPatch.diff(source, json("{}"), JsonPointer.compile("/d")));
+        assertEquals(json("[{'op':'add','path':'','value':{'x':1}}]"), JsonPatch.diff(null, json("{'x':1}"), JsonPointer.compile("")));
+    }
+
+    private void assertDiff(String source, String target, int operations) throws IOException {
+        ArrayNode patch = JsonPatch.diff(json(source), json(target), JsonPointer.compile(""));
+        assertEquals(operations, patch.size());
+        assertEquals(json(target), JsonPatch.apply(patch, json(source)));
+    }
+
+    private void assertPatch(String document, String patch, String expected) throws IOException {
+        assertEquals(json(expected), JsonPatch.apply(json(patch), json(document)));
+    }
+
+    private void assertConflict(String document, String patch) throws IOException {
+        try {
+            JsonPatch.apply(json(patch), document == null ? null : json(document));
+            fail("Expected conflict");
+        } catch (ConfictRestException e) {
+            // expected
+        }
+    }
+
+    private void assertBadRequest(String document, String patch) throws IOException {
+        try {
+            JsonPatch.apply(json(patch), json(document));
+            fail("Expected bad request");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    private JsonNode json(String json) throws IOException {
+        return mapper.readTree(json.replace('\'', '"'));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileIndex.Region;
+
+/**
+ * Verifies the regions returned by the index contain every event in the time range.
+ */
+public class LogFileIndexTest {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss,SSS");
+    private static final LocalDateTime START = LocalDateTime.of(2020, 5, 4, 12, 0);
+
+    private Path file;
+    private final List<long[]> events = new ArrayList<>();
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("ma", ".log");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void parseTimestamp() {
+        byte[] line = "INFO  2020-05-04T13:41:27,362 (com.serotonin.m2m2.Main.main:123) - Starting".getBytes(StandardCharsets.UTF_8);
+        long expected = LocalDateTime.of(2020, 5, 4, 13, 41, 27, 362000000).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(expected, LogFileIndex.parseTimestamp(line, 0, line.length));
+
+        byte[] stackLine = "\tat com.serotonin.m2m2.Main.main(Main.java:123)".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Long.MIN_VALUE, LogFileIndex.parseTimestamp(stackLine, 0, stackLine.length));
+    }
+
+    @Test
+    public void regionContainsRange() throws IOException {
+        append(0, 5000);
+        LogFileIndex index = new LogFileIndex(file, 8192);
+        long length = Files.size(file);
+
+        assertContains(index, 1000, 1100);
+        assertContains(index, 0, 10);
+        assertContains(index, 4990, 5000);
+
+        Region region = index.region(millis(2000), millis(2010));
+        assertTrue("region should be a small part of the file", region.getLength() < length / 10);
+
+        Region all = index.region(null, null);
+        assertEquals(0, all.getStart());
+        assertEquals(length, all.getEnd());
+    }
+
+    @Test
+    public void appendedAndRolled() throws IOException {
+        append(0, 1000);
+        LogFileIndex index = new LogFileIndex(file, 8192);
+        assertContains(index, 500, 510);
+
+        append(1000, 3000);
+        assertContains(index, 2500, 2510);
+        assertEquals(Files.size(file), index.region(millis(2990), null).getEnd());
+
+        // rolled over, new file is shorter
+        events.clear();
+        Files.delete(file);
+        Files.createFile(file);
+        append(5000, 5500);
+        assertContains(index, 5200, 5210);
+    }
+
+    private void assertContains(LogFileIndex index, int fromSecond, int toSecond) throws IOException {
+        Region region = index.region(millis(fromSecond), millis(toSecond));
+        for (long[] event : events) {
+            if (event[0] >= millis(fromSecond) && event[0] <= millis(toSecond)) {
+                assertTrue(event[1] >= region.getStart());
+                assertTrue(event[1] < region.getEnd());
+            }
+        }
+    }
+
+    private long millis(int second) {
+        return START.plusSeconds(second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Appends one event per second, every 10th event has a stack trace
+     */
+    private void append(int fromSecond, int toSecond) throws IOException {
+        long offset = Files.size(file);
+        StringBuilder builder = new StringBuilder();
+        for (int i = fromSecond; i < toSecond; i++) {
+            String line = String.format("%-5s %s (com.serotonin.m2m2.Test.method:%d) - Message number %d%n",
+                    i % 10 == 0 ? "ERROR" : "INFO", START.plusSeconds(i).format(FORMAT), i, i);
+            events.add(new long[] {millis(i), offset + builder.length()});
+            builder.append(line);
+            if (i % 10 == 0) {
+                builder.append("java.lang.RuntimeException: failed\n");
+                builder.append("\tat com.serotonin.m2m2.Test.method(Test.java:10)\n");
+                builder.append("\tat com.serotonin.m2m2.Test.main(Test.java:20)\n");
+            }
+        }
+        Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.realtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.model.FilteredStreamWithTotal;
+import com.infiniteautomation.mango.rest.v2.model.realtime.RunningDataPointIndex.Snapshot;
+import com.infiniteautomation.mango.util.RQLUtils;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Verifies the index never leaves out an item which the RQL filter matches
+ */
+public class RunningDataPointIndexTest {
+
+    private static final String[] NAMES = {"Temp", "temp", "TEMP", "Hum", "123", "true", null};
+    private static final String[] DEVICE_NAMES = {"Dev", "dev", "Other", null};
+    private static final String[] DATA_SOURCE_XIDS = {"DS_1", "ds_1", "DS_2"};
+
+    @Test
+    public void equality() {
+        assertSameAsFilter("eq(xid,DP_3)", true);
+        assertSameAsFilter("eq(xid,dp_3)", true);
+        assertSameAsFilter("eq(name,Temp)", true);
+        assertSameAsFilter("eq(name,temp)", true);
+        assertSameAsFilter("eq(deviceName,Other)", true);
+        assertSameAsFilter("eq(dataSourceXid,ds_1)", true);
+        assertSameAsFilter("eq(name,Missing)", true);
+    }
+
+    @Test
+    public void in() {
+        assertSameAsFilter("in(name,(Temp,Hum))", true);
+        assertSameAsFilter("in(name,Temp,Hum)", true);
+    }
+
+    @Test
+    public void convertedArguments() {
+        assertSameAsFilter("eq(name,123)", false);
+        assertSameAsFilter("eq(name,string:123)", true);
+        assertSameAsFilter("eq(name,true)", false);
+        assertSameAsFilter("eq(deviceName,null)", false);
+        assertSameAsFilter("in(name,(Temp,123))", false);
+    }
+
+    @Test
+    public void logical() {
+        assertSameAsFilter("eq(deviceName,Dev)&eq(dataSourceXid,DS_2)", true);
+        assertSameAsFilter("eq(deviceName,Dev)&gt(xid,DP_5)", true);
+        assertSameAsFilter("eq(xid,DP_1)|eq(name,Hum)", true);
+        assertSameAsFilter("eq(xid,DP_1)|gt(xid,DP_5)", false);
+        assertSameAsFilter("not(eq(xid,DP_1))", false);
+        assertSameAsFilter("match(xid,DP_1*)", false);
+    }
+
+    @Test
+    public void fold() {
+        assertEquals(RunningDataPointIndex.fold("TEMP"), RunningDataPointIndex.fold("temp"));
+        // dotless i, equalsIgnoreCase is true but the lower case forms differ
+        assertEquals(RunningDataPointIndex.fold("I"), RunningDataPointIndex.fold("\u0131"));
+        assertTrue(!RunningDataPointIndex.fold("Temp").equals(RunningDataPointIndex.fold("Hum")));
+    }
+
+    /**
+     * @param narrowed true if the index is expected to select fewer items than it holds
+     */
+    private void assertSameAsFilter(String rql, boolean narrowed) {
+        List<RealTimeDataPointValueModel> items = createItems();
+        Map<String, Function<RealTimeDataPointValueModel, String>> properties = new HashMap<>();
+        properties.put("xid", RealTimeDataPointValueModel::getXid);
+        properties.put("name", RealTimeDataPointValueModel::getName);
+        properties.put("deviceName", RealTimeDataPointValueModel::getDeviceName);
+        properties.put("dataSourceXid", RealTimeDataPointValueModel::getDataSourceXid);
+        Snapshot<RealTimeDataPointValueModel> snapshot = new Snapshot<>(items, properties);
+
+        ASTNode query = RQLUtils.parseRQLtoAST(rql);
+        List<RealTimeDataPointValueModel> candidates = snapshot.candidates(query);
+
+        assertEquals(rql, filter(items, query), filter(candidates, query));
+        assertEquals(rql, items.stream().filter(candidates::contains).collect(Collectors.toList()), candidates);
+        assertEquals(rql, narrowed, candidates.size() < items.size());
+    }
+
+    private List<RealTimeDataPointValueModel> filter(List<RealTimeDataPointValueModel> items, ASTNode query) {
+        return new FilteredStreamWithTotal<>(items, query).getItems().collect(Collectors.toList());
+    }
+
+    private List<RealTimeDataPointValueModel> createItems() {
+        List<RealTimeDataPointValueModel> items = new ArrayList<>();
+        for (int i = 0; i < 84; i++) {
+            RealTimeDataPointValueModel model = new RealTimeDataPointValueModel();
+            model.setXid("DP_" + i);
+            model.setName(NAMES[i % NAMES.length]);
+            model.setDeviceName(DEVICE_NAMES[i % DEVICE_NAMES.length]);
+            model.setDataSourceXid(DATA_SOURCE_XIDS[i % DATA_SOURCE_XIDS.length]);
+            items.add(model);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.timing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Verifies bucket boundaries are contiguous and percentiles are within the bucket resolution.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+        assertEquals(0, LatencyHistogram.lowerBound(0));
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            assertEquals(LatencyHistogram.upperBound(i - 1), LatencyHistogram.lowerBound(i));
+        }
+        for (long value : new long[] {0, 1, 3, 4, 7, 8, 15, 16, 1000, 123456789}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value >= LatencyHistogram.lowerBound(index));
+            assertTrue(value < LatencyHistogram.upperBound(index));
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        Random random = new Random(1);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal like request durations, around 5 ms
+            values[i] = (long) Math.exp(8.5 + random.nextGaussian());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            long actual = histogram.percentile(quantile);
+            assertTrue(quantile + ": " + actual + " vs " + expected, Math.abs(actual - expected) <= expected * 0.15);
+        }
+    }
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0, histogram.getMean(), 0);
+        assertTrue(histogram.getBuckets().isEmpty());
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Verifies the Ping/Pong timing wheel and compares its scheduler overhead against one fixed rate task per session.
+ */
+public class MangoPingPongSweeperTest {
+
+    private static final int SESSION_COUNT = 10000;
+    private static final int TIMEOUT_MS = 10000;
+    private static final int SLOT_COUNT = 64;
+
+    private ScheduledThreadPoolExecutor executor;
+    // pings are sent on the calling thread so they can be checked straight after a sweep
+    private final ExecutorService directExecutor = MoreExecutors.newDirectExecutorService();
+
+    @Before
+    public void before() {
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pingsEverySessionOncePerRotation() {
+        MangoPingPongSweeper sweeper = new MangoPingPongSweeper(executor, directExecutor, TIMEOUT_MS, SLOT_COUNT);
+        List<TestSession> sessions = createSessions(SESSION_COUNT);
+        sessions.forEach(sweeper::register);
+        assertEquals(SESSION_COUNT, sweeper.getSessionCount());
+
+        // sessions are spread evenly over the slots
+        sweeper.sweep();
+        int pinged = (int) sessions.stream().filter(s -> s.pings.get() == 1).count();
+        assertEquals(SESSION_COUNT / SLOT_COUNT, pinged, 1);
+
+        for (int i = 1; i < SLOT_COUNT; i++) {
+            sweeper.sweep();
+        }
+        for (TestSession session : sessions) {
+            assertEquals(1, session.pings.get());
+            session.getAttributes().put(MangoWebSocketHandler.RECEIVED_PONG, Boolean.TRUE);
+        }
+
+        rotate(sweeper);
+        for (TestSession session : sessions) {
+            assertEquals(2, session.pings.get());
+            assertTrue(session.isOpen());
+        }
+    }
+
+    @Test
+    public void closesSessionsWithoutPong() {
+        MangoPingPongSweeper sweeper = new MangoPingPongSweeper(executor, directExecutor, TIMEOUT_MS, SLOT_COUNT);
+        TestSession responsive = new TestSession("responsive");
+        TestSession unresponsive = new TestSession("unresponsive");
+        sweeper.register(responsive);
+        sweeper.register(unresponsive);
+
+        rotate(sweeper);
+        responsive.getAttributes().put(MangoWebSocketHandler.RECEIVED_PONG, Boolean.TRUE);
+        rotate(sweeper);
+
+        assertTrue(responsive.isOpen());
+        assertFalse(unresponsive.isOpen());
+
+        // closed sessions are dropped from the wheel on the next visit
+        rotate(sweeper);
+        assertEquals(1, sweeper.getSessionCount());
+
+        sweeper.unregister(responsive);
+        assertEquals(0, sweeper.getSessionCount());
+    }
+
+    /**
+     * Checks the number of scheduler queue entries at 10k sessions, which is the main cost of the per session approach
+     */
+    @Test
+    public void schedulerOverhead() {
+        List<TestSession> sessions = createSessions(SESSION_COUNT);
+
+        List<ScheduledFuture<?>> futures = new ArrayList<>(SESSION_COUNT);
+        for (TestSession session : sessions) {
+            futures.add(executor.scheduleAtFixedRate(new MangoPingPongTracker(session), TIMEOUT_MS, TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        int perSessionQueueSize = executor.getQueue().size();
+        futures.forEach(f -> f.cancel(false));
+
+        MangoPingPongSweeper sweeper = new MangoPingPongSweeper(executor, directExecutor, TIMEOUT_MS, SLOT_COUNT);
+        sweeper.start();
+        sessions.forEach(sweeper::register);
+        int sweeperQueueSize = executor.getQueue().size();
+
+        rotate(sweeper);
+        sessions.forEach(sweeper::unregister);
+        sweeper.stop();
+
+        assertEquals(SESSION_COUNT, perSessionQueueSize);
+        assertEquals(1, sweeperQueueSize);
+        assertEquals(0, sweeper.getSessionCount());
+    }
+
+    private void rotate(MangoPingPongSweeper sweeper) {
+        for (int i = 0; i < sweeper.getSlotCount(); i++) {
+            sweeper.sweep();
+        }
+    }
+
+    private List<TestSession> createSessions(int count) {
+        List<TestSession> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sessions.add(new TestSession(Integer.toString(i)));
+        }
+        return sessions;
+    }
+
+    private static class TestSession implements WebSocketSession {
+        private final String id;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final AtomicInteger pings = new AtomicInteger();
+        private volatile boolean open = true;
+
+        TestSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            if (message instanceof PingMessage) {
+                pings.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            open = false;
+        }
+    }
+}
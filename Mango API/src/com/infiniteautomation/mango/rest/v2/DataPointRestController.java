@@ -3,22 +3,27 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.jooq.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -30,8 +35,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterators;
 import com.infiniteautomation.mango.rest.v2.bulk.BulkRequest;
+import com.infiniteautomation.mango.rest.v2.bulk.BulkRequestExecutor;
 import com.infiniteautomation.mango.rest.v2.bulk.BulkResponse;
+import com.infiniteautomation.mango.rest.v2.bulk.SpooledCSVRequest;
 import com.infiniteautomation.mango.rest.v2.bulk.VoAction;
 import com.infiniteautomation.mango.rest.v2.bulk.VoIndividualRequest;
 import com.infiniteautomation.mango.rest.v2.bulk.VoIndividualResponse;
@@ -50,6 +60,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporary
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.db.DataSourceTableDefinition;
@@ -97,12 +108,18 @@ public class DataPointRestController {
     private final Map<String, Function<Object, Object>> valueConverters;
     private final Map<String, Field<?>> fieldMap;
     private final DataPointService service;
+    private final BulkRequestExecutor bulkRequestExecutor;
+    private final ObjectMapper csvObjectMapper;
 
     @Autowired
     public DataPointRestController(TemporaryResourceWebSocketHandler websocket, final RestModelMapper modelMapper,
-            DataPointService service, DataSourceTableDefinition dataSourceTable, PermissionService permissionService) {
-        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<DataPointBulkResponse>(permissionService, websocket);
+            DataPointService service, DataSourceTableDefinition dataSourceTable, PermissionService permissionService,
+            BulkRequestExecutor bulkRequestExecutor, @Qualifier("csvObjectMapper") ObjectMapper csvObjectMapper,
+            TemporaryResourceResultStore resultStore) {
+        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<DataPointBulkResponse>(permissionService, websocket, resultStore);
         this.service = service;
+        this.bulkRequestExecutor = bulkRequestExecutor;
+        this.csvObjectMapper = csvObjectMapper;
         this.map = (vo, user) -> {
             return modelMapper.map(vo, DataPointModel.class, user);
         };
@@ -262,36 +279,41 @@ public class DataPointRestController {
     }
 
     @ApiOperation(value = "Bulk get/create/update/delete data points",
-            notes = "User must have read/edit permission for the data point",
+            notes = "User must have read/edit permission for the data point. " +
+            "The CSV is spooled to a temporary file and streamed row by row, it is not held in memory. " +
+            "A row which can't be deserialized fails the operation, the preceding rows will have been processed.",
             consumes=MediaTypes.CSV_VALUE)
     @RequestMapping(method = RequestMethod.POST, value="/bulk", consumes=MediaTypes.CSV_VALUE)
     public ResponseEntity<TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception>> bulkDataPointOperationCSV(
-            @RequestBody
-            List<ActionAndModel<DataPointModel>> points,
+            HttpServletRequest request,
 
             @AuthenticationPrincipal
             User user,
 
-            UriComponentsBuilder builder) {
+            UriComponentsBuilder builder) throws IOException {
 
-        DataPointBulkRequest bulkRequest = new DataPointBulkRequest();
+        MediaType contentType = request.getContentType() == null ? null : MediaType.parseMediaType(request.getContentType());
+        SpooledCSVRequest<ActionAndModel<DataPointModel>> spooled = SpooledCSVRequest.spool(request.getInputStream(), contentType,
+                csvObjectMapper, csvObjectMapper.getTypeFactory().constructType(new TypeReference<ActionAndModel<DataPointModel>>() {}));
 
-        bulkRequest.setRequests(points.stream().map(actionAndModel -> {
-            DataPointModel point = actionAndModel.getModel();
-            VoAction action = actionAndModel.getAction();
-            String originalXid = actionAndModel.getOriginalXid();
-            if (originalXid == null && point != null) {
-                originalXid = point.getXid();
-            }
+        DataPointBulkRequest bulkRequest = new DataPointBulkRequest();
+        return this.startBulkDataPointOperation(bulkRequest, () -> Iterators.transform(spooled.iterator(), this::csvRowToRequest),
+                spooled.getRowCount(), spooled, user, builder);
+    }
 
-            DataPointIndividualRequest request = new DataPointIndividualRequest();
-            request.setAction(action == null ? VoAction.UPDATE : action);
-            request.setXid(originalXid);
-            request.setBody(point);
-            return request;
-        }).collect(Collectors.toList()));
+    private DataPointIndividualRequest csvRowToRequest(ActionAndModel<DataPointModel> actionAndModel) {
+        DataPointModel point = actionAndModel.getModel();
+        VoAction action = actionAndModel.getAction();
+        String originalXid = actionAndModel.getOriginalXid();
+        if (originalXid == null && point != null) {
+            originalXid = point.getXid();
+        }
 
-        return this.bulkDataPointOperation(bulkRequest, user, builder);
+        DataPointIndividualRequest request = new DataPointIndividualRequest();
+        request.setAction(action == null ? VoAction.UPDATE : action);
+        request.setXid(originalXid);
+        request.setBody(point);
+        return request;
     }
 
     @ApiOperation(value = "Bulk get/create/update/delete data points", notes = "User must have read/edit permission for the data point")
@@ -305,8 +327,6 @@ public class DataPointRestController {
 
             UriComponentsBuilder builder) {
 
-        VoAction defaultAction = requestBody.getAction();
-        DataPointModel defaultBody = requestBody.getBody();
         List<DataPointIndividualRequest> requests = requestBody.getRequests();
 
         if (requests == null) {
@@ -315,29 +335,52 @@ public class DataPointRestController {
             throw new BadRequestException(new TranslatableMessage("rest.error.cantBeEmpty", "requests"));
         }
 
+        return this.startBulkDataPointOperation(requestBody, requests::iterator, requests.size(), null, user, builder);
+    }
+
+    /**
+     * @param requestBody supplies the default action/body and resource settings
+     * @param requests supplies the individual requests when the resource task runs
+     * @param requestCount the number of individual requests
+     * @param source spooled request body, closed when the resource completes, may be null
+     */
+    private ResponseEntity<TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception>> startBulkDataPointOperation(DataPointBulkRequest requestBody,
+            Supplier<Iterator<DataPointIndividualRequest>> requests, int requestCount, SpooledCSVRequest<?> source, User user, UriComponentsBuilder builder) {
+
+        VoAction defaultAction = requestBody.getAction();
+        DataPointModel defaultBody = requestBody.getBody();
         String resourceId = requestBody.getId();
         Long expiration = requestBody.getExpiration();
         Long timeout = requestBody.getTimeout();
 
-        TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception> responseBody = bulkResourceManager.newTemporaryResource(
-                RESOURCE_TYPE_BULK_DATA_POINT, resourceId, user.getId(), expiration, timeout, (resource) -> {
-
-                    DataPointBulkResponse bulkResponse = new DataPointBulkResponse();
-                    int i = 0;
-
-                    resource.progressOrSuccess(bulkResponse, i++, requests.size());
-
-                    for (DataPointIndividualRequest request : requests) {
-                        UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
-                        User resourceUser = (User) Common.getUser();
-                        DataPointIndividualResponse individualResponse = doIndividualRequest(request, defaultAction, defaultBody, resourceUser, reqBuilder);
-                        bulkResponse.addResponse(individualResponse);
-
-                        resource.progressOrSuccess(bulkResponse, i++, requests.size());
-                    }
-
-                    return null;
-                });
+        TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception> responseBody;
+        try {
+            responseBody = bulkResourceManager.newTemporaryResource(
+                    RESOURCE_TYPE_BULK_DATA_POINT, resourceId, user.getId(), expiration, timeout, (resource) -> {
+
+                        DataPointBulkResponse bulkResponse = new DataPointBulkResponse();
+
+                        bulkRequestExecutor.execute(requests.get(), requestCount, requestBody, resource, bulkResponse, request -> {
+                            UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
+                            User resourceUser = (User) Common.getUser();
+                            return doIndividualRequest(request, defaultAction, defaultBody, resourceUser, reqBuilder);
+                        }, request -> {
+                            DataPointModel body = request.getBody() == null ? defaultBody : request.getBody();
+                            return Arrays.asList(request.getXid(), body == null ? null : body.getXid());
+                        });
+
+                        return null;
+                    });
+        } catch (RuntimeException e) {
+            if (source != null) {
+                source.close();
+            }
+            throw e;
+        }
+        if (source != null) {
+            // deleted even if the task never runs
+            responseBody.closeOnCompletion(source);
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(builder.path("/data-points/bulk/{id}").buildAndExpand(responseBody.getId()).toUri());
@@ -41,6 +41,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporary
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.service.DataPointService;
@@ -110,8 +111,8 @@ public class DataPointTagsRestController {
 
     @Autowired
     public DataPointTagsRestController(TemporaryResourceWebSocketHandler websocket, DataPointService dataPointService,
-            DataPointTagsDao dataPointTagsDao, PermissionService permissionService) {
-        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<TagBulkResponse>(permissionService, websocket);
+            DataPointTagsDao dataPointTagsDao, PermissionService permissionService, TemporaryResourceResultStore resultStore) {
+        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<TagBulkResponse>(permissionService, websocket, resultStore);
         this.dataPointService = dataPointService;
         this.dataPointTagsDao = dataPointTagsDao;
         this.permissionService = permissionService;
@@ -4,19 +4,25 @@
 package com.infiniteautomation.mango.rest.v2;
 
 import java.net.URI;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.jooq.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -29,6 +35,10 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import com.infiniteautomation.mango.rest.v2.bulk.BulkRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterators;
+import com.infiniteautomation.mango.rest.v2.bulk.BulkRequestExecutor;
+import com.infiniteautomation.mango.rest.v2.bulk.SpooledCSVRequest;
 import com.infiniteautomation.mango.rest.v2.bulk.BulkResponse;
 import com.infiniteautomation.mango.rest.v2.bulk.VoAction;
 import com.infiniteautomation.mango.rest.v2.bulk.VoIndividualRequest;
@@ -50,6 +60,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporary
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.db.EventDetectorTableDefinition;
@@ -84,19 +95,26 @@ public class EventDetectorsRestController {
     private final BiFunction<AbstractEventDetectorVO, User, AbstractEventDetectorModel<?>> map;
     private final RestModelMapper modelMapper;
     private final Map<String, Field<?>> fieldMap;
+    private final BulkRequestExecutor bulkRequestExecutor;
+    private final ObjectMapper csvObjectMapper;
 
     @Autowired
     public EventDetectorsRestController(EventDetectorsService service,
             EventDetectorTableDefinition table,
             RestModelMapper modelMapper,
-            TemporaryResourceWebSocketHandler websocket){
+            TemporaryResourceWebSocketHandler websocket,
+            BulkRequestExecutor bulkRequestExecutor,
+            @Qualifier("csvObjectMapper") ObjectMapper csvObjectMapper,
+            TemporaryResourceResultStore resultStore){
         this.service = service;
+        this.bulkRequestExecutor = bulkRequestExecutor;
+        this.csvObjectMapper = csvObjectMapper;
         this.map = (vo, user) -> {
             AbstractEventDetectorModel<?> model = modelMapper.map(vo, AbstractEventDetectorModel.class, user);
             return model;
         };
         this.modelMapper = modelMapper;
-        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<EventDetectorBulkResponse>(service.getPermissionService(), websocket);
+        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<EventDetectorBulkResponse>(service.getPermissionService(), websocket, resultStore);
 
         this.fieldMap = new HashMap<>();
         this.fieldMap.put("detectorSourceType", table.getAlias("sourceTypeName"));
@@ -272,12 +290,13 @@ public class EventDetectorsRestController {
     private final TemporaryResourceManager<EventDetectorBulkResponse, AbstractRestV2Exception> bulkResourceManager;
 
     @ApiOperation(value = "Bulk get/create/update/delete event detectors",
-            notes = "User must have read permission for the data point or edit permission for the data source",
+            notes = "User must have read permission for the data point or edit permission for the data source. " +
+            "The CSV is spooled to a temporary file and streamed row by row, it is not held in memory. " +
+            "A row which can't be deserialized fails the operation, the preceding rows will have been processed.",
             consumes=MediaTypes.CSV_VALUE)
     @RequestMapping(method = RequestMethod.POST, value="/bulk", consumes=MediaTypes.CSV_VALUE)
     public ResponseEntity<TemporaryResource<EventDetectorBulkResponse, AbstractRestV2Exception>> bulkEventDetectorOperationCSV(
-            @RequestBody
-            List<AbstractEventDetectorModel<? extends AbstractEventDetectorVO>> eds,
+            HttpServletRequest request,
 
             @ApiParam(value = "Restart the source to load in the changes", required = false, defaultValue="true", allowMultiple = false)
             @RequestParam(required=false, defaultValue="true") boolean restart,
@@ -285,26 +304,30 @@ public class EventDetectorsRestController {
             @AuthenticationPrincipal
             User user,
 
-            UriComponentsBuilder builder) {
+            UriComponentsBuilder builder) throws IOException {
 
-        EventDetectorBulkRequest bulkRequest = new EventDetectorBulkRequest();
+        MediaType contentType = request.getContentType() == null ? null : MediaType.parseMediaType(request.getContentType());
+        SpooledCSVRequest<AbstractEventDetectorModel<? extends AbstractEventDetectorVO>> spooled = SpooledCSVRequest.spool(request.getInputStream(), contentType,
+                csvObjectMapper, csvObjectMapper.getTypeFactory().constructType(AbstractEventDetectorModel.class));
 
-        bulkRequest.setRequests(eds.stream().map(actionAndModel -> {
-            AbstractEventDetectorModel<? extends AbstractEventDetectorVO> ed = actionAndModel;
-            VoAction action = actionAndModel.getAction();
-            String originalXid = actionAndModel.getOriginalXid();
-            if (originalXid == null && ed != null) {
-                originalXid = ed.getXid();
-            }
+        EventDetectorBulkRequest bulkRequest = new EventDetectorBulkRequest();
+        return this.startBulkEventDetectorOperation(bulkRequest, () -> Iterators.transform(spooled.iterator(), this::csvRowToRequest),
+                spooled.getRowCount(), spooled, restart, user, builder);
+    }
 
-            EventDetectorIndividualRequest request = new EventDetectorIndividualRequest();
-            request.setAction(action == null ? VoAction.UPDATE : action);
-            request.setXid(originalXid);
-            request.setBody(ed);
-            return request;
-        }).collect(Collectors.toList()));
+    private EventDetectorIndividualRequest csvRowToRequest(AbstractEventDetectorModel<? extends AbstractEventDetectorVO> actionAndModel) {
+        AbstractEventDetectorModel<? extends AbstractEventDetectorVO> ed = actionAndModel;
+        VoAction action = actionAndModel.getAction();
+        String originalXid = actionAndModel.getOriginalXid();
+        if (originalXid == null && ed != null) {
+            originalXid = ed.getXid();
+        }
 
-        return this.bulkEventDetectorOperation(bulkRequest, restart, user, builder);
+        EventDetectorIndividualRequest request = new EventDetectorIndividualRequest();
+        request.setAction(action == null ? VoAction.UPDATE : action);
+        request.setXid(originalXid);
+        request.setBody(ed);
+        return request;
     }
 
     @ApiOperation(value = "Bulk get/create/update/delete event detectors",
@@ -322,8 +345,6 @@ public class EventDetectorsRestController {
 
             UriComponentsBuilder builder) {
 
-        VoAction defaultAction = requestBody.getAction();
-        AbstractEventDetectorModel<? extends AbstractEventDetectorVO> defaultBody = requestBody.getBody();
         List<EventDetectorIndividualRequest> requests = requestBody.getRequests();
 
         if (requests == null) {
@@ -332,28 +353,51 @@ public class EventDetectorsRestController {
             throw new BadRequestException(new TranslatableMessage("rest.error.cantBeEmpty", "requests"));
         }
 
+        return this.startBulkEventDetectorOperation(requestBody, requests::iterator, requests.size(), null, restart, user, builder);
+    }
+
+    /**
+     * @param requestBody supplies the default action/body and resource settings
+     * @param requests supplies the individual requests when the resource task runs
+     * @param requestCount the number of individual requests
+     * @param source spooled request body, closed when the resource completes, may be null
+     */
+    private ResponseEntity<TemporaryResource<EventDetectorBulkResponse, AbstractRestV2Exception>> startBulkEventDetectorOperation(EventDetectorBulkRequest requestBody,
+            Supplier<Iterator<EventDetectorIndividualRequest>> requests, int requestCount, SpooledCSVRequest<?> source, boolean restart, User user, UriComponentsBuilder builder) {
+
+        VoAction defaultAction = requestBody.getAction();
+        AbstractEventDetectorModel<? extends AbstractEventDetectorVO> defaultBody = requestBody.getBody();
         String resourceId = requestBody.getId();
         Long expiration = requestBody.getExpiration();
         Long timeout = requestBody.getTimeout();
 
-        TemporaryResource<EventDetectorBulkResponse, AbstractRestV2Exception> responseBody = bulkResourceManager.newTemporaryResource(
-                RESOURCE_TYPE_BULK_EVENT_DETECTOR, resourceId, user.getId(), expiration, timeout, (resource) -> {
-
-                    EventDetectorBulkResponse bulkResponse = new EventDetectorBulkResponse();
-                    int i = 0;
-
-                    resource.progressOrSuccess(bulkResponse, i++, requests.size());
-
-                    for (EventDetectorIndividualRequest request : requests) {
-                        UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
-                        EventDetectorIndividualResponse individualResponse = doIndividualRequest(request, restart, defaultAction, defaultBody, reqBuilder);
-                        bulkResponse.addResponse(individualResponse);
-
-                        resource.progressOrSuccess(bulkResponse, i++, requests.size());
-                    }
-
-                    return null;
-                });
+        TemporaryResource<EventDetectorBulkResponse, AbstractRestV2Exception> responseBody;
+        try {
+            responseBody = bulkResourceManager.newTemporaryResource(
+                    RESOURCE_TYPE_BULK_EVENT_DETECTOR, resourceId, user.getId(), expiration, timeout, (resource) -> {
+
+                        EventDetectorBulkResponse bulkResponse = new EventDetectorBulkResponse();
+
+                        bulkRequestExecutor.execute(requests.get(), requestCount, requestBody, resource, bulkResponse, request -> {
+                            UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
+                            return doIndividualRequest(request, restart, defaultAction, defaultBody, reqBuilder);
+                        }, request -> {
+                            AbstractEventDetectorModel<? extends AbstractEventDetectorVO> body = request.getBody() == null ? defaultBody : request.getBody();
+                            return Arrays.asList(request.getXid(), body == null ? null : body.getXid());
+                        });
+
+                        return null;
+                    });
+        } catch (RuntimeException e) {
+            if (source != null) {
+                source.close();
+            }
+            throw e;
+        }
+        if (source != null) {
+            // deleted even if the task never runs
+            responseBody.closeOnCompletion(source);
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(builder.path("/full-event-detectors/bulk/{id}").buildAndExpand(responseBody.getId()).toUri());
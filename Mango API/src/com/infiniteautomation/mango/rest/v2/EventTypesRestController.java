@@ -4,9 +4,7 @@
 package com.infiniteautomation.mango.rest.v2;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -28,6 +26,7 @@ import com.infiniteautomation.mango.rest.v2.model.event.AbstractEventTypeModel;
 import com.infiniteautomation.mango.rest.v2.model.event.AuditEventTypeModel;
 import com.infiniteautomation.mango.rest.v2.model.event.DataPointEventTypeModel;
 import com.infiniteautomation.mango.rest.v2.model.event.DataSourceEventTypeModel;
+import com.infiniteautomation.mango.rest.v2.model.event.EventTypeCatalogue;
 import com.infiniteautomation.mango.rest.v2.model.event.EventTypeVOModel;
 import com.infiniteautomation.mango.rest.v2.model.event.PublisherEventTypeModel;
 import com.infiniteautomation.mango.rest.v2.model.event.SystemEventTypeModel;
@@ -80,6 +79,7 @@ public class EventTypesRestController {
     private final EventDetectorDao eventDetectorDao;
     private final PermissionService permissionService;
     private final RestModelMapper modelMapper;
+    private final EventTypeCatalogue eventTypeCatalogue;
 
     @Autowired
     public EventTypesRestController(
@@ -88,13 +88,15 @@ public class EventTypesRestController {
             PublisherDao publisherDao,
             EventDetectorDao eventDetectorDao,
             PermissionService permissionService,
-            RestModelMapper modelMapper) {
+            RestModelMapper modelMapper,
+            EventTypeCatalogue eventTypeCatalogue) {
         this.dataPointService = dataPointService;
         this.dataSourceDao = dataSourceDao;
         this.publisherDao = publisherDao;
         this.eventDetectorDao = eventDetectorDao;
         this.permissionService = permissionService;
         this.modelMapper = modelMapper;
+        this.eventTypeCatalogue = eventTypeCatalogue;
     }
 
 
@@ -292,54 +294,20 @@ public class EventTypesRestController {
                 if(subtype != null)
                     throw new BadRequestException();
 
-                //Get Event Detectors, ensure only 1 data point in list
-                //TODO via query instead
-                List<AbstractPointEventDetectorVO> peds = this.eventDetectorDao.getForSourceType(EventTypeNames.DATA_POINT);
-                Map<Integer, DataPointVO> uniquePointsMap = new HashMap<>();
-                for(AbstractPointEventDetectorVO ped : peds) {
-                    uniquePointsMap.put(ped.getDataPoint().getId(), ped.getDataPoint());
-                }
-
-                for(DataPointVO vo : uniquePointsMap.values()) {
-                    //Shortcut to check permissions via event type
-                    if(permissionService.hasDataPointReadPermission(user, vo)) {
-                        vo.setTags(DataPointTagsDao.getInstance().getTagsForDataPointId(vo.getId()));
-                        DataPointEventTypeModel model = new DataPointEventTypeModel(new DataPointEventType(vo.getDataSourceId(), vo.getId(), 0, null), modelMapper.map(vo, DataPointModel.class, user));
-                        types.add(new EventTypeVOModel<DataPointEventType, DataPointModel,AbstractPointEventDetectorModel<?>>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true));
-                    }
-                }
-                found = true;
-                break;
+                //One per data point with event detectors, from the catalogue
+                return eventTypeCatalogue.getDataPointEventTypes(user);
             case EventTypeNames.DATA_SOURCE:
                 //There is no subtype for data sources
                 if(subtype != null)
                     throw new BadRequestException();
 
-                for(DataSourceVO vo : dataSourceDao.getAll()) {
-                    if(permissionService.hasDataSourceEditPermission(user, vo)) {
-                        AbstractDataSourceModel<?> dsModel = modelMapper.map(vo, AbstractDataSourceModel.class, user);
-                        DataSourceEventTypeModel model = new DataSourceEventTypeModel(new DataSourceEventType(vo.getId(), 0), dsModel);
-                        types.add(new EventTypeVOModel<DataSourceEventType, AbstractDataSourceModel<?>, String>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true));
-                    }
-                }
-                found = true;
-                break;
+                return eventTypeCatalogue.getDataSourceEventTypes(user);
             case EventTypeNames.PUBLISHER:
                 //There is no subtype for publishers
                 if(subtype != null)
                     throw new BadRequestException();
 
-                //There are no permissions for publishers
-                if(!permissionService.hasAdminRole(user))
-                    break;
-
-                for(PublisherVO<?> vo : publisherDao.getAll()) {
-                    AbstractPublisherModel<?,?> publisherModel = modelMapper.map(vo, AbstractPublisherModel.class, user);
-                    PublisherEventTypeModel model = new PublisherEventTypeModel(new PublisherEventType(vo.getId(), 0), publisherModel);
-                    types.add(new EventTypeVOModel<PublisherEventType, AbstractPublisherModel<?,?>, String>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true));
-                }
-                found = true;
-                break;
+                return eventTypeCatalogue.getPublisherEventTypes(user);
             case EventTypeNames.SYSTEM:
                 //System
                 for(SystemEventTypeDefinition def : ModuleRegistry.getDefinitions(SystemEventTypeDefinition.class)) {
@@ -12,15 +12,20 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -30,8 +35,8 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -59,13 +64,22 @@ import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
 import com.infiniteautomation.mango.rest.v2.exception.GenericRestException;
 import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
 import com.infiniteautomation.mango.rest.v2.exception.ResourceNotFoundException;
+import com.infiniteautomation.mango.rest.v2.model.JSONStreamedArray;
 import com.infiniteautomation.mango.rest.v2.model.RoleViews;
+import com.infiniteautomation.mango.rest.v2.model.filestore.ChunkedUploadManager;
+import com.infiniteautomation.mango.rest.v2.model.filestore.ChunkedUploadModel;
+import com.infiniteautomation.mango.rest.v2.model.filestore.CompressedFileCache;
+import com.infiniteautomation.mango.rest.v2.model.filestore.DirectoryListing;
+import com.infiniteautomation.mango.rest.v2.model.filestore.DirectoryZipWriter;
+import com.infiniteautomation.mango.rest.v2.model.filestore.FileDownloadHandler;
 import com.infiniteautomation.mango.rest.v2.model.filestore.FileModel;
 import com.infiniteautomation.mango.rest.v2.model.filestore.FileStoreModel;
+import com.infiniteautomation.mango.rest.v2.model.filestore.LazyFileModel;
 import com.infiniteautomation.mango.rest.v2.resolver.RemainingPath;
 import com.infiniteautomation.mango.spring.script.ScriptService;
 import com.infiniteautomation.mango.spring.service.FileStoreService;
 import com.infiniteautomation.mango.spring.service.RoleService;
+import com.infiniteautomation.mango.util.RQLUtils;
 import com.infiniteautomation.mango.util.exception.TranslatableIllegalArgumentException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.i18n.TranslatableException;
@@ -76,6 +90,7 @@ import com.serotonin.m2m2.vo.User;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import net.jazdw.rql.parser.ASTNode;
 import springfox.documentation.annotations.ApiIgnore;
 
 /**
@@ -88,15 +103,33 @@ import springfox.documentation.annotations.ApiIgnore;
 @RequestMapping("/file-stores")
 public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
 
+    /**
+     * Properties of {@link FileModel} which can be queried, comparisons against other names (e.g. download, zip or a
+     * cache busting parameter) are request parameters rather than RQL terms
+     */
+    private static final Set<Object> LISTING_PROPERTIES = Sets.newHashSet("filename", "mimeType", "lastModified",
+            "directory", "size", "folderPath");
+    private static final Set<String> COMPARISON_OPERATORS = Sets.newHashSet("eq", "ne", "lt", "le", "gt", "ge", "in",
+            "out", "like", "match", "contains");
+
     private final FileStoreService service;
     private final String cacheControlHeader;
+    private final FileDownloadHandler downloadHandler;
+    private final DirectoryZipWriter zipWriter;
+    private final ChunkedUploadManager uploadManager;
+    private final CompressedFileCache compressedFiles;
 
     @Autowired
     public FileStoreRestV2Controller(FileStoreService fileStoreService, @Value("${web.cache.maxAge.rest:0}") long maxAge,
-            ScriptService scriptService, RoleService roleService) {
+            ScriptService scriptService, RoleService roleService, FileDownloadHandler downloadHandler,
+            DirectoryZipWriter zipWriter, ChunkedUploadManager uploadManager, CompressedFileCache compressedFiles) {
         // use the rest max age setting but dont honor the nocache setting
         this.cacheControlHeader = CacheControl.maxAge(maxAge, TimeUnit.SECONDS).getHeaderValue();
         this.service = fileStoreService;
+        this.downloadHandler = downloadHandler;
+        this.zipWriter = zipWriter;
+        this.uploadManager = uploadManager;
+        this.compressedFiles = compressedFiles;
     }
 
     @ApiOperation(
@@ -180,6 +213,7 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
                             StreamUtils.copy(input, output);
                         }
                     }
+                    compressedFiles.compress(newFile.toPath());
                     fileModels.add(fileToModel(newFile, root, request.getServletContext()));
                 } catch(TranslatableException e) {
                     throw new GenericRestException(HttpStatus.FORBIDDEN, e.getTranslatableMessage());
@@ -190,6 +224,80 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         return new ResponseEntity<>(fileModels, HttpStatus.OK);
     }
 
+    @ApiOperation(
+            value = "Initiate a resumable chunked upload to a store with a path",
+            notes = "Must have write access to the store. Chunks are sent with PUT to /chunked-uploads/{id}"
+            )
+    @RequestMapping(method = RequestMethod.POST, value="/chunked-uploads/{name}/**")
+    public ResponseEntity<ChunkedUploadModel> initiateChunkedUpload(
+            @ApiParam(value = "Valid File Store name", required = true, allowMultiple = false)
+            @PathVariable("name") String name,
+            @ApiParam(value = "Total size of the file in bytes", required = false, allowMultiple = false)
+            @RequestParam(required=false) Long size,
+            @ApiParam(value = "Checksum algorithm", required = false, defaultValue=ChunkedUploadManager.DEFAULT_ALGORITHM, allowMultiple = false)
+            @RequestParam(required=false) String algorithm,
+            @RequestParam(required=false, defaultValue="false") boolean overwrite,
+            @ApiIgnore @RemainingPath String pathInStore,
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) throws IOException {
+
+        ChunkedUploadModel upload = uploadManager.initiate(user, name, pathInStore, size, algorithm, overwrite);
+
+        URI location = builder.path("/file-stores/chunked-uploads/{id}").buildAndExpand(upload.getId()).toUri();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location);
+        return new ResponseEntity<>(upload, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Get the status of a chunked upload", notes = "Use the received ranges to resume an upload")
+    @RequestMapping(method = RequestMethod.GET, value="/chunked-uploads/{id}")
+    public ChunkedUploadModel getChunkedUpload(
+            @PathVariable("id") String id,
+            @AuthenticationPrincipal User user) {
+        return uploadManager.get(user, id);
+    }
+
+    @ApiOperation(value = "Upload a chunk", notes = "The request body is written to the file at the offset")
+    @RequestMapping(method = RequestMethod.PUT, value="/chunked-uploads/{id}")
+    public ChunkedUploadModel uploadChunk(
+            @PathVariable("id") String id,
+            @ApiParam(value = "Position of the chunk in the file", required = true, allowMultiple = false)
+            @RequestParam long offset,
+            @AuthenticationPrincipal User user,
+            HttpServletRequest request) throws IOException {
+        return uploadManager.writeChunk(user, id, offset, request.getInputStream());
+    }
+
+    @ApiOperation(value = "Complete a chunked upload", notes = "Verifies the checksum and moves the file into the store")
+    @RequestMapping(method = RequestMethod.POST, value="/chunked-uploads/{id}")
+    public FileModel completeChunkedUpload(
+            @PathVariable("id") String id,
+            @ApiParam(value = "Hex encoded checksum of the whole file", required = true, allowMultiple = false)
+            @RequestParam String checksum,
+            @AuthenticationPrincipal User user,
+            HttpServletRequest request) throws IOException {
+
+        String storeName = uploadManager.get(user, id).getFileStoreName();
+        File file = uploadManager.complete(user, id, checksum);
+        compressedFiles.compress(file.toPath());
+        File root;
+        try {
+            root = this.service.getPathForWrite(storeName, "").toFile();
+        } catch(TranslatableIllegalArgumentException e) {
+            throw new AccessDeniedException(e.getTranslatableMessage());
+        }
+        return fileToModel(file, root, request.getServletContext());
+    }
+
+    @ApiOperation(value = "Abort a chunked upload")
+    @RequestMapping(method = RequestMethod.DELETE, value="/chunked-uploads/{id}")
+    public ResponseEntity<Void> abortChunkedUpload(
+            @PathVariable("id") String id,
+            @AuthenticationPrincipal User user) throws IOException {
+        uploadManager.abort(user, id);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     @ApiOperation(
             value = "Create a folder or copy/move/rename an existing file or folder",
             notes = "Must have write access to the store"
@@ -233,6 +341,7 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         if (!fileOrFolder.exists())
             throw new NotFoundRestException();
         try {
+            compressedFiles.invalidate(fileOrFolder.toPath());
             FileModel fileModel = fileToModel(service.moveFileOrFolder(fileStoreName, root, fileOrFolder, moveTo), root, request.getServletContext());
             return new ResponseEntity<>(fileModel, HttpStatus.OK);
         } catch(TranslatableException | TranslatableIllegalArgumentException e) {
@@ -286,6 +395,7 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         if(!file.exists())
             throw new NotFoundRestException();
 
+        compressedFiles.invalidate(file.toPath());
         if (file.isDirectory() && recursive) {
             FileUtils.deleteDirectory(file);
         } else {
@@ -379,13 +489,15 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         return new FileStoreModel(toDelete);
     }
 
-    @ApiOperation(value = "List a directory or download a file from a store")
+    @ApiOperation(value = "List a directory or download a file from a store", notes = "Directories can be downloaded as a zip")
     @RequestMapping(method = RequestMethod.GET, value="/{name}/**")
     public ResponseEntity<?> download(
             @ApiParam(value = "Valid File Store name", required = true, allowMultiple = false)
             @PathVariable("name") String name,
             @ApiParam(value = "Set content disposition to attachment", required = false, defaultValue="true", allowMultiple = false)
             @RequestParam(required=false, defaultValue="true") boolean download,
+            @ApiParam(value = "Download a directory as a zip", required = false, defaultValue="false", allowMultiple = false)
+            @RequestParam(required=false, defaultValue="false") boolean zip,
             @ApiIgnore @RemainingPath String pathInStore,
             @AuthenticationPrincipal User user,
             HttpServletRequest request,
@@ -405,9 +517,14 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
             throw new AccessDeniedException(e.getTranslatableMessage());
         }
 
-        // TODO Allow downloading directory as a zip
         if (file.isFile()) {
-            return getFile(file, download, request, response);
+            getFile(file, download, request, response);
+            // response has been written
+            return null;
+        } else if (zip) {
+            getZip(file, root, name, response);
+            // response has been written
+            return null;
         } else {
             return listStoreContents(file, root, request);
         }
@@ -429,10 +546,16 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
             HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
 
         File file = this.service.getPathForRead(name, pathInStore).toFile();
-        return getFile(file, download, request, response);
+        getFile(file, download, request, response);
+        // response has been written
+        return null;
     }
 
-    protected ResponseEntity<List<FileModel>> listStoreContents(File directory, File root, HttpServletRequest request) throws IOException {
+    /**
+     * Lists the directory entries as they are read from the directory. If the request has a RQL query (other than
+     * request parameters such as download) the filtered/sorted page is returned with a total, see {@link DirectoryListing}.
+     */
+    protected ResponseEntity<?> listStoreContents(File directory, File root, HttpServletRequest request) throws IOException {
         if (!directory.exists() || !directory.isDirectory()) {
             throw new ResourceNotFoundException();
         }
@@ -446,48 +569,118 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         if (!directory.exists())
             throw new ResourceNotFoundException(service.relativePath(root, directory));
 
-        Collection<File> files = Arrays.asList(directory.listFiles());
-        List<FileModel> found = new ArrayList<>(files.size());
-
-        for (File file : files)
-            found.add(fileToModel(file, root, request.getServletContext()));
-
         Set<MediaType> mediaTypes = Sets.newHashSet(MediaType.APPLICATION_JSON_UTF8);
         request.setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, mediaTypes);
 
-        return new ResponseEntity<>(found, responseHeaders, HttpStatus.OK);
+        String folderPath = service.relativePath(root, directory);
+        ServletContext context = request.getServletContext();
+        Function<Path, FileModel> toModel = p -> new LazyFileModel(p, folderPath, context::getMimeType);
+
+        ASTNode query = listingQuery(request);
+        if (query != null) {
+            return new ResponseEntity<>(new DirectoryListing(directory.toPath(), toModel, query), responseHeaders, HttpStatus.OK);
+        }
+
+        JSONStreamedArray entries = jgen -> {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+                for (Path p : stream) {
+                    jgen.writeObject(toModel.apply(p));
+                }
+            }
+        };
+        return new ResponseEntity<>(entries, responseHeaders, HttpStatus.OK);
     }
 
-    protected ResponseEntity<FileSystemResource> getFile(File file, boolean download, HttpServletRequest request, HttpServletResponse response)
-            throws HttpMediaTypeNotAcceptableException {
+    /**
+     * @return the RQL query without request parameters (comparisons which are not against a file property), null if
+     * there is nothing left
+     */
+    private ASTNode listingQuery(HttpServletRequest request) {
+        ASTNode rql = RQLUtils.parseRQLtoAST(request.getQueryString());
+        if (rql == null) {
+            return null;
+        }
+
+        List<Object> nodes = new ArrayList<>();
+        if ("and".equals(rql.getName())) {
+            nodes.addAll(rql.getArguments());
+        } else if (rql.getName() != null) {
+            nodes.add(rql);
+        }
+        nodes.removeIf(this::isRequestParameter);
 
-        if (!file.exists() || !file.isFile()) {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        return nodes.size() == 1 ? (ASTNode) nodes.get(0) : new ASTNode("and", nodes);
+    }
+
+    private boolean isRequestParameter(Object node) {
+        if (!(node instanceof ASTNode)) {
+            return true;
+        }
+        ASTNode term = (ASTNode) node;
+        return COMPARISON_OPERATORS.contains(term.getName()) &&
+                (term.getArgumentsSize() == 0 || !LISTING_PROPERTIES.contains(term.getArgument(0)));
+    }
+
+    /**
+     * Streams the directory to the response as a zip, the archive is built while it is sent
+     */
+    protected void getZip(File directory, File root, String storeName, HttpServletResponse response) throws IOException {
+        if (!directory.isDirectory()) {
             throw new ResourceNotFoundException();
         }
 
-        HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.set(HttpHeaders.CONTENT_DISPOSITION, download ? "attachment" : "inline");
+        String filename = (directory.equals(root) ? storeName : directory.getName()) + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.builder("attachment").filename(filename, StandardCharsets.UTF_8).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
 
-        Set<MediaType> mediaTypes = Sets.newHashSet(MediaType.APPLICATION_OCTET_STREAM);
-        request.setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, mediaTypes);
+        zipWriter.write(directory.toPath(), response.getOutputStream());
+    }
 
-        // dynamically set the producible media types to whatever the detected file type is
-        Optional<MediaType> fileMediaType = MediaTypeFactory.getMediaType(file.getName());
-        if (fileMediaType.isPresent()) {
-            mediaTypes.add(fileMediaType.get());
-        } else {
-            mediaTypes.add(MediaType.ALL);
+    /**
+     * Writes the file directly to the response, supports conditional and range requests and gzip content encoding
+     */
+    protected void getFile(File file, boolean download, HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-            // force the content type to application/octet for unknown file types
-            responseHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        // the attributes are read once, the ETag and the compressed copy must be for the same version of the file
+        Path path = file.toPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new ResourceNotFoundException();
+        }
+        if (!attributes.isRegularFile()) {
+            throw new ResourceNotFoundException();
         }
 
-        // this doesn't work as a header from ResponseEntity won't be set if it is already set in the response
-        //responseHeaders.setCacheControl(cacheControlHeader);
-        // set header directly on response instead
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, download ? "attachment" : "inline");
+
+        // set the content type to the detected file type, application/octet for unknown file types
+        Optional<MediaType> fileMediaType = MediaTypeFactory.getMediaType(file.getName());
+        response.setContentType(fileMediaType.orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
         response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControlHeader);
 
-        return new ResponseEntity<>(new FileSystemResource(file), responseHeaders, HttpStatus.OK);
+        // serve the cached gzip copy of compressible files, ranges are only supported for the uncompressed file
+        Path compressed = null;
+        if (compressedFiles.isCompressible(path)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (request.getHeader(HttpHeaders.RANGE) == null && compressedFiles.acceptsGzip(request)) {
+                compressed = compressedFiles.get(path, attributes);
+            }
+        }
+
+        try {
+            downloadHandler.write(path, attributes, compressed, CompressedFileCache.GZIP, request, response);
+        } catch (NoSuchFileException e) {
+            // deleted after the attributes were read
+            throw new ResourceNotFoundException();
+        }
     }
 
     /**
@@ -15,6 +15,7 @@ import java.util.Map.Entry;
 import java.util.function.BiFunction;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -23,6 +24,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -36,6 +38,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.infiniteautomation.mango.db.query.ConditionSortLimit;
 import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
 import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
+import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonDataCache;
+import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonDataCache.CachedJsonData;
 import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonDataModel;
 import com.infiniteautomation.mango.rest.v2.model.permissions.MangoPermissionModel;
 import com.infiniteautomation.mango.spring.service.JsonDataService;
@@ -70,10 +74,12 @@ public class JsonDataRestController {
 
     private final BiFunction<JsonDataVO, PermissionHolder, JsonDataModel> map = (vo, user) -> {return new JsonDataModel(vo);};
     private final JsonDataService service;
+    private final JsonDataCache cache;
 
     @Autowired
-    public JsonDataRestController(JsonDataService service) {
+    public JsonDataRestController(JsonDataService service, JsonDataCache cache) {
         this.service = service;
+        this.cache = cache;
     }
 
     @ApiOperation(
@@ -105,8 +111,9 @@ public class JsonDataRestController {
             HttpServletRequest request,
             @ApiParam(value = "XID", required = true, allowMultiple = false)
             @PathVariable String xid,
-            @AuthenticationPrincipal PermissionHolder user) throws UnsupportedEncodingException{
-        return getDataWithPath(request, xid, null, user);
+            @AuthenticationPrincipal PermissionHolder user,
+            HttpServletResponse response) throws UnsupportedEncodingException{
+        return getDataWithPath(request, xid, null, user, response);
     }
 
     @ApiOperation(
@@ -122,9 +129,14 @@ public class JsonDataRestController {
 
             @ApiParam(value = "Data path using dots as separator", required = true, allowMultiple = false)
             @PathVariable String path,
-            @AuthenticationPrincipal PermissionHolder user) throws UnsupportedEncodingException {
+            @AuthenticationPrincipal PermissionHolder user,
+            HttpServletResponse response) throws UnsupportedEncodingException {
+
+        CachedJsonData cached = cache.get(user, xid);
+        response.setHeader(HttpHeaders.ETAG, cached.getEntityTag());
 
-        JsonDataVO vo = service.get(xid);
+        // the cached data is shared, copy the vo before setting the sub node
+        JsonDataVO vo = (JsonDataVO) cached.getVo().copy();
         String[] pathParts = splitAndDecodePath(path);
         if (pathParts.length != 0) {
             JsonNode data = vo.getJsonData();
@@ -134,13 +146,47 @@ public class JsonDataRestController {
         return this.map.apply(vo, user);
     }
 
+    @ApiOperation(
+            value = "Apply a JSON Patch to JSON Data",
+            notes = "The patch is an array of RFC 6902 operations. Send the ETag from a previous request in the If-Match header " +
+                    "to only apply the patch if the data has not been modified since. The JSON data is not returned."
+            )
+    @ApiResponses({
+        @ApiResponse(code = 409, message = "Path does not exist or test operation failed"),
+        @ApiResponse(code = 412, message = "Data has been modified")
+    })
+    @RequestMapping(method = RequestMethod.PATCH, value="/{xid}")
+    public ResponseEntity<JsonDataModel> patchJsonData(
+            @ApiParam(value = "XID", required = true, allowMultiple = false)
+            @PathVariable String xid,
+
+            @ApiParam(value = "Patch operations", required = true)
+            @RequestBody(required=true)
+            JsonNode patch,
+
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @AuthenticationPrincipal PermissionHolder user,
+            UriComponentsBuilder builder) {
+
+        CachedJsonData saved = cache.patch(user, xid, patch, ifMatch);
+
+        JsonDataVO copied = (JsonDataVO) saved.getVo().copy();
+        copied.setJsonData(null);
+        URI location = builder.path("/json-data/{xid}").buildAndExpand(new Object[]{copied.getXid()}).toUri();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location);
+        headers.setETag(saved.getEntityTag());
+        return new ResponseEntity<>(this.map.apply(copied, user), headers, HttpStatus.OK);
+    }
+
     @ApiOperation(
             value = "Append JSON Data to existing"
             )
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Created", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 409, message = "Data Already Exists")
+        @ApiResponse(code = 409, message = "Data Already Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @RequestMapping(method = RequestMethod.PUT, value="/{xid}")
     public ResponseEntity<JsonDataModel> updateJsonData(
@@ -160,6 +206,7 @@ public class JsonDataRestController {
             @RequestBody(required=true)
             JsonNode data,
 
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @AuthenticationPrincipal PermissionHolder user,
             UriComponentsBuilder builder,
             HttpServletRequest request) {
@@ -172,7 +219,7 @@ public class JsonDataRestController {
                 editPermission,
                 name,
                 data,
-                user,
+                ifMatch, user,
                 builder,
                 request, HttpStatus.OK);
     }
@@ -184,7 +231,8 @@ public class JsonDataRestController {
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Created", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 403, message = "Data Doesn't Exists")
+        @ApiResponse(code = 403, message = "Data Doesn't Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @RequestMapping(method = RequestMethod.PUT, value="/{xid}/{path:.*}")
     public ResponseEntity<JsonDataModel> updateJsonData(
@@ -207,6 +255,7 @@ public class JsonDataRestController {
             @RequestBody(required=true)
             JsonNode data,
 
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @AuthenticationPrincipal PermissionHolder user,
             UriComponentsBuilder builder,
             HttpServletRequest request) throws UnsupportedEncodingException {
@@ -219,7 +268,7 @@ public class JsonDataRestController {
                 editPermission,
                 name,
                 data,
-                user,
+                ifMatch, user,
                 builder, request, HttpStatus.OK);
     }
 
@@ -230,7 +279,8 @@ public class JsonDataRestController {
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Created", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 409, message = "Data Already Exists")
+        @ApiResponse(code = 409, message = "Data Already Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(method = RequestMethod.POST, value="/{xid}")
@@ -251,6 +301,7 @@ public class JsonDataRestController {
             @RequestBody(required=true)
             JsonNode data,
 
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @AuthenticationPrincipal PermissionHolder user,
             UriComponentsBuilder builder,
             HttpServletRequest request) {
@@ -262,7 +313,7 @@ public class JsonDataRestController {
                 editPermission,
                 name,
                 data,
-                user, builder, request, HttpStatus.CREATED);
+                ifMatch, user, builder, request, HttpStatus.CREATED);
     }
 
     @ApiOperation(
@@ -272,7 +323,8 @@ public class JsonDataRestController {
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Created", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 409, message = "Data Already Exists")
+        @ApiResponse(code = 409, message = "Data Already Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(method = RequestMethod.POST, value="/{xid}/{path:.*}")
@@ -295,6 +347,7 @@ public class JsonDataRestController {
             @ApiParam( value = "Data to save")
             @RequestBody(required=true)
             JsonNode data,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @AuthenticationPrincipal PermissionHolder user,
             UriComponentsBuilder builder,
             HttpServletRequest request) throws UnsupportedEncodingException {
@@ -306,7 +359,7 @@ public class JsonDataRestController {
                 readPermission,
                 editPermission,
                 name,
-                data, user,
+                data, ifMatch, user,
                 builder, request, HttpStatus.CREATED);
     }
 
@@ -314,14 +367,17 @@ public class JsonDataRestController {
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Deleted", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 403, message = "Data Doesn't Exists")
+        @ApiResponse(code = 403, message = "Data Doesn't Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @RequestMapping(method = RequestMethod.DELETE, value="/{xid}")
     public JsonDataModel deleteJsonData(
             @ApiParam(value = "XID", required = true, allowMultiple = false)
             @PathVariable String xid,
-            @AuthenticationPrincipal PermissionHolder user) {
-        return deletePartialJsonData(xid, null, user);
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @AuthenticationPrincipal PermissionHolder user,
+            HttpServletResponse response) {
+        return deletePartialJsonData(xid, null, ifMatch, user, response);
     }
 
     @ApiOperation(value = "Partially Delete JSON Data",
@@ -329,7 +385,8 @@ public class JsonDataRestController {
     @ApiResponses({
         @ApiResponse(code = 201, message = "Data Deleted", response=JsonDataModel.class),
         @ApiResponse(code = 401, message = "Unauthorized Access", response=ResponseEntity.class),
-        @ApiResponse(code = 403, message = "Data Doesn't Exists")
+        @ApiResponse(code = 403, message = "Data Doesn't Exists"),
+        @ApiResponse(code = 412, message = "Data has been modified")
     })
     @RequestMapping(method = RequestMethod.DELETE, value="/{xid}/{path:.*}")
     public JsonDataModel deletePartialJsonData(
@@ -338,21 +395,30 @@ public class JsonDataRestController {
 
             @ApiParam(value = "Data path using dots as separator", required = true, allowMultiple = false)
             @PathVariable String path,
-            @AuthenticationPrincipal PermissionHolder user) {
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @AuthenticationPrincipal PermissionHolder user,
+            HttpServletResponse response) {
 
         String[] pathParts;
         if (path == null || (pathParts = path.split("\\.")).length == 0) {
             //Delete the whole thing
-            return map.apply(this.service.delete(xid), user);
+            return map.apply(cache.delete(user, xid, ifMatch), user);
         } else {
-            JsonDataVO vo = service.get(xid);
-            //Delete something from the map
-            JsonNode existingData = vo.getJsonData();
-            boolean deleted = deleteNode(existingData, pathParts);
-            if (!deleted) {
-                throw new NotFoundException();
-            }
-            return map.apply(service.update(xid, vo), user);
+            CachedJsonData saved = cache.update(user, xid, ifMatch, current -> {
+                if (current == null) {
+                    throw new NotFoundException();
+                }
+                JsonDataVO vo = copyForUpdate(current, true);
+                //Delete something from the map
+                JsonNode existingData = vo.getJsonData();
+                boolean deleted = deleteNode(existingData, pathParts);
+                if (!deleted) {
+                    throw new NotFoundException();
+                }
+                return service.update(xid, vo);
+            });
+            response.setHeader(HttpHeaders.ETAG, saved.getEntityTag());
+            return map.apply(saved.getVo(), user);
         }
     }
 
@@ -373,6 +439,7 @@ public class JsonDataRestController {
      * @param editPermissions
      * @param name
      * @param data
+     * @param ifMatch
      * @param builder
      * @param request
      * @param user
@@ -380,15 +447,31 @@ public class JsonDataRestController {
      */
     private ResponseEntity<JsonDataModel> modifyJsonData(MapOperation operation,
             String xid, String[] pathParts, MangoPermissionModel readPermissions, MangoPermissionModel editPermissions, String name,
-            JsonNode data, PermissionHolder user, UriComponentsBuilder builder, HttpServletRequest request, HttpStatus successStatus) {
+            JsonNode data, String ifMatch, PermissionHolder user, UriComponentsBuilder builder, HttpServletRequest request, HttpStatus successStatus) {
 
         // check we are using this method only for replace and append
         if (operation != MapOperation.REPLACE && operation != MapOperation.APPEND) throw new IllegalArgumentException();
 
-        JsonNode dataToReturn = data;
-        JsonDataVO vo;
-        try{
-            vo = service.get(xid);
+        JsonNode[] dataToReturn = {data};
+        CachedJsonData saved = cache.update(user, xid, ifMatch, current -> {
+            JsonDataVO vo;
+            if (current == null) {
+                // can't append/merge to a non-existing object or replace data at a path of a non existing object
+                if (operation == MapOperation.APPEND || pathParts.length > 0) {
+                    throw new NotFoundException();
+                }
+                //Going to create a new one
+                vo = new JsonDataVO();
+                vo.setXid(xid);
+                vo.setName(name);
+                vo.setReadPermission(readPermissions != null ? readPermissions.getPermission() : null);
+                vo.setEditPermission(editPermissions!= null ? editPermissions.getPermission() : null);
+                vo.setJsonData(data);
+                return this.service.insert(vo);
+            }
+
+            // data replaced at the root does not need to be copied
+            vo = copyForUpdate(current, operation == MapOperation.APPEND || pathParts.length > 0);
             //Replace the data
             vo.setName(name);
             vo.setReadPermission(readPermissions != null ? readPermissions.getPermission() : null);
@@ -400,33 +483,32 @@ public class JsonDataRestController {
                 JsonNode newData = replaceNode(existingData, pathParts, data);
                 vo.setJsonData(newData);
             } else if (operation == MapOperation.APPEND) {
-                dataToReturn = mergeNode(existingData, pathParts, data);
+                dataToReturn[0] = mergeNode(existingData, pathParts, data);
             }
-            this.service.update(xid, vo);
-        }catch(NotFoundException e) {
-            // can't append/merge to a non-existing object or replace data at a path of a non existing object
-            if (operation == MapOperation.APPEND || pathParts.length > 0) {
-                throw e;
-            }
-            //Going to create a new one
-            vo = new JsonDataVO();
-            vo.setXid(xid);
-            vo.setName(name);
-            vo.setReadPermission(readPermissions != null ? readPermissions.getPermission() : null);
-            vo.setEditPermission(editPermissions!= null ? editPermissions.getPermission() : null);
-            vo.setJsonData(data);
-            this.service.insert(vo);
-        }
+            return this.service.update(xid, vo);
+        });
         // can't modify the vo data here as it will be sent out over websocket asynchronously
-        JsonDataVO copied = (JsonDataVO) vo.copy();
+        JsonDataVO copied = (JsonDataVO) saved.getVo().copy();
         // return only the data that was saved, i.e. the data that we supplied a path to
-        copied.setJsonData(dataToReturn);
-        URI location = builder.path("/json-data/{xid}").buildAndExpand(new Object[]{vo.getXid()}).toUri();
+        copied.setJsonData(dataToReturn[0]);
+        URI location = builder.path("/json-data/{xid}").buildAndExpand(new Object[]{copied.getXid()}).toUri();
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(location);
+        headers.setETag(saved.getEntityTag());
         return new ResponseEntity<>(this.map.apply(copied, user), headers, successStatus);
     }
 
+    /**
+     * Copy the cached data so it can be modified
+     */
+    private JsonDataVO copyForUpdate(CachedJsonData cached, boolean copyData) {
+        JsonDataVO vo = (JsonDataVO) cached.getVo().copy();
+        if (copyData && vo.getJsonData() != null) {
+            vo.setJsonData(vo.getJsonData().deepCopy());
+        }
+        return vo;
+    }
+
     int toArrayIndex(String fieldName) {
         try {
             return Integer.valueOf(fieldName);
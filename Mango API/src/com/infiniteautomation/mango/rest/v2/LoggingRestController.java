@@ -15,6 +15,7 @@ import java.util.stream.Stream;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -33,6 +34,8 @@ import com.infiniteautomation.mango.rest.v2.model.FilteredStreamWithTotal;
 import com.infiniteautomation.mango.rest.v2.model.JSONStreamedArray;
 import com.infiniteautomation.mango.rest.v2.model.StreamWithTotal;
 import com.infiniteautomation.mango.rest.v2.model.filestore.FileModel;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileIndexCache;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileSearchExecutor;
 import com.infiniteautomation.mango.rest.v2.model.logging.LogMessageModel;
 import com.infiniteautomation.mango.rest.v2.model.logging.LogQueryArrayStream;
 import com.infiniteautomation.mango.util.RQLUtils;
@@ -55,6 +58,15 @@ import net.jazdw.rql.parser.ASTNode;
 @RequestMapping("/logging")
 public class LoggingRestController {
 
+    private final LogFileIndexCache indexes;
+    private final LogFileSearchExecutor searchExecutor;
+
+    @Autowired
+    public LoggingRestController(LogFileIndexCache indexes, LogFileSearchExecutor searchExecutor) {
+        this.indexes = indexes;
+        this.searchExecutor = searchExecutor;
+    }
+
     private FileModel toModel(Path p) {
         File file = p.toFile();
         return new FileModel(
@@ -133,7 +145,7 @@ public class LoggingRestController {
         if(file.exists()){
             //Pattern pattern = new
             if(filename.matches(LogQueryArrayStream.LOGFILE_REGEX)){
-                return new LogQueryArrayStream(filename, query);
+                return new LogQueryArrayStream(filename, query, indexes);
             }else {
                 throw new AccessDeniedException();
             }
@@ -142,6 +154,27 @@ public class LoggingRestController {
         }
     }
 
+    @PreAuthorize("isAdmin()")
+    @ApiOperation(value = "Query all ma.log logfiles", notes = "Searches the current and rolled (including gzipped) log files, newest messages first",
+        response = LogMessageModel.class, responseContainer = "List")
+    @ApiImplicitParams({
+        @ApiImplicitParam(name = "level", paramType="query", allowableValues = "ALL,TRACE,DEBUG,INFO,WARN,ERROR,FATAL,OFF"),
+        @ApiImplicitParam(name = "classname", paramType="query"),
+        @ApiImplicitParam(name = "method", paramType="query"),
+        @ApiImplicitParam(name = "lineNumber", paramType="query", dataType = "int"),
+        @ApiImplicitParam(name = "time", paramType="query", dataType = "date"),
+        @ApiImplicitParam(name = "message", paramType="query")
+    })
+    @RequestMapping(method = RequestMethod.GET, value="/search")
+    public JSONStreamedArray search(HttpServletRequest request) {
+        ASTNode query = RQLUtils.parseRQLtoAST(request.getQueryString());
+        return jgen -> {
+            for (LogMessageModel message : searchExecutor.search(query)) {
+                jgen.writeObject(message);
+            }
+        };
+    }
+
     @PreAuthorize("isAdmin()")
     @ApiOperation(value = "View log", notes = "Optionally download file as attachment", response = String.class)
     @RequestMapping(method = RequestMethod.GET, produces={"text/plain"}, value = "/view/{filename}")
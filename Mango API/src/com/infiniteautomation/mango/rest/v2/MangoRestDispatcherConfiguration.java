@@ -29,6 +29,7 @@ import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.util.UrlPathHelper;
@@ -41,6 +42,7 @@ import com.fasterxml.jackson.dataformat.csv.CsvParser;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.infiniteautomation.mango.rest.v2.JsonEmportV2Controller.ImportStatusProvider;
+import com.infiniteautomation.mango.rest.v2.advice.RequestTimingAdvice;
 import com.infiniteautomation.mango.rest.v2.genericcsv.CsvJacksonModule;
 import com.infiniteautomation.mango.rest.v2.genericcsv.GenericCSVMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.HtmlHttpMessageConverter;
@@ -78,6 +80,7 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
     final PartialUpdateArgumentResolver partialUpdateResolver;
     final RemainingPathResolver remainingPathResolver;
     final RqlResolver rqlResolver;
+    final RequestTimingAdvice requestTimingAdvice;
     final List<HttpMessageConverter<?>> converters;
     /**
      * Should be supplied by
@@ -93,13 +96,15 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
             RemainingPathResolver remainingPathResolver,
             RqlResolver rqlResolver,
             RestModelMapper modelMapper,
-            AsyncTaskExecutor asyncTaskExecutor) {
+            AsyncTaskExecutor asyncTaskExecutor,
+            RequestTimingAdvice requestTimingAdvice) {
         this.mapper = mapper;
         this.partialUpdateResolver = resolver;
         this.remainingPathResolver = remainingPathResolver;
         this.rqlResolver = rqlResolver;
         this.converters = new ArrayList<>();
         this.asyncTaskExecutor = asyncTaskExecutor;
+        this.requestTimingAdvice = requestTimingAdvice;
 
         mapper
         .registerModule(new MangoRestV2JacksonModule())
@@ -210,6 +215,11 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
         resolvers.add(rqlResolver);
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestTimingAdvice);
+    }
+
     @Override
     public void addFormatters(FormatterRegistry registry) {
         registry.addConverter(new MangoPermissionModelConverter(mapper, new MangoPermissionModelDeserializer()));
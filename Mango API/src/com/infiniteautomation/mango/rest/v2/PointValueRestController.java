@@ -50,6 +50,7 @@ import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueImportRes
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgeDataPointValuesModel;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgePointValuesExecutor;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgePointValuesResponseModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
@@ -71,6 +72,7 @@ import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporaryResourceManager;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.service.DataPointService;
@@ -95,7 +97,6 @@ import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
-import com.serotonin.m2m2.util.DateUtils;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
@@ -120,11 +121,14 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
     private final MangoTaskTemporaryResourceManager<PurgePointValuesResponseModel> resourceManager;
     private final PermissionService permissionService;
     private final DataPointService dataPointService;
+    private final PurgePointValuesExecutor purgeExecutor;
 
     @Autowired
     public PointValueRestController(TemporaryResourceWebSocketHandler websocket,
-            PermissionService permissionService, DataPointService dataPointService) {
-        this.resourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket);
+            PermissionService permissionService, DataPointService dataPointService, TemporaryResourceResultStore resultStore,
+            PurgePointValuesExecutor purgeExecutor) {
+        this.resourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, resultStore);
+        this.purgeExecutor = purgeExecutor;
         this.permissionService = permissionService;
         this.dataPointService = dataPointService;
     }
@@ -1126,7 +1130,8 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
 
     @ApiOperation(
             value = "Purge Point Values for one or many data points, or a single data source",
-            notes = "User must have edit access to data source and its points, use created header to track progress/cancel"
+            notes = "User must have edit access to data source and its points, use created header to track progress/cancel. " +
+            "Points are purged in parallel and values are deleted in time chunks, progress is updated after every chunk."
             )
     @RequestMapping(method = RequestMethod.POST, value="/purge")
     public ResponseEntity<TemporaryResource<PurgePointValuesResponseModel, AbstractRestV2Exception>> purgePointValues(HttpServletRequest request,
@@ -1179,10 +1184,8 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
                     int maximum = xids.size();
                     int position = 0;
 
-                    //Initial status
-                    resource.progressOrSuccess(result, position, maximum);
-
-
+                    //Check the points before purging any of them
+                    List<DataPointVO> toPurge = new ArrayList<>(maximum);
                     for(String xid : xids) {
                         try {
                             //Get the point and its data source XID
@@ -1196,26 +1199,17 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
 
                             //Ensure edit permission
                             permissionService.ensureDataSourceEditPermission(user, ds);
-
-                            //Do purge based on settings
-                            if(model.isPurgeAll())
-                                Common.runtimeManager.purgeDataPointValuesWithoutCount(dp);
-                            else if(model.isUseTimeRange())
-                                Common.runtimeManager.purgeDataPointValuesBetween(dp, model.getTimeRange().getFrom().getTime(), model.getTimeRange().getTo().getTime());
-                            else {
-                                long before = DateUtils.minus(Common.timer.currentTimeMillis(), TimePeriodType.convertFrom(model.getDuration().getType()), model.getDuration().getPeriods());
-                                Common.runtimeManager.purgeDataPointValuesWithoutCount(dp, before);
-                            }
-                            result.getSuccessfullyPurged().add(xid);
+                            toPurge.add(dp);
+                            continue;
                         }catch(NotFoundException e) {
                             result.getNotFound().add(xid);
                         }catch(PermissionException e) {
                             result.getNoEditPermission().add(xid);
                         }
                         position++;
-                        resource.progressOrSuccess(result, position, maximum);
                     }
 
+                    purgeExecutor.purge(resource, result, toPurge, position, maximum, model);
                     return null;
                 });
 
@@ -3,9 +3,9 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
 
 import javax.servlet.http.HttpServletRequest;
@@ -21,6 +21,7 @@ import com.infiniteautomation.mango.rest.v2.model.FilteredStreamWithTotal;
 import com.infiniteautomation.mango.rest.v2.model.RestModelMapper;
 import com.infiniteautomation.mango.rest.v2.model.StreamWithTotal;
 import com.infiniteautomation.mango.rest.v2.model.realtime.RealTimeDataPointValueModel;
+import com.infiniteautomation.mango.rest.v2.model.realtime.RunningDataPointIndex;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.util.RQLUtils;
 import com.serotonin.m2m2.Common;
@@ -50,74 +51,125 @@ public class RealTimeDataRestController {
     private final UriComponentsBuilder imageServletBuilder = UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg");
 
     private final PermissionService permissionService;
+    private final RunningDataPointIndex index;
     private final BiFunction<DataPointRT, PermissionHolder, RealTimeDataPointValueModel> map;
 
 
     @Autowired
-    public RealTimeDataRestController(PermissionService permissionService, RestModelMapper modelMapper){
+    public RealTimeDataRestController(PermissionService permissionService, RestModelMapper modelMapper, RunningDataPointIndex index){
         this.permissionService = permissionService;
-        this.map = (rt, user) -> {
-            RealTimeDataPointValueModel model = new RealTimeDataPointValueModel();
+        this.index = index;
+        this.map = (rt, user) -> new LazyRealTimeDataPointValueModel(rt, user);
+    }
+
+    /**
+     * Query the User's Real Time Data
+     * @param request
+     * @param limit
+     * @return
+     */
+    @ApiOperation(value = "Query realtime values",
+            notes = "Check the status member to ensure the point is OK not DISABLED or UNRELIABLE. " +
+            "Equality (eq/in) on xid, name, deviceName and dataSourceXid is answered from an index of the running points.")
+    @RequestMapping(method = RequestMethod.GET)
+    public StreamWithTotal<RealTimeDataPointValueModel> query(
+            @AuthenticationPrincipal User user,
+            HttpServletRequest request) {
+        ASTNode query = RQLUtils.parseRQLtoAST(request.getQueryString());
 
-            model.setXid(rt.getVO().getXid());
-            model.setDeviceName(rt.getVO().getDeviceName());
-            model.setName(rt.getVO().getName());
+        //Select the candidates using the index, the models only read the point's value when a property needs it
+        List<DataPointRT> candidates = index.candidates(query);
+        return new FilteredStreamWithTotal<>(() -> candidates.stream()
+                .filter(rt -> Common.runtimeManager.getDataPoint(rt.getId()) == rt)
+                .filter(rt -> permissionService.hasDataPointReadPermission(user, rt.getVO()))
+                .map(rt -> map.apply(rt, user)), query);
+    }
+
+    /**
+     * The point's identifiers are set up front, its current value, status and attributes are read on first access
+     * so they are only read for the points that are filtered on or returned.
+     */
+    private class LazyRealTimeDataPointValueModel extends RealTimeDataPointValueModel {
+        private final DataPointRT rt;
+        private final PermissionHolder user;
+        private boolean loaded;
+
+        LazyRealTimeDataPointValueModel(DataPointRT rt, PermissionHolder user) {
+            this.rt = rt;
+            this.user = user;
+            setXid(rt.getVO().getXid());
+            setDeviceName(rt.getVO().getDeviceName());
+            setName(rt.getVO().getName());
+            setDataSourceXid(rt.getVO().getDataSourceXid());
+            setTags(rt.getVO().getTags());
+        }
+
+        private void load() {
+            if (loaded) return;
+            loaded = true;
 
             PointValueTime pvt = rt.getPointValue();
             if(pvt != null) {
                 if(pvt.getValue() instanceof ImageValue) {
-                    model.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), rt.getId()).toUri());
+                    setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), rt.getId()).toUri());
                 }else {
-                    model.setValue(pvt.getValue().getObjectValue());
+                    setValue(pvt.getValue().getObjectValue());
                 }
-                model.setTimestamp(pvt.getTime());
-                model.setRenderedValue(rt.getVO().getTextRenderer().getText(pvt, TextRenderer.HINT_FULL));
+                setTimestamp(pvt.getTime());
+                setRenderedValue(rt.getVO().getTextRenderer().getText(pvt, TextRenderer.HINT_FULL));
             }
 
             if(user instanceof User) {
-                model.setType(rt.getVO().getPointLocator().getDataTypeMessage().translate(((User)user).getTranslations()));
+                setType(rt.getVO().getPointLocator().getDataTypeMessage().translate(((User)user).getTranslations()));
             }else {
-                model.setType(rt.getVO().getPointLocator().getDataTypeMessage().translate(Common.getTranslations()));
+                setType(rt.getVO().getPointLocator().getDataTypeMessage().translate(Common.getTranslations()));
             }
 
-            model.setAttributes(new HashMap<>(rt.getAttributes()));
+            setAttributes(new HashMap<>(rt.getAttributes()));
 
             Object unreliable = rt.getAttribute(DataSourceRT.ATTR_UNRELIABLE_KEY);
             if ((unreliable instanceof Boolean) && ((Boolean) unreliable)) {
-                model.setStatus(UNRELIABLE);
+                setStatus(UNRELIABLE);
             }else {
-                model.setStatus(OK);
+                setStatus(OK);
             }
+        }
 
-            model.setTags(rt.getVO().getTags());
-            return model;
-        };
-    }
+        @Override
+        public Object getValue() {
+            load();
+            return super.getValue();
+        }
 
-    /**
-     * Query the User's Real Time Data
-     * @param request
-     * @param limit
-     * @return
-     */
-    @ApiOperation(value = "Query realtime values",
-            notes = "Check the status member to ensure the point is OK not DISABLED or UNRELIABLE")
-    @RequestMapping(method = RequestMethod.GET)
-    public StreamWithTotal<RealTimeDataPointValueModel> query(
-            @AuthenticationPrincipal User user,
-            HttpServletRequest request) {
-        //First build all the models
-        ASTNode query = RQLUtils.parseRQLtoAST(request.getQueryString());
-        List<DataPointRT> points = Common.runtimeManager.getRunningDataPoints();
-        List<RealTimeDataPointValueModel> models = new ArrayList<>();
-        for(DataPointRT rt : points) {
-            if(permissionService.hasDataPointReadPermission(user, rt.getVO())) {
-                models.add(map.apply(rt, user));
-            }
+        @Override
+        public String getRenderedValue() {
+            load();
+            return super.getRenderedValue();
+        }
+
+        @Override
+        public String getType() {
+            load();
+            return super.getType();
         }
 
-        //Query the results
-        return new FilteredStreamWithTotal<>(models, query);
+        @Override
+        public long getTimestamp() {
+            load();
+            return super.getTimestamp();
+        }
+
+        @Override
+        public String getStatus() {
+            load();
+            return super.getStatus();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            load();
+            return super.getAttributes();
+        }
     }
 
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.infiniteautomation.mango.rest.v2.model.timing.HandlerTimingModel;
+import com.infiniteautomation.mango.rest.v2.model.timing.RequestTimingStatistics;
+import com.infiniteautomation.mango.rest.v2.model.timing.SlowRequestModel;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Timing statistics for the REST API, how long requests take and which phase of the request the time is spent in
+ */
+@Api(value="Request timing statistics")
+@RestController
+@RequestMapping("/request-timing")
+public class RequestTimingRestController {
+
+    private final RequestTimingStatistics statistics;
+
+    @Autowired
+    public RequestTimingRestController(RequestTimingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @ApiOperation(
+            value = "Get request duration percentiles for each handler method",
+            notes = "Durations are in ms, ordered by total time spent in the handler. Admin only"
+            )
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.GET, value = "/handlers")
+    public List<HandlerTimingModel> getHandlers(
+            @ApiParam(value = "Include the histogram buckets", required = false, defaultValue = "false")
+            @RequestParam(value = "buckets", defaultValue = "false") boolean buckets) {
+        return statistics.getHandlers(buckets);
+    }
+
+    @ApiOperation(
+            value = "Get the most recent slow requests",
+            notes = "Newest first, the threshold and number of requests kept are set via env.properties. Admin only"
+            )
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.GET, value = "/slow-requests")
+    public List<SlowRequestModel> getSlowRequests() {
+        return statistics.getSlowRequests();
+    }
+
+    @ApiOperation(value = "Reset the statistics and clear the slow requests", notes = "Admin only")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.DELETE)
+    public ResponseEntity<Void> reset() {
+        statistics.reset();
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
@@ -4,19 +4,26 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
+import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.rest.v2.model.ValueMonitorModel;
+import com.infiniteautomation.mango.rest.v2.model.system.SystemMetricsHistory;
+import com.infiniteautomation.mango.rest.v2.model.system.ValueMonitorHistoryModel;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.util.exception.NotFoundException;
 import com.serotonin.m2m2.Common;
@@ -44,9 +51,12 @@ public class SystemMetricsRestController {
     //Permissions Definition for Internal Metrics
     private final PermissionService service;
     private final SystemMetricsReadPermissionDefinition definition;
+    private final SystemMetricsHistory history;
+
     @Autowired
-    public SystemMetricsRestController(PermissionService service) {
+    public SystemMetricsRestController(PermissionService service, SystemMetricsHistory history) {
         this.service = service;
+        this.history = history;
         this.definition = (SystemMetricsReadPermissionDefinition) ModuleRegistry.getPermissionDefinition(SystemMetricsReadPermissionDefinition.PERMISSION);
     }
 
@@ -64,6 +74,30 @@ public class SystemMetricsRestController {
                 .map(m -> new ValueMonitorModel(m)).collect(Collectors.toList());
     }
 
+    @ApiOperation(
+            value = "Get the recent values of System Metrics",
+            notes = "Values are sampled periodically and kept in memory for a limited time, use the websocket to receive new samples"
+            )
+    @RequestMapping(method = RequestMethod.GET, value="/history")
+    public List<ValueMonitorHistoryModel> getHistory(
+            @ApiParam(value = "Monitor ids, all monitors if not specified", required = false, allowMultiple = true)
+            @RequestParam(value="ids", required=false) String[] ids,
+            @ApiParam(value = "From time (inclusive)", required = false, allowMultiple = false)
+            @RequestParam(value="from", required=false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime from,
+            @ApiParam(value = "To time (exclusive)", required = false, allowMultiple = false)
+            @RequestParam(value="to", required=false)
+            @DateTimeFormat(iso = ISO.DATE_TIME) ZonedDateTime to,
+            @AuthenticationPrincipal User user) {
+
+        MangoPermission permission = definition.getPermission();
+        service.ensurePermission(user, permission);
+
+        long fromMs = from == null ? Long.MIN_VALUE : from.toInstant().toEpochMilli();
+        long toMs = to == null ? Long.MAX_VALUE : to.toInstant().toEpochMilli();
+        return history.query(ids == null ? null : Arrays.asList(ids), fromMs, toMs);
+    }
+
     @ApiOperation(
             value = "Get the current value for one System Metric by its ID",
             notes = ""
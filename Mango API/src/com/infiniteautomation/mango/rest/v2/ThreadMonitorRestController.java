@@ -4,6 +4,7 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
@@ -14,17 +15,40 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.model.thread.HotThreadsModel;
 import com.infiniteautomation.mango.rest.v2.model.thread.ThreadModel;
 import com.infiniteautomation.mango.rest.v2.model.thread.ThreadModelProperty;
+import com.infiniteautomation.mango.rest.v2.model.thread.ThreadProfileModel;
+import com.infiniteautomation.mango.rest.v2.model.thread.ThreadProfileRequestModel;
+import com.infiniteautomation.mango.rest.v2.model.thread.ThreadSampler;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -39,9 +63,21 @@ import io.swagger.annotations.ApiParam;
 @RequestMapping("/threads")
 public class ThreadMonitorRestController {
 
+    /**
+     * The hot threads request blocks the request thread for the interval, longer measurements should use the profiler
+     */
+    private static final long MAX_HOT_THREADS_INTERVAL = 5000;
+
     private final ThreadGroup root; //The root group, always will be there
+    private final MangoTaskTemporaryResourceManager<ThreadProfileModel> profileManager;
+    private final ThreadSampler sampler;
+
+    @Autowired
+    public ThreadMonitorRestController(TemporaryResourceWebSocketHandler websocket, PermissionService permissionService,
+            TemporaryResourceResultStore resultStore, ThreadSampler sampler){
 
-    public ThreadMonitorRestController(){
+        this.profileManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket, resultStore);
+        this.sampler = sampler;
 
         ThreadGroup tg = Thread.currentThread().getThreadGroup();
         ThreadGroup ptg;
@@ -127,6 +163,112 @@ public class ThreadMonitorRestController {
         return new ResponseEntity<>(models, headers, HttpStatus.OK);
     }
 
+    @ApiOperation(value = "Get the threads using the most CPU or allocating the most memory right now",
+            notes = "Blocks for the interval, measures the CPU time and allocated bytes of each thread between the start and end of the interval. " +
+            "Usage is also grouped by thread pool (thread name with numbers removed). Use the profiler for longer measurements.")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.GET, value="/hot")
+    public HotThreadsModel getHotThreads(
+            @ApiParam(value = "Measurement interval (ms), maximum 5000", allowMultiple = false, defaultValue="1000")
+            @RequestParam(value="interval", defaultValue="1000") long interval,
+            @ApiParam(value = "Maximum number of threads to return", allowMultiple = false, defaultValue="10")
+            @RequestParam(value="limit", defaultValue="10") int limit,
+            @ApiParam(value = "Order by CPU or ALLOCATED", allowMultiple = false, defaultValue="CPU")
+            @RequestParam(value="orderBy", defaultValue="CPU") String orderBy) throws InterruptedException {
+
+        if (interval <= 0 || interval > MAX_HOT_THREADS_INTERVAL) {
+            throw new BadRequestException(new TranslatableMessage("validate.between", 1, MAX_HOT_THREADS_INTERVAL));
+        }
+        if (limit <= 0) {
+            throw new BadRequestException(new TranslatableMessage("validate.greaterThanZero"));
+        }
+        return sampler.hotThreads(interval, limit, "ALLOCATED".equalsIgnoreCase(orderBy));
+    }
+
+    @ApiOperation(value = "Start a sampling profiler",
+            notes = "Samples the stacks of all threads at the interval for the duration, use the created header to track progress/cancel. " +
+            "The result contains the stacks in collapsed (flame graph) format.")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.POST, value="/profile")
+    public ResponseEntity<TemporaryResource<ThreadProfileModel, AbstractRestV2Exception>> startProfile(
+            @RequestBody ThreadProfileRequestModel model,
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) {
+
+        model.ensureValid();
+        // the task must be allowed to run for longer than the sampling duration
+        long timeout = model.getTimeout() == null || model.getTimeout() < 0 ? TemporaryResourceManager.DEFAULT_TIMEOUT_MILLISECONDS : model.getTimeout();
+        timeout = Math.max(timeout, model.getDuration() + 60000);
+        TemporaryResource<ThreadProfileModel, AbstractRestV2Exception> resource = profileManager.newTemporaryResource(
+                "THREAD_PROFILE", null, user.getId(), model.getExpiry(), timeout,
+                (r) -> {
+                    sampler.profile(r, model);
+                    return null;
+                });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/threads/profile/{id}").buildAndExpand(resource.getId()).toUri());
+        return new ResponseEntity<>(resource, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Get the status/result of a sampling profiler")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.GET, value="/profile/{id}")
+    public TemporaryResource<ThreadProfileModel, AbstractRestV2Exception> getProfile(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+        return profileManager.get(id);
+    }
+
+    @ApiOperation(value = "Get the stacks of a completed sampling profiler in collapsed format",
+            notes = "One stack per line, frames separated by semicolons followed by the sample count. Can be rendered by flame graph tools.")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.GET, value="/profile/{id}/collapsed", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getCollapsedProfile(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @ApiParam(value = "Return as file", allowMultiple = false, defaultValue="false")
+            @RequestParam(value="asFile", defaultValue="false") boolean asFile) throws IOException {
+
+        TemporaryResource<ThreadProfileModel, AbstractRestV2Exception> resource = profileManager.get(id);
+        ThreadProfileModel result = resource.getStatus() == TemporaryResourceStatus.SUCCESS ? resource.loadResult(ThreadProfileModel.class) : null;
+        if (result == null) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.profileNotComplete"));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if(asFile){
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy_MM_dd-HH_mm_ss_'profile.collapsed'");
+            headers.setContentDisposition(ContentDisposition.parse("attachment;filename=" + sdf.format(resource.getStartTime())));
+        }
+        return new ResponseEntity<>(result.toCollapsed(), headers, HttpStatus.OK);
+    }
+
+    @ApiOperation(value = "Cancel a sampling profiler", notes = "Only allowed operation is to change the status to CANCELLED.")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.PUT, value="/profile/{id}")
+    public TemporaryResource<ThreadProfileModel, AbstractRestV2Exception> updateProfile(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @RequestBody TemporaryResourceStatusUpdate body) {
+
+        TemporaryResource<ThreadProfileModel, AbstractRestV2Exception> resource = profileManager.get(id);
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            resource.cancel();
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+        return resource;
+    }
+
+    @ApiOperation(value = "Remove a sampling profiler", notes = "Will only remove the profiler if it is complete.")
+    @PreAuthorize("isAdmin()")
+    @RequestMapping(method = RequestMethod.DELETE, value="/profile/{id}")
+    public void removeProfile(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id) {
+        profileManager.get(id).remove();
+    }
 
     private Thread[] getAllThreads( ) {
         final ThreadMXBean thbean = ManagementFactory.getThreadMXBean( );
@@ -16,8 +16,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.infiniteautomation.mango.db.query.pojo.RQLFilterJavaBean;
 import com.infiniteautomation.mango.rest.v2.model.FilteredStreamWithTotal;
+import com.infiniteautomation.mango.rest.v2.model.RQLFilterCachedJavaBean;
 import com.infiniteautomation.mango.rest.v2.model.RestModelMapper;
 import com.infiniteautomation.mango.rest.v2.model.StreamWithTotal;
 import com.infiniteautomation.mango.rest.v2.model.event.EventInstanceModel;
@@ -75,7 +75,7 @@ public class UserEventsV2Controller extends AbstractMangoRestV2Controller{
         return new FilteredStreamWithTotal<>(events, new EventFilter(query));
     }
 
-    public static class EventFilter extends RQLFilterJavaBean<EventInstanceModel> {
+    public static class EventFilter extends RQLFilterCachedJavaBean<EventInstanceModel> {
 
         public EventFilter(ASTNode node) {
             super(node);
@@ -4,24 +4,29 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.jooq.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -36,9 +41,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterators;
 import com.infiniteautomation.mango.permission.UserRolesDetails;
 import com.infiniteautomation.mango.rest.v2.bulk.BulkRequest;
+import com.infiniteautomation.mango.rest.v2.bulk.BulkRequestExecutor;
 import com.infiniteautomation.mango.rest.v2.bulk.BulkResponse;
+import com.infiniteautomation.mango.rest.v2.bulk.SpooledCSVRequest;
 import com.infiniteautomation.mango.rest.v2.bulk.VoAction;
 import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
 import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
@@ -61,6 +70,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporary
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.db.UserTableDefinition;
@@ -103,10 +113,16 @@ public class UserRestController {
     private final MangoSessionRegistry sessionRegistry;
     private final Map<String, Field<?>> fieldMap;
     private final Map<String, Function<Object, Object>> valueConverterMap;
+    private final BulkRequestExecutor bulkRequestExecutor;
+    private final ObjectMapper csvObjectMapper;
 
     @Autowired
-    public UserRestController(UsersService service, TemporaryResourceWebSocketHandler websocket, MangoSessionRegistry sessionRegistry, UserTableDefinition userTable) {
-        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<>(service.getPermissionService(), websocket);
+    public UserRestController(UsersService service, TemporaryResourceWebSocketHandler websocket, MangoSessionRegistry sessionRegistry, UserTableDefinition userTable,
+            BulkRequestExecutor bulkRequestExecutor, @Qualifier("csvObjectMapper") ObjectMapper csvObjectMapper,
+            TemporaryResourceResultStore resultStore) {
+        this.bulkResourceManager = new MangoTaskTemporaryResourceManager<>(service.getPermissionService(), websocket, resultStore);
+        this.bulkRequestExecutor = bulkRequestExecutor;
+        this.csvObjectMapper = csvObjectMapper;
 
         this.service = service;
         this.sessionRegistry = sessionRegistry;
@@ -452,37 +468,40 @@ public class UserRestController {
 
 
     @ApiOperation(value = "Bulk get/create/update/delete users",
-            notes = "User must have read/edit permission for the user",
+            notes = "User must have read/edit permission for the user. " +
+            "The CSV is spooled to a temporary file and streamed row by row, it is not held in memory. " +
+            "A row which can't be deserialized fails the operation, the preceding rows will have been processed.",
             consumes=MediaTypes.CSV_VALUE)
     @RequestMapping(method = RequestMethod.POST, value="/bulk", consumes=MediaTypes.CSV_VALUE)
     public ResponseEntity<TemporaryResource<UserBulkResponse, AbstractRestV2Exception>> bulkUserOperationCSV(
-            @RequestBody
-            List<UserActionAndModel> users,
-
             @AuthenticationPrincipal
             User user,
             HttpServletRequest servletRequest,
             UriComponentsBuilder builder,
-            Authentication authentication) {
+            Authentication authentication) throws IOException {
 
-        UserBulkRequest bulkRequest = new UserBulkRequest();
+        MediaType contentType = servletRequest.getContentType() == null ? null : MediaType.parseMediaType(servletRequest.getContentType());
+        SpooledCSVRequest<UserActionAndModel> spooled = SpooledCSVRequest.spool(servletRequest.getInputStream(), contentType,
+                csvObjectMapper, csvObjectMapper.getTypeFactory().constructType(UserActionAndModel.class));
 
-        bulkRequest.setRequests(users.stream().map(actionAndModel -> {
-            UserModel u = actionAndModel.getModel();
-            VoAction action = actionAndModel.getAction();
-            String originalUsername = actionAndModel.getOriginalUsername();
-            if (originalUsername == null && u != null) {
-                originalUsername = u.getUsername();
-            }
+        UserBulkRequest bulkRequest = new UserBulkRequest();
+        return this.startBulkUserOperation(bulkRequest, () -> Iterators.transform(spooled.iterator(), this::csvRowToRequest),
+                spooled.getRowCount(), spooled, user, servletRequest, authentication, builder);
+    }
 
-            UserIndividualRequest request = new UserIndividualRequest();
-            request.setAction(action == null ? VoAction.UPDATE : action);
-            request.setUsername(originalUsername);
-            request.setBody(u);
-            return request;
-        }).collect(Collectors.toList()));
+    private UserIndividualRequest csvRowToRequest(UserActionAndModel actionAndModel) {
+        UserModel u = actionAndModel.getModel();
+        VoAction action = actionAndModel.getAction();
+        String originalUsername = actionAndModel.getOriginalUsername();
+        if (originalUsername == null && u != null) {
+            originalUsername = u.getUsername();
+        }
 
-        return this.bulkUserOperation(bulkRequest, user, servletRequest, authentication, builder);
+        UserIndividualRequest request = new UserIndividualRequest();
+        request.setAction(action == null ? VoAction.UPDATE : action);
+        request.setUsername(originalUsername);
+        request.setBody(u);
+        return request;
     }
 
     @ApiOperation(value = "Bulk get/create/update/delete users", notes = "User must have read/edit permission for the user")
@@ -497,8 +516,6 @@ public class UserRestController {
             Authentication authentication,
             UriComponentsBuilder builder) {
 
-        VoAction defaultAction = requestBody.getAction();
-        UserModel defaultBody = requestBody.getBody();
         List<UserIndividualRequest> requests = requestBody.getRequests();
 
         if (requests == null) {
@@ -507,29 +524,54 @@ public class UserRestController {
             throw new BadRequestException(new TranslatableMessage("rest.error.cantBeEmpty", "requests"));
         }
 
+        return this.startBulkUserOperation(requestBody, requests::iterator, requests.size(), null, user, servletRequest, authentication, builder);
+    }
+
+    /**
+     * @param requestBody supplies the default action/body and resource settings
+     * @param requests supplies the individual requests when the resource task runs
+     * @param requestCount the number of individual requests
+     * @param source spooled request body, closed when the resource completes, may be null
+     */
+    private ResponseEntity<TemporaryResource<UserBulkResponse, AbstractRestV2Exception>> startBulkUserOperation(UserBulkRequest requestBody,
+            Supplier<Iterator<UserIndividualRequest>> requests, int requestCount, SpooledCSVRequest<?> source,
+            User user, HttpServletRequest servletRequest, Authentication authentication, UriComponentsBuilder builder) {
+
+        VoAction defaultAction = requestBody.getAction();
+        UserModel defaultBody = requestBody.getBody();
         String resourceId = requestBody.getId();
         Long expiration = requestBody.getExpiration();
         Long timeout = requestBody.getTimeout();
 
-        TemporaryResource<UserBulkResponse, AbstractRestV2Exception> responseBody = bulkResourceManager.newTemporaryResource(
-                RESOURCE_TYPE_BULK_USER, resourceId, user.getId(), expiration, timeout, (resource) -> {
-
-                    UserBulkResponse bulkResponse = new UserBulkResponse();
-                    int i = 0;
-
-                    resource.progressOrSuccess(bulkResponse, i++, requests.size());
-
-                    for (UserIndividualRequest request : requests) {
-                        UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
-                        User resourceUser = (User) Common.getUser();
-                        UserIndividualResponse individualResponse = doIndividualRequest(request, defaultAction, defaultBody, resourceUser, servletRequest, authentication, reqBuilder);
-                        bulkResponse.addResponse(individualResponse);
-
-                        resource.progressOrSuccess(bulkResponse, i++, requests.size());
-                    }
-
-                    return null;
-                });
+        TemporaryResource<UserBulkResponse, AbstractRestV2Exception> responseBody;
+        try {
+            responseBody = bulkResourceManager.newTemporaryResource(
+                    RESOURCE_TYPE_BULK_USER, resourceId, user.getId(), expiration, timeout, (resource) -> {
+
+                        UserBulkResponse bulkResponse = new UserBulkResponse();
+
+                        bulkRequestExecutor.execute(requests.get(), requestCount, requestBody, resource, bulkResponse, request -> {
+                            UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
+                            User resourceUser = (User) Common.getUser();
+                            return doIndividualRequest(request, defaultAction, defaultBody, resourceUser, servletRequest, authentication, reqBuilder);
+                        }, request -> {
+                            UserModel body = request.getBody() == null ? defaultBody : request.getBody();
+                            return body == null ? Collections.singletonList(request.getUsername()) :
+                                Arrays.asList(request.getUsername(), body.getUsername(), body.getEmail());
+                        });
+
+                        return null;
+                    });
+        } catch (RuntimeException e) {
+            if (source != null) {
+                source.close();
+            }
+            throw e;
+        }
+        if (source != null) {
+            // deleted even if the task never runs
+            responseBody.closeOnCompletion(source);
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.setLocation(builder.path("/users/bulk/{id}").buildAndExpand(responseBody.getId()).toUri());
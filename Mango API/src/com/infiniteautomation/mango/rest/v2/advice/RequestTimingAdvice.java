@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.advice;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.infiniteautomation.mango.rest.v2.model.timing.RequestTimer;
+import com.infiniteautomation.mango.rest.v2.model.timing.RequestTimingStatistics;
+
+/**
+ * Starts a {@link RequestTimer} when a request reaches its handler and records it in the
+ * {@link RequestTimingStatistics} once the request completes.
+ *
+ * <p>The response body is written after the handler returns so the Server-Timing header is added just before
+ * serialization starts, it contains every phase up until that point. Time spent serializing the body is only
+ * available via the statistics. The header exposes internal timings to any client so it is disabled unless
+ * {@code rest.requestTiming.serverTimingHeader} is set.</p>
+ */
+@ControllerAdvice
+public class RequestTimingAdvice implements ResponseBodyAdvice<Object>, AsyncHandlerInterceptor {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String TIMER_ATTRIBUTE = RequestTimingAdvice.class.getName() + ".timer";
+
+    private final RequestTimingStatistics statistics;
+    private final ConcurrentMap<Method, String> handlerNames = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RequestTimingAdvice(RequestTimingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (statistics.isEnabled()) {
+            // re-dispatch of an async request already has a timer
+            RequestTimer timer = (RequestTimer) request.getAttribute(TIMER_ATTRIBUTE);
+            if (timer == null) {
+                timer = new RequestTimer(filterNanos(request));
+                request.setAttribute(TIMER_ATTRIBUTE, timer);
+            }
+            RequestTimer.bind(timer);
+        }
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        // handlers which do not return a body
+        RequestTimer timer = (RequestTimer) request.getAttribute(TIMER_ATTRIBUTE);
+        if (timer != null && statistics.isServerTimingHeader() && !response.isCommitted() && !response.containsHeader(SERVER_TIMING_HEADER)) {
+            response.setHeader(SERVER_TIMING_HEADER, timer.toServerTiming());
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the timer stays in the request attributes and is bound to the thread which completes the request
+        RequestTimer.unbind();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestTimer timer = (RequestTimer) request.getAttribute(TIMER_ATTRIBUTE);
+        if (timer == null) {
+            return;
+        }
+        RequestTimer.unbind();
+        request.removeAttribute(TIMER_ATTRIBUTE);
+        timer.stop();
+
+        Principal principal = request.getUserPrincipal();
+        statistics.record(handlerName(handler), request.getMethod(), request.getRequestURI(), response.getStatus(),
+                principal == null ? null : principal.getName(), timer);
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return statistics.isEnabled();
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        RequestTimer timer = RequestTimer.current();
+        if (timer != null) {
+            if (statistics.isServerTimingHeader()) {
+                response.getHeaders().set(SERVER_TIMING_HEADER, timer.toServerTiming());
+            }
+            timer.startPhase(RequestTimer.SERIALIZATION);
+        }
+        return body;
+    }
+
+    private String handlerName(Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            return handlerNames.computeIfAbsent(handlerMethod.getMethod(),
+                    m -> handlerMethod.getBeanType().getSimpleName() + "." + m.getName());
+        }
+        return handler.getClass().getSimpleName();
+    }
+
+    /**
+     * @return time from when Jetty started processing the request until now, 0 if unknown
+     */
+    private long filterNanos(HttpServletRequest request) {
+        Request baseRequest = Request.getBaseRequest(request);
+        if (baseRequest == null || baseRequest.getTimeStamp() <= 0) {
+            return 0;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - baseRequest.getTimeStamp()));
+    }
+}
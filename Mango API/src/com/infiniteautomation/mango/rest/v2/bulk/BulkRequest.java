@@ -18,6 +18,8 @@ public class BulkRequest<A, B, IR extends IndividualRequest<A, B>> {
     private List<IR> requests;
     private Long timeout;
     private Long expiration;
+    private Integer parallelism;
+    private Integer batchSize;
 
     public String getId() {
         return id;
@@ -55,4 +57,23 @@ public class BulkRequest<A, B, IR extends IndividualRequest<A, B>> {
     public void setExpiration(Long expiration) {
         this.expiration = expiration;
     }
+    /**
+     * Maximum number of batches to execute concurrently, limited by the server configuration. Requests which conflict
+     * with each other (e.g. have the same xid) are always executed sequentially.
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+    /**
+     * Number of consecutive requests with the same action taken at a time by each concurrent execution, limited by the server configuration
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.bulk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.StatusUpdateException;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Executes the individual requests of a {@link BulkRequest} for a temporary resource.
+ *
+ * <p>Consecutive requests with the same action form a group, groups with different actions always run one after
+ * another. The requests of a group may be executed in parallel if no two of them conflict, i.e. share one of the keys
+ * (xid, username etc.) which identify what they create or modify. A group containing conflicting requests is executed
+ * sequentially so that uniqueness validation sees the result of the preceding requests. Each request is executed in
+ * its own transaction so the runtime state always matches its response. Responses are always added to the
+ * {@link BulkResponse} in the same order as the requests.</p>
+ *
+ * <p>The thread calling execute also executes requests, the tasks submitted to the executor only help it out. It never
+ * waits for a task which has not started so the executor can't be starved by bulk requests waiting on each other.</p>
+ *
+ * <p>Requests may also be supplied as an iterator (e.g. streamed from a spooled CSV file), in which case at most
+ * {@code rest.bulk.streamBufferSize} requests are held in memory at once.</p>
+ */
+@Component
+public class BulkRequestExecutor {
+
+    private final ExecutorService executor;
+    private final PermissionService permissionService;
+    private final int maxParallelism;
+    private final int maxBatchSize;
+    private final int streamBufferSize;
+
+    @Autowired
+    public BulkRequestExecutor(ExecutorService executor, PermissionService permissionService,
+            @Value("${rest.bulk.maxParallelism:4}") int maxParallelism,
+            @Value("${rest.bulk.maxBatchSize:10}") int maxBatchSize,
+            @Value("${rest.bulk.streamBufferSize:1000}") int streamBufferSize) {
+        this.executor = executor;
+        this.permissionService = permissionService;
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.streamBufferSize = Math.max(1, streamBufferSize);
+    }
+
+    /**
+     * Execute all the requests, blocks until every request has been executed or the resource is cancelled/timed out.
+     *
+     * @param bulkRequest the bulk request containing the individual requests, default action, parallelism and batch size
+     * @param resource resource to report progress to, it completes successfully when the last response is added
+     * @param bulkResponse the result of the resource which the responses are added to
+     * @param requestHandler executes an individual request, must catch its own exceptions and return a response with the error set
+     * @param conflictKeys returns the keys identifying what a request creates or modifies (null keys are ignored),
+     *        if null all requests are executed sequentially
+     */
+    public <A, B, IR extends IndividualRequest<A, B>, RS extends RestExceptionIndividualResponse<A, ?>, T extends BulkResponse<RS>> void execute(
+            BulkRequest<A, B, IR> bulkRequest, TemporaryResource<T, ?> resource, T bulkResponse,
+            Function<IR, RS> requestHandler, Function<IR, Collection<?>> conflictKeys) {
+
+        List<IR> requests = bulkRequest.getRequests();
+        this.execute(requests.iterator(), requests.size(), requests.size(), bulkRequest, resource, bulkResponse, requestHandler, conflictKeys);
+    }
+
+    /**
+     * Execute requests read from an iterator, blocks until every request has been executed or the resource is cancelled/timed out.
+     * Requests are read from the iterator in chunks so only a bounded number are held in memory.
+     *
+     * @param requests the individual requests
+     * @param requestCount the number of requests the iterator will return, used to report progress
+     * @param bulkRequest supplies the default action, parallelism and batch size, its list of requests is ignored
+     * @param resource resource to report progress to, it completes successfully when the last response is added
+     * @param bulkResponse the result of the resource which the responses are added to
+     * @param requestHandler executes an individual request, must catch its own exceptions and return a response with the error set
+     * @param conflictKeys returns the keys identifying what a request creates or modifies (null keys are ignored),
+     *        if null all requests are executed sequentially
+     */
+    public <A, B, IR extends IndividualRequest<A, B>, RS extends RestExceptionIndividualResponse<A, ?>, T extends BulkResponse<RS>> void execute(
+            Iterator<IR> requests, int requestCount, BulkRequest<A, B, IR> bulkRequest, TemporaryResource<T, ?> resource, T bulkResponse,
+            Function<IR, RS> requestHandler, Function<IR, Collection<?>> conflictKeys) {
+        this.execute(requests, requestCount, streamBufferSize, bulkRequest, resource, bulkResponse, requestHandler, conflictKeys);
+    }
+
+    private <A, B, IR extends IndividualRequest<A, B>, RS extends RestExceptionIndividualResponse<A, ?>, T extends BulkResponse<RS>> void execute(
+            Iterator<IR> requests, int requestCount, int chunkSize, BulkRequest<A, B, IR> bulkRequest, TemporaryResource<T, ?> resource, T bulkResponse,
+            Function<IR, RS> requestHandler, Function<IR, Collection<?>> conflictKeys) {
+
+        int parallelism = conflictKeys == null ? 1 : limit(bulkRequest.getParallelism(), maxParallelism);
+        int batchSize = limit(bulkRequest.getBatchSize(), maxBatchSize);
+        A defaultAction = bulkRequest.getAction();
+
+        Progress<T> progress = new Progress<>(resource, bulkResponse, requestCount);
+        progress.update(0);
+
+        int offset = 0;
+        while (requests.hasNext() && !progress.isStopped()) {
+            List<IR> chunk = new ArrayList<>(Math.max(0, Math.min(chunkSize, requestCount - offset)));
+            while (chunk.size() < chunkSize && requests.hasNext()) {
+                chunk.add(requests.next());
+            }
+
+            Execution<A, IR, RS, T> execution = new Execution<>(chunk, offset, progress, requestHandler);
+
+            int groupStart = 0;
+            while (groupStart < chunk.size() && !progress.isStopped()) {
+                A action = actionFor(chunk.get(groupStart), defaultAction);
+                int groupEnd = groupStart + 1;
+                while (groupEnd < chunk.size() && Objects.equals(action, actionFor(chunk.get(groupEnd), defaultAction))) {
+                    groupEnd++;
+                }
+
+                if (parallelism == 1 || groupEnd - groupStart <= batchSize || hasConflicts(chunk.subList(groupStart, groupEnd), conflictKeys)) {
+                    for (int i = groupStart; i < groupEnd && !progress.isStopped(); i += batchSize) {
+                        execution.executeBatch(i, Math.min(i + batchSize, groupEnd));
+                    }
+                } else {
+                    execution.executeParallel(groupStart, groupEnd, parallelism, batchSize);
+                }
+                groupStart = groupEnd;
+            }
+
+            offset += chunk.size();
+        }
+    }
+
+    private static int limit(Integer requested, int max) {
+        if (requested == null || requested <= 0) {
+            return max;
+        }
+        return Math.min(requested, max);
+    }
+
+    private static <A> A actionFor(IndividualRequest<A, ?> request, A defaultAction) {
+        return request.getAction() == null ? defaultAction : request.getAction();
+    }
+
+    /**
+     * @return true if any two of the requests share a key, string keys are compared ignoring case as the database may
+     */
+    private static <IR> boolean hasConflicts(List<IR> requests, Function<IR, Collection<?>> conflictKeys) {
+        Set<Object> seen = new HashSet<>();
+        for (IR request : requests) {
+            Collection<?> keys = conflictKeys.apply(request);
+            if (keys == null) continue;
+            for (Object key : new HashSet<>(keys)) {
+                if (key instanceof String) {
+                    key = ((String) key).toLowerCase(Locale.ROOT);
+                }
+                if (key != null && !seen.add(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports the number of responses added to the bulk response to the resource
+     */
+    private static class Progress<T> {
+        private final TemporaryResource<T, ?> resource;
+        private final T bulkResponse;
+        private final int maximum;
+        private volatile boolean stopped = false;
+
+        Progress(TemporaryResource<T, ?> resource, T bulkResponse, int maximum) {
+            this.resource = resource;
+            this.bulkResponse = bulkResponse;
+            this.maximum = maximum;
+        }
+
+        boolean isStopped() {
+            return stopped || resource.isComplete();
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        void update(int position) {
+            try {
+                resource.progressOrSuccess(bulkResponse, position, maximum);
+            } catch (StatusUpdateException e) {
+                // resource was cancelled or timed out
+                stopped = true;
+            }
+        }
+    }
+
+    private class Execution<A, IR extends IndividualRequest<A, ?>, RS extends RestExceptionIndividualResponse<A, ?>, T extends BulkResponse<RS>> {
+        private final List<IR> requests;
+        private final int offset;
+        private final Progress<T> progress;
+        private final T bulkResponse;
+        private final Function<IR, RS> requestHandler;
+        private final PermissionHolder user;
+
+        /**
+         * Responses which are complete but can't be added to the bulk response until all the preceding responses are complete
+         */
+        private final List<RS> completed;
+        private int nextToPublish = 0;
+
+        /**
+         * @param requests a chunk of the requests
+         * @param offset number of requests which were executed before this chunk
+         */
+        Execution(List<IR> requests, int offset, Progress<T> progress, Function<IR, RS> requestHandler) {
+            this.requests = requests;
+            this.offset = offset;
+            this.progress = progress;
+            this.bulkResponse = progress.bulkResponse;
+            this.requestHandler = requestHandler;
+            this.user = Common.getUser();
+
+            this.completed = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                this.completed.add(null);
+            }
+        }
+
+        private boolean isStopped() {
+            return progress.isStopped();
+        }
+
+        /**
+         * Execute a group in batches, on this thread and on up to parallelism - 1 executor threads. Returns once every
+         * batch which was started has finished.
+         */
+        void executeParallel(int start, int end, int parallelism, int batchSize) {
+            Batches batches = new Batches(start, end, batchSize);
+            List<Future<?>> helpers = new ArrayList<>(parallelism - 1);
+            try {
+                for (int i = 1; i < parallelism; i++) {
+                    helpers.add(executor.submit(() -> permissionService.runAs(user, batches::run)));
+                }
+            } catch (RejectedExecutionException e) {
+                // executor is saturated, this thread executes the remaining batches
+            }
+
+            batches.run();
+
+            // helpers which have not started yet are not needed any more, only wait for batches which are running
+            helpers.forEach(f -> f.cancel(false));
+            try {
+                batches.awaitRunning();
+            } catch (InterruptedException e) {
+                progress.stop();
+                Thread.currentThread().interrupt();
+            }
+            batches.rethrowFailure();
+        }
+
+        void executeBatch(int start, int end) {
+            for (int i = start; i < end && !isStopped(); i++) {
+                complete(i, requestHandler.apply(requests.get(i)));
+            }
+            publish();
+        }
+
+        private synchronized void complete(int index, RS response) {
+            completed.set(index, response);
+        }
+
+        /**
+         * Add all contiguous completed responses to the bulk response and update the resource progress
+         */
+        synchronized void publish() {
+            if (isStopped()) return;
+
+            int published = nextToPublish;
+            while (nextToPublish < completed.size() && completed.get(nextToPublish) != null) {
+                bulkResponse.addResponse(completed.set(nextToPublish, null));
+                nextToPublish++;
+            }
+
+            if (nextToPublish > published) {
+                progress.update(offset + nextToPublish);
+            }
+        }
+
+        /**
+         * The batches of a group, taken in order by whichever thread is free
+         */
+        private class Batches implements Runnable {
+            private final int end;
+            private final int batchSize;
+            private final AtomicInteger next;
+            private int running = 0;
+            private RuntimeException failure;
+
+            Batches(int start, int end, int batchSize) {
+                this.end = end;
+                this.batchSize = batchSize;
+                this.next = new AtomicInteger(start);
+            }
+
+            @Override
+            public void run() {
+                while (!isStopped()) {
+                    // counted as running before taking a batch so awaitRunning() can't miss it
+                    synchronized (this) {
+                        running++;
+                    }
+                    try {
+                        int batchStart = next.getAndAdd(batchSize);
+                        if (batchStart >= end) {
+                            return;
+                        }
+                        executeBatch(batchStart, Math.min(batchStart + batchSize, end));
+                    } catch (RuntimeException e) {
+                        progress.stop();
+                        synchronized (this) {
+                            if (failure == null) {
+                                failure = e;
+                            }
+                        }
+                    } finally {
+                        synchronized (this) {
+                            running--;
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+
+            synchronized void awaitRunning() throws InterruptedException {
+                while (running > 0) {
+                    wait();
+                }
+            }
+
+            synchronized void rethrowFailure() {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+    }
+}
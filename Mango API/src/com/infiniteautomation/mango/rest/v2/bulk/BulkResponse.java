@@ -3,37 +3,65 @@
  */
 package com.infiniteautomation.mango.rest.v2.bulk;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.IncrementalResult;
 
 /**
  * @author Jared Wiltshire
  * @param <IR> individual response type
  */
-public class BulkResponse<IR extends IndividualResponse<?, ?, ?>> {
-    private boolean hasError;
-    private ConcurrentLinkedQueue<IR> responses;
-    private Collection<IR> unmodifiableResponses;
-    
+public class BulkResponse<IR extends IndividualResponse<?, ?, ?>> implements IncrementalResult<IR> {
+    private volatile boolean hasError;
+    private final List<IR> responses;
+
     public BulkResponse() {
         this.hasError = false;
-        this.responses = new ConcurrentLinkedQueue<>();
-        this.unmodifiableResponses = Collections.unmodifiableCollection(this.responses);
+        this.responses = new ArrayList<>();
     }
 
     public void addResponse(IR response) {
         if (response.getError() != null) {
             this.hasError = true;
         }
-        this.responses.add(response);
+        synchronized (this.responses) {
+            this.responses.add(response);
+        }
     }
-    
+
     public boolean isHasError() {
         return hasError;
     }
 
+    /**
+     * @return snapshot of the responses added so far, in the order they were added
+     */
     public Collection<IR> getResponses() {
-        return unmodifiableResponses;
+        synchronized (this.responses) {
+            return Collections.unmodifiableList(new ArrayList<>(this.responses));
+        }
+    }
+
+    @JsonIgnore
+    @Override
+    public int getItemCount() {
+        synchronized (this.responses) {
+            return this.responses.size();
+        }
+    }
+
+    @Override
+    public List<IR> getItems(int fromIndex) {
+        synchronized (this.responses) {
+            int size = this.responses.size();
+            if (fromIndex >= size) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<>(this.responses.subList(Math.max(0, fromIndex), size));
+        }
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.genericcsv.GenericCSVMessageConverter;
+import com.infiniteautomation.mango.rest.v2.genericcsv.GenericCSVRowReader;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * A CSV request body which has been copied to a temporary file so it can be processed row by row after the HTTP
+ * request has completed, e.g. by a bulk temporary resource. Every row is parsed while the body is being copied so
+ * a malformed CSV is still rejected up front and the number of rows is known before processing starts. Rows are only
+ * deserialized once, as they are read back.
+ *
+ * <p>The temporary file is deleted when this request is closed, the owner must close it even if processing never
+ * starts.</p>
+ *
+ * @param <T> the type each row is deserialized to
+ */
+public class SpooledCSVRequest<T> implements Closeable {
+
+    private static final Log log = LogFactory.getLog(SpooledCSVRequest.class);
+
+    private final Path file;
+    private final Charset charset;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+    private final int rowCount;
+    private final List<Closeable> openReaders = new CopyOnWriteArrayList<>();
+
+    private SpooledCSVRequest(Path file, Charset charset, ObjectMapper objectMapper, ObjectReader reader, int rowCount) {
+        this.file = file;
+        this.charset = charset;
+        this.objectMapper = objectMapper;
+        this.reader = reader;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Copy the request body to a temporary file, validating and counting the rows as they are copied.
+     *
+     * @param body the request body
+     * @param contentType content type of the request, used to determine the charset
+     * @param objectMapper the CSV object mapper
+     * @param rowType the type each row is deserialized to
+     * @return
+     * @throws IOException
+     * @throws BadRequestException if the CSV has no rows
+     */
+    public static <T> SpooledCSVRequest<T> spool(InputStream body, MediaType contentType, ObjectMapper objectMapper, JavaType rowType) throws IOException {
+        Charset charset = GenericCSVMessageConverter.charsetForContentType(contentType);
+        ObjectReader reader = objectMapper.readerFor(rowType);
+
+        Path tempDir = Common.getTempPath();
+        Files.createDirectories(tempDir);
+        Path file = Files.createTempFile(tempDir, "bulk-request-", ".csv");
+
+        try {
+            int rowCount;
+            try (OutputStream out = Files.newOutputStream(file);
+                    Reader in = GenericCSVRowReader.createReader(new TeeInputStream(body, out), charset)) {
+
+                GenericCSVRowReader rowReader = new GenericCSVRowReader(new CSVReader(in), objectMapper.getNodeFactory());
+                while (rowReader.readRow() != null) {
+                    // only counting, the rows are deserialized when they are read back
+                }
+                rowCount = rowReader.getRowCount();
+            }
+
+            if (rowCount == 0) {
+                throw new BadRequestException(new TranslatableMessage("rest.error.cantBeEmpty", "requests"));
+            }
+
+            return new SpooledCSVRequest<>(file, charset, objectMapper, reader, rowCount);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of rows in the CSV, not including the header
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads the rows back from the temporary file, only the current row is held in memory.
+     * The file is closed once the last row is read or when this request is closed. The iterator throws a
+     * {@link BadRequestException} when it reaches a row which can't be deserialized.
+     *
+     * @return
+     */
+    public Iterator<T> iterator() {
+        try {
+            Reader in = GenericCSVRowReader.createReader(Files.newInputStream(file), charset);
+            openReaders.add(in);
+            GenericCSVRowReader rowReader = new GenericCSVRowReader(new CSVReader(in), objectMapper.getNodeFactory());
+            return new RowIterator(in, rowReader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes any open readers and deletes the temporary file
+     */
+    @Override
+    public void close() {
+        for (Closeable in : openReaders) {
+            closeQuietly(in);
+        }
+        openReaders.clear();
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to delete spooled request " + file, e);
+            }
+        }
+    }
+
+    private void closeQuietly(Closeable in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private class RowIterator implements Iterator<T> {
+        private final Reader in;
+        private final GenericCSVRowReader rowReader;
+        private JsonNode next;
+        private int rowNumber;
+
+        RowIterator(Reader in, GenericCSVRowReader rowReader) {
+            this.in = in;
+            this.rowReader = rowReader;
+            this.next = readNext();
+        }
+
+        private JsonNode readNext() {
+            try {
+                JsonNode row = rowReader.readRow();
+                if (row == null) {
+                    openReaders.remove(in);
+                    closeQuietly(in);
+                }
+                return row;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            JsonNode row = next;
+            rowNumber++;
+            next = readNext();
+            try {
+                return reader.readValue(objectMapper.treeAsTokens(row));
+            } catch (JsonProcessingException e) {
+                throw new BadRequestException(new TranslatableMessage("common.default", "Row " + rowNumber + ": " + e.getOriginalMessage()), e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@
 package com.infiniteautomation.mango.rest.v2.genericcsv;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
@@ -21,8 +20,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.input.BOMInputStream;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -43,7 +40,6 @@ import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.infiniteautomation.mango.rest.v2.model.ArrayWithTotal;
@@ -310,18 +306,9 @@ public class GenericCSVMessageConverter extends AbstractJackson2HttpMessageConve
             Charset charset = this.charsetForContentType(contentType);
 
             ArrayNode root;
-            try (BOMInputStream is = new BOMInputStream(inputMessage.getBody(), false, ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE,
-                    ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE)) {
-
-                String charsetName = is.getBOMCharsetName();
-                if (charsetName != null) {
-                    charset = Charset.forName(charsetName);
-                }
-
-                try (Reader in = new InputStreamReader(is, charset)) {
-                    CSVReader csvReader = new CSVReader(in);
-                    root = readCSV(csvReader);
-                }
+            try (Reader in = GenericCSVRowReader.createReader(inputMessage.getBody(), charset)) {
+                CSVReader csvReader = new CSVReader(in);
+                root = readCSV(csvReader);
             }
 
             JsonNode rootNode = root;
@@ -342,7 +329,7 @@ public class GenericCSVMessageConverter extends AbstractJackson2HttpMessageConve
         }
     }
 
-    private Charset charsetForContentType(MediaType contentType) {
+    public static Charset charsetForContentType(MediaType contentType) {
         if (contentType != null) {
             Charset contentTypeCharset = contentType.getCharset();
             if (contentTypeCharset != null) {
@@ -362,141 +349,12 @@ public class GenericCSVMessageConverter extends AbstractJackson2HttpMessageConve
     private ArrayNode readCSV(CSVReader reader) throws IOException {
         ArrayNode root = this.nodeFactory.arrayNode();
 
-        String[] header = reader.readNext();
-        Map<Integer, String> columnPositions = new HashMap<>();
-        int position = 0;
-        for (String propertyName : header) {
-            columnPositions.put(position++, propertyName);
-        }
-
-        String[] row;
-        while((row = reader.readNext()) != null) {
-            root.add(readCSVRow(columnPositions, row));
+        GenericCSVRowReader rowReader = new GenericCSVRowReader(reader, this.nodeFactory);
+        JsonNode row;
+        while((row = rowReader.readRow()) != null) {
+            root.add(row);
         }
 
         return root;
     }
-
-    /**
-     * Create a Json object or array from a CSV row. All values will be string values
-     * or null values. We rely on Jackson to interpret these string values as the correct type
-     * when converting the tree to the model object.
-     *
-     * @param columnPositions
-     * @param row
-     * @return
-     */
-    private JsonNode readCSVRow(Map<Integer, String> columnPositions, String[] row) {
-        JsonNode rootNode = null;
-
-        for (int i = 0; i < row.length; i++) {
-            String value = row[i];
-            String path = columnPositions.get(i);
-
-            // empty header row, assume path is the root object
-            if (i == 0 && path == null && columnPositions.isEmpty()) {
-                path = "";
-            }
-
-            JsonNode node;
-
-            if (path == null || value == null || value.isEmpty()) {
-                // no header for the column, or value was undefined, do nothing
-                continue;
-            }
-
-            switch (value) {
-                case OBJECT_STRING:
-                    node = this.nodeFactory.objectNode(); break;
-                case ARRAY_STRING:
-                    node = this.nodeFactory.arrayNode(); break;
-                case NULL_STRING:
-                    node = this.nodeFactory.nullNode(); break;
-                case TRUE_STRING:
-                    node = this.nodeFactory.booleanNode(true); break;
-                case FALSE_STRING:
-                    node = this.nodeFactory.booleanNode(false); break;
-                case EMPTY_STRING:
-                    node = this.nodeFactory.textNode(""); break;
-                default:
-                    node = this.nodeFactory.textNode(value); break;
-            }
-
-            if (path.isEmpty()) {
-                // root path
-                if (node.isValueNode()) {
-                    // root node is a value node, return this as the result for the whole row
-                    return node;
-                } else {
-                    rootNode = node;
-                }
-            } else {
-                if (rootNode == null) {
-                    rootNode = this.nodeFactory.objectNode();
-                }
-
-                this.setValueUsingPath(rootNode, path, node);
-            }
-        }
-
-        return rootNode;
-    }
-
-    /**
-     * Set the value of a property inside a container node (object or array) using a path. Any nodes on the path which do
-     * not already exist will be created as objects.
-     *
-     * @param containerNode
-     * @param path
-     * @param value
-     */
-    private void setValueUsingPath(JsonNode containerNode, String path, JsonNode value) {
-        String[] pathArray = path.split("/");
-        for (int i = 0; i < pathArray.length; i++) {
-            String propertyName = pathArray[i];
-
-            if (i == pathArray.length - 1) {
-                setContainerNodeProperty(containerNode, propertyName, value);
-            } else {
-                JsonNode child = getContainerNodeProperty(containerNode, propertyName);
-
-                if (child == null) {
-                    child = this.nodeFactory.objectNode();
-                    setContainerNodeProperty(containerNode, propertyName, child);
-                }
-
-                if (!child.isContainerNode()) {
-                    // child is a value node (most likely a null), can't set a property on a value node
-                    // so just skip setting the value
-                    return;
-                }
-
-                // can't be an array node (our tree is built only with objects)
-                containerNode = child;
-            }
-        }
-    }
-
-    private JsonNode getContainerNodeProperty(JsonNode containerNode, String propertyName) {
-        if (containerNode.isObject()) {
-            return containerNode.get(propertyName);
-        } else if (containerNode.isArray()) {
-            int arrayIndex = Integer.parseInt(propertyName);
-            return ((ArrayNode) containerNode).get(arrayIndex);
-        }
-        return null;
-    }
-
-    private void setContainerNodeProperty(JsonNode containerNode, String propertyName, JsonNode value) {
-        if (containerNode.isArray()) {
-            ArrayNode arrayNode = (ArrayNode) containerNode;
-            int arrayIndex = Integer.parseInt(propertyName);
-            while (arrayNode.size() < arrayIndex + 1) {
-                arrayNode.addNull();
-            }
-            arrayNode.set(arrayIndex, value);
-        } else if (containerNode.isObject()) {
-            ((ObjectNode) containerNode).set(propertyName, value);
-        }
-    }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.genericcsv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.input.BOMInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads the generic CSV format one row at a time, each row is converted to a JSON tree using the header row as the
+ * property paths. Allows large CSV files to be processed without holding every row in memory.
+ */
+public class GenericCSVRowReader {
+
+    private final CSVReader reader;
+    private final JsonNodeFactory nodeFactory;
+    private final Map<Integer, String> columnPositions = new HashMap<>();
+    private int rowCount = 0;
+
+    /**
+     * Reads the header row from the reader
+     *
+     * @param reader
+     * @param nodeFactory
+     * @throws IOException
+     */
+    public GenericCSVRowReader(CSVReader reader, JsonNodeFactory nodeFactory) throws IOException {
+        this.reader = reader;
+        this.nodeFactory = nodeFactory;
+
+        String[] header = reader.readNext();
+        if (header != null) {
+            int position = 0;
+            for (String propertyName : header) {
+                columnPositions.put(position++, propertyName);
+            }
+        }
+    }
+
+    /**
+     * Creates a reader for a CSV input stream, the charset is detected from the BOM (byte order mark) if there is one
+     *
+     * @param input
+     * @param defaultCharset charset to use if there is no BOM
+     * @return
+     * @throws IOException
+     */
+    public static Reader createReader(InputStream input, Charset defaultCharset) throws IOException {
+        BOMInputStream is = new BOMInputStream(input, false, ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE,
+                ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
+
+        Charset charset = defaultCharset;
+        String charsetName = is.getBOMCharsetName();
+        if (charsetName != null) {
+            charset = Charset.forName(charsetName);
+        }
+
+        return new InputStreamReader(is, charset);
+    }
+
+    /**
+     * @return the next row as a JSON tree or null if there are no more rows
+     * @throws IOException
+     */
+    public JsonNode readRow() throws IOException {
+        String[] row = reader.readNext();
+        if (row == null) {
+            return null;
+        }
+        rowCount++;
+        JsonNode node = readCSVRow(row);
+        // empty row
+        return node == null ? nodeFactory.nullNode() : node;
+    }
+
+    /**
+     * @return number of rows read so far, not including the header
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Create a Json object or array from a CSV row. All values will be string values
+     * or null values. We rely on Jackson to interpret these string values as the correct type
+     * when converting the tree to the model object.
+     *
+     * @param row
+     * @return
+     */
+    private JsonNode readCSVRow(String[] row) {
+        JsonNode rootNode = null;
+
+        for (int i = 0; i < row.length; i++) {
+            String value = row[i];
+            String path = columnPositions.get(i);
+
+            // empty header row, assume path is the root object
+            if (i == 0 && path == null && columnPositions.isEmpty()) {
+                path = "";
+            }
+
+            JsonNode node;
+
+            if (path == null || value == null || value.isEmpty()) {
+                // no header for the column, or value was undefined, do nothing
+                continue;
+            }
+
+            switch (value) {
+                case GenericCSVMessageConverter.OBJECT_STRING:
+                    node = this.nodeFactory.objectNode(); break;
+                case GenericCSVMessageConverter.ARRAY_STRING:
+                    node = this.nodeFactory.arrayNode(); break;
+                case GenericCSVMessageConverter.NULL_STRING:
+                    node = this.nodeFactory.nullNode(); break;
+                case GenericCSVMessageConverter.TRUE_STRING:
+                    node = this.nodeFactory.booleanNode(true); break;
+                case GenericCSVMessageConverter.FALSE_STRING:
+                    node = this.nodeFactory.booleanNode(false); break;
+                case GenericCSVMessageConverter.EMPTY_STRING:
+                    node = this.nodeFactory.textNode(""); break;
+                default:
+                    node = this.nodeFactory.textNode(value); break;
+            }
+
+            if (path.isEmpty()) {
+                // root path
+                if (node.isValueNode()) {
+                    // root node is a value node, return this as the result for the whole row
+                    return node;
+                } else {
+                    rootNode = node;
+                }
+            } else {
+                if (rootNode == null) {
+                    rootNode = this.nodeFactory.objectNode();
+                }
+
+                this.setValueUsingPath(rootNode, path, node);
+            }
+        }
+
+        return rootNode;
+    }
+
+    /**
+     * Set the value of a property inside a container node (object or array) using a path. Any nodes on the path which do
+     * not already exist will be created as objects.
+     *
+     * @param containerNode
+     * @param path
+     * @param value
+     */
+    private void setValueUsingPath(JsonNode containerNode, String path, JsonNode value) {
+        String[] pathArray = path.split("/");
+        for (int i = 0; i < pathArray.length; i++) {
+            String propertyName = pathArray[i];
+
+            if (i == pathArray.length - 1) {
+                setContainerNodeProperty(containerNode, propertyName, value);
+            } else {
+                JsonNode child = getContainerNodeProperty(containerNode, propertyName);
+
+                if (child == null) {
+                    child = this.nodeFactory.objectNode();
+                    setContainerNodeProperty(containerNode, propertyName, child);
+                }
+
+                if (!child.isContainerNode()) {
+                    // child is a value node (most likely a null), can't set a property on a value node
+                    // so just skip setting the value
+                    return;
+                }
+
+                // can't be an array node (our tree is built only with objects)
+                containerNode = child;
+            }
+        }
+    }
+
+    private JsonNode getContainerNodeProperty(JsonNode containerNode, String propertyName) {
+        if (containerNode.isObject()) {
+            return containerNode.get(propertyName);
+        } else if (containerNode.isArray()) {
+            int arrayIndex = Integer.parseInt(propertyName);
+            return ((ArrayNode) containerNode).get(arrayIndex);
+        }
+        return null;
+    }
+
+    private void setContainerNodeProperty(JsonNode containerNode, String propertyName, JsonNode value) {
+        if (containerNode.isArray()) {
+            ArrayNode arrayNode = (ArrayNode) containerNode;
+            int arrayIndex = Integer.parseInt(propertyName);
+            while (arrayNode.size() < arrayIndex + 1) {
+                arrayNode.addNull();
+            }
+            arrayNode.set(arrayIndex, value);
+        } else if (containerNode.isObject()) {
+            ((ObjectNode) containerNode).set(propertyName, value);
+        }
+    }
+}
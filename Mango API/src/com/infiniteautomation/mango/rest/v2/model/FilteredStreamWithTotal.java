@@ -3,26 +3,45 @@
  */
 package com.infiniteautomation.mango.rest.v2.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import com.infiniteautomation.mango.db.query.pojo.RQLFilter;
-import com.infiniteautomation.mango.db.query.pojo.RQLFilterJavaBean;
 
 import net.jazdw.rql.parser.ASTNode;
 
 /**
+ * Applies a RQL filter to an in-memory stream. When the query is sorted or limited the page of items and the total are
+ * computed together in a single traversal of the stream the first time either is requested. When the query is sorted
+ * and limited only the best offset + limit items are retained (bounded top-k) rather than sorting every matching item.
+ *
+ * <p>A query which is neither sorted nor limited does not need to hold any items, the matching items are streamed out
+ * lazily and the total is counted in a separate traversal.</p>
+ *
+ * <p>An optional page filter selects which of the matching items can be on the page (e.g. items after a cursor), the
+ * offset and limit are applied to those items while the total still counts every matching item.</p>
+ *
  * @author Jared Wiltshire
  */
 public class FilteredStreamWithTotal<T> implements StreamWithTotal<T> {
 
     private final Supplier<Stream<T>> streamSupplier;
     private final RQLFilter<T> filter;
+    private final Predicate<T> pageFilter;
+    private List<T> page;
+    private int total;
 
     public FilteredStreamWithTotal(Iterable<T> iterable, ASTNode query) {
-        this(iterable, new RQLFilterJavaBean<>(query));
+        this(iterable, new RQLFilterCachedJavaBean<>(query));
     }
 
     public FilteredStreamWithTotal(Iterable<T> iterable, RQLFilter<T> filter) {
@@ -35,22 +54,210 @@ public class FilteredStreamWithTotal<T> implements StreamWithTotal<T> {
     }
 
     public FilteredStreamWithTotal(Supplier<Stream<T>> streamSupplier, ASTNode query) {
-        this(streamSupplier, new RQLFilterJavaBean<>(query));
+        this(streamSupplier, new RQLFilterCachedJavaBean<>(query));
     }
 
     public FilteredStreamWithTotal(Supplier<Stream<T>> streamSupplier, RQLFilter<T> filter) {
+        this(streamSupplier, filter, null);
+    }
+
+    /**
+     * @param streamSupplier
+     * @param filter
+     * @param pageFilter matching items which fail this test are counted but never returned, may be null
+     */
+    public FilteredStreamWithTotal(Supplier<Stream<T>> streamSupplier, RQLFilter<T> filter, Predicate<T> pageFilter) {
         this.streamSupplier = streamSupplier;
         this.filter = filter;
+        this.pageFilter = pageFilter;
     }
 
     @Override
     public Stream<T> getItems() {
-        return filter.apply(streamSupplier.get());
+        if (isStreamed()) {
+            Stream<T> items = matching(streamSupplier.get());
+            if (pageFilter != null) {
+                items = items.filter(pageFilter);
+            }
+            return items.skip(offset());
+        }
+
+        evaluate();
+        return page.stream();
     }
 
     @Override
     public int getTotal() {
-        return (int) filter.count(streamSupplier.get());
+        if (isStreamed()) {
+            try (Stream<T> stream = streamSupplier.get()) {
+                return (int) matching(stream).count();
+            }
+        }
+
+        evaluate();
+        return total;
+    }
+
+    /**
+     * @return true if the items can be streamed without collecting them
+     */
+    private boolean isStreamed() {
+        return filter.getSort() == null && filter.getLimit() == null;
+    }
+
+    private Stream<T> matching(Stream<T> stream) {
+        Predicate<T> predicate = filter.getFilter();
+        return predicate == null ? stream : stream.filter(predicate);
+    }
+
+    private long offset() {
+        return filter.getOffset() == null ? 0 : Math.max(0, filter.getOffset());
+    }
+
+    private synchronized void evaluate() {
+        if (page != null) return;
+
+        Predicate<T> predicate = filter.getFilter();
+        Comparator<T> sort = filter.getSort();
+        long offset = offset();
+        Long limit = filter.getLimit();
+        // number of matching items which can end up on the page
+        long retain = limit == null ? Long.MAX_VALUE : offset + Math.max(0, limit);
+
+        PageCollector<T> collector;
+        if (sort == null) {
+            collector = new UnsortedCollector<>(offset, retain);
+        } else if (retain <= Integer.MAX_VALUE) {
+            collector = new TopKCollector<>(sort, offset, (int) retain);
+        } else {
+            collector = new SortedCollector<>(sort, offset);
+        }
+
+        int count = 0;
+        int candidates = 0;
+        try (Stream<T> stream = streamSupplier.get()) {
+            for (T item : (Iterable<T>) stream::iterator) {
+                if (predicate == null || predicate.test(item)) {
+                    count++;
+                    if (pageFilter == null || pageFilter.test(item)) {
+                        collector.accept(item, candidates++);
+                    }
+                }
+            }
+        }
+
+        this.total = count;
+        this.page = collector.page();
+    }
+
+    private interface PageCollector<T> {
+        void accept(T item, int index);
+        List<T> page();
     }
 
+    /**
+     * Keeps the items in [offset, retain) in stream order
+     */
+    private static class UnsortedCollector<T> implements PageCollector<T> {
+        private final long offset;
+        private final long retain;
+        private final List<T> items = new ArrayList<>();
+
+        UnsortedCollector(long offset, long retain) {
+            this.offset = offset;
+            this.retain = retain;
+        }
+
+        @Override
+        public void accept(T item, int index) {
+            if (index >= offset && index < retain) {
+                items.add(item);
+            }
+        }
+
+        @Override
+        public List<T> page() {
+            return items;
+        }
+    }
+
+    /**
+     * Sorts all matching items, used when there is no limit
+     */
+    private static class SortedCollector<T> implements PageCollector<T> {
+        private final Comparator<T> sort;
+        private final long offset;
+        private final List<T> items = new ArrayList<>();
+
+        SortedCollector(Comparator<T> sort, long offset) {
+            this.sort = sort;
+            this.offset = offset;
+        }
+
+        @Override
+        public void accept(T item, int index) {
+            items.add(item);
+        }
+
+        @Override
+        public List<T> page() {
+            // List.sort is stable, same as Stream.sorted()
+            items.sort(sort);
+            if (offset >= items.size()) {
+                return Collections.emptyList();
+            }
+            return items.subList((int) offset, items.size());
+        }
+    }
+
+    /**
+     * Retains the first k items in sort order using a max-heap, ties are broken by stream order so the result is the
+     * same as a stable sort followed by skip/limit.
+     */
+    private static class TopKCollector<T> implements PageCollector<T> {
+        private final Comparator<Ranked<T>> order;
+        private final long offset;
+        private final int k;
+        private final PriorityQueue<Ranked<T>> heap;
+
+        TopKCollector(Comparator<T> sort, long offset, int k) {
+            Comparator<Ranked<T>> bySort = (a, b) -> sort.compare(a.item, b.item);
+            this.order = bySort.thenComparingInt(r -> r.index);
+            this.offset = offset;
+            this.k = k;
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), order.reversed());
+        }
+
+        @Override
+        public void accept(T item, int index) {
+            if (k == 0) return;
+
+            Ranked<T> ranked = new Ranked<>(item, index);
+            if (heap.size() < k) {
+                heap.add(ranked);
+            } else if (order.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+
+        @Override
+        public List<T> page() {
+            return heap.stream()
+                    .sorted(order)
+                    .skip(offset)
+                    .map(r -> r.item)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static class Ranked<T> {
+        final T item;
+        final int index;
+
+        Ranked(T item, int index) {
+            this.item = item;
+            this.index = index;
+        }
+    }
 }
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.SortField;
+import org.jooq.impl.DSL;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.spring.db.AbstractBasicTableDefinition;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Keyset (seek) pagination for RQL queries against a table. Two RQL operators are removed from the query before it is
+ * converted to a condition:
+ * <ul>
+ *     <li>{@code after()} - request the first page of a cursor paginated query, a {@code nextCursor} is returned with
+ *     every full page.</li>
+ *     <li>{@code after(cursor)} - continue from the {@code nextCursor} returned with the previous page. Instead of an
+ *     offset the page is selected with a condition on the sort fields, so the cost of a page does not depend on how
+ *     deep it is.</li>
+ *     <li>{@code total(none)} - don't count the total number of matching rows, {@code total(exact)} is the default.</li>
+ * </ul>
+ *
+ * <p>Cursors are only available when the query has a limit and every sort property maps to a database field. When
+ * cursor pagination is requested the id is appended to the sort so rows with equal sort values are always returned in
+ * the same order, other queries are not modified. Rows with null sort values can't be seeked past, if a page ends with
+ * such a row the next cursor continues from the same position as the page with an offset instead.</p>
+ */
+public class KeysetPagination {
+
+    public static final String AFTER = "after";
+    public static final String TOTAL = "total";
+    private static final String ID = "id";
+
+    private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper();
+
+    private final ASTNode query;
+    private final boolean requested;
+    private final String cursor;
+    private final boolean countTotal;
+    private final List<String> sort;
+
+    private KeysetPagination(ASTNode query, boolean requested, String cursor, boolean countTotal, List<String> sort) {
+        this.query = query;
+        this.requested = requested;
+        this.cursor = cursor;
+        this.countTotal = countTotal;
+        this.sort = sort;
+    }
+
+    /**
+     * Extract the pagination operators from the top level of the query.
+     *
+     * @param rql may be null
+     * @return
+     */
+    public static KeysetPagination parse(ASTNode rql) {
+        if (rql == null) {
+            return new KeysetPagination(null, false, null, true, Collections.emptyList());
+        }
+
+        List<ASTNode> nodes = new ArrayList<>();
+        if ("and".equals(rql.getName())) {
+            for (Object arg : rql.getArguments()) {
+                if (arg instanceof ASTNode) {
+                    nodes.add((ASTNode) arg);
+                }
+            }
+        } else {
+            nodes.add(rql);
+        }
+
+        boolean requested = false;
+        String cursor = null;
+        boolean countTotal = true;
+        List<String> sort = Collections.emptyList();
+        List<Object> remaining = new ArrayList<>();
+        for (ASTNode node : nodes) {
+            if (AFTER.equals(node.getName())) {
+                if (node.getArgumentsSize() > 1) {
+                    throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"));
+                }
+                requested = true;
+                cursor = node.getArgumentsSize() == 0 ? null : String.valueOf(node.getArgument(0));
+                continue;
+            }
+            if (TOTAL.equals(node.getName())) {
+                Object mode = node.getArgumentsSize() == 0 ? null : node.getArgument(0);
+                countTotal = !("none".equals(mode) || Boolean.FALSE.equals(mode) || "false".equals(mode));
+                continue;
+            }
+            if ("sort".equals(node.getName())) {
+                sort = new ArrayList<>(node.getArgumentsSize());
+                for (Object arg : node.getArguments()) {
+                    sort.add(String.valueOf(arg));
+                }
+            }
+            remaining.add(node);
+        }
+
+        ASTNode query;
+        if (remaining.size() == nodes.size()) {
+            query = rql;
+        } else if (remaining.isEmpty()) {
+            query = null;
+        } else if (remaining.size() == 1) {
+            query = (ASTNode) remaining.get(0);
+        } else {
+            query = new ASTNode("and", remaining);
+        }
+        return new KeysetPagination(query, requested, cursor, countTotal, sort);
+    }
+
+    /**
+     * @return the query without the pagination operators
+     */
+    public ASTNode getQuery() {
+        return query;
+    }
+
+    public boolean isCountTotal() {
+        return countTotal;
+    }
+
+    /**
+     * @return true if {@code after()} or {@code after(cursor)} was supplied
+     */
+    public boolean isRequested() {
+        return requested;
+    }
+
+    public boolean hasCursor() {
+        return cursor != null;
+    }
+
+    /**
+     * @return the cursor from the {@code after(cursor)} operator, or null
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Adds the id to the sort and, if a cursor was supplied, replaces the offset with the cursor's seek condition and
+     * offset.
+     *
+     * @param conditions
+     * @param table
+     * @param fieldMap
+     * @param valueConverters
+     * @return a resolved page, or null if cursor pagination was not requested
+     * @throws BadRequestException if cursor pagination was requested but the cursor is invalid or can't be used with this query
+     */
+    public Page resolve(ConditionSortLimit conditions, AbstractBasicTableDefinition table, Map<String, Field<?>> fieldMap,
+            Map<String, Function<Object, Object>> valueConverters) {
+
+        if (!requested) {
+            return null;
+        }
+        List<SortProperty> properties = conditions.getLimit() == null ? null : sortProperties(table, fieldMap, valueConverters);
+        if (properties == null) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.cursorNotSupported"));
+        }
+
+        List<SortField<Object>> sortFields = new ArrayList<>();
+        if (conditions.getSort() != null) {
+            sortFields.addAll(conditions.getSort());
+        }
+        SortProperty id = properties.get(properties.size() - 1);
+        sortFields.add(id.sortField());
+
+        Condition condition = conditions.getCondition();
+        Integer offset = conditions.getOffset();
+        List<Object> seekValues = null;
+        if (cursor != null) {
+            CursorModel model = decode(properties.size());
+            seekValues = model.values;
+            if (seekValues != null) {
+                Condition seek = seekCondition(properties, seekValues);
+                condition = condition == null ? seek : condition.and(seek);
+            }
+            offset = model.offset > 0 ? model.offset : null;
+        }
+        return new Page(new ConditionSortLimit(condition, sortFields, conditions.getLimit(), offset), properties, seekValues);
+    }
+
+    private List<SortProperty> sortProperties(AbstractBasicTableDefinition table, Map<String, Field<?>> fieldMap,
+            Map<String, Function<Object, Object>> valueConverters) {
+        List<SortProperty> properties = new ArrayList<>(sort.size() + 1);
+        for (String spec : sort) {
+            boolean descending = spec.startsWith("-");
+            String property = spec.startsWith("-") || spec.startsWith("+") ? spec.substring(1) : spec;
+            Field<?> field = fieldMap != null && fieldMap.containsKey(property) ? fieldMap.get(property) : table.getAlias(property);
+            if (field == null) {
+                return null;
+            }
+            Function<Object, Object> converter = valueConverters == null ? null : valueConverters.get(property);
+            properties.add(new SortProperty(property, field, descending, converter));
+        }
+
+        Field<?> idField = table.getAlias(ID);
+        if (idField == null) {
+            return null;
+        }
+        properties.add(new SortProperty(ID, idField, false, null));
+        return properties;
+    }
+
+    /**
+     * (s1 > v1) or (s1 = v1 and s2 > v2) or ... with < for descending sorts
+     */
+    @SuppressWarnings("unchecked")
+    private Condition seekCondition(List<SortProperty> properties, List<Object> values) {
+        List<Condition> alternatives = new ArrayList<>(properties.size());
+        List<Condition> equalPrefix = new ArrayList<>(properties.size());
+        for (int i = 0; i < properties.size(); i++) {
+            SortProperty property = properties.get(i);
+            Field<Object> field = (Field<Object>) property.field;
+            Object value = field.getDataType().convert(values.get(i));
+
+            Condition next = property.descending ? field.lt(value) : field.gt(value);
+            List<Condition> terms = new ArrayList<>(equalPrefix);
+            terms.add(next);
+            alternatives.add(DSL.and(terms));
+            equalPrefix.add(field.eq(value));
+        }
+        return DSL.or(alternatives);
+    }
+
+    private CursorModel decode(int size) {
+        try {
+            CursorModel model = CURSOR_MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), CursorModel.class);
+            if (!sort.equals(model.sort) || model.offset < 0 || model.values != null && model.values.size() != size) {
+                throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"));
+            }
+            if (model.values != null) {
+                for (Object value : model.values) {
+                    if (value == null) {
+                        throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"));
+                    }
+                }
+            }
+            return model;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"), e);
+        }
+    }
+
+    /**
+     * A page of a keyset paginated query
+     */
+    public class Page {
+        private final ConditionSortLimit conditions;
+        private final List<SortProperty> properties;
+        private final List<Object> seekValues;
+
+        private Page(ConditionSortLimit conditions, List<SortProperty> properties, List<Object> seekValues) {
+            this.conditions = conditions;
+            this.properties = properties;
+            this.seekValues = seekValues;
+        }
+
+        /**
+         * @return conditions for retrieving the page, the original conditions should still be used for counting
+         */
+        public ConditionSortLimit getConditions() {
+            return conditions;
+        }
+
+        /**
+         * @param last the last item on the page
+         * @return a cursor for the page following the item
+         */
+        public String cursorAfter(Object last) {
+            CursorModel model = new CursorModel();
+            model.sort = sort;
+            model.values = sortValues(last);
+            if (model.values == null) {
+                // can't seek past the item, continue from the start of this page instead
+                Integer offset = conditions.getOffset();
+                model.values = seekValues;
+                model.offset = (offset == null ? 0 : offset) + conditions.getLimit();
+            }
+            try {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(CURSOR_MAPPER.writeValueAsBytes(model));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return the values of the sort properties, or null if any of them is null
+         */
+        private List<Object> sortValues(Object item) {
+            List<Object> values = new ArrayList<>(properties.size());
+            for (SortProperty property : properties) {
+                Object value;
+                try {
+                    value = PropertyUtils.getProperty(item, property.name);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    return null;
+                }
+                if (value != null && property.converter != null) {
+                    value = property.converter.apply(value);
+                }
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return values;
+        }
+    }
+
+    private static class SortProperty {
+        final String name;
+        final Field<?> field;
+        final boolean descending;
+        final Function<Object, Object> converter;
+
+        SortProperty(String name, Field<?> field, boolean descending, Function<Object, Object> converter) {
+            this.name = name;
+            this.field = field;
+            this.descending = descending;
+            this.converter = converter;
+        }
+
+        @SuppressWarnings("unchecked")
+        SortField<Object> sortField() {
+            Field<Object> f = (Field<Object>) field;
+            return descending ? f.desc() : f.asc();
+        }
+    }
+
+    /**
+     * Serialized form of the cursor, the page starts after the sort values (if any) and then skips offset rows
+     */
+    public static class CursorModel {
+        public List<String> sort;
+        @JsonInclude(Include.NON_NULL)
+        public List<Object> values;
+        @JsonInclude(Include.NON_DEFAULT)
+        public int offset;
+    }
+}
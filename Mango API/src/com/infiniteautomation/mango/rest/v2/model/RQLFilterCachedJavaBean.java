@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.beanutils.MethodUtils;
+
+import com.infiniteautomation.mango.db.query.pojo.RQLFilterJavaBean;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Java bean RQL filter which resolves the getter for each class/property once instead of introspecting the bean
+ * every time a property is read. Nested properties (e.g. {@code eventType.subType}) are resolved segment by segment
+ * using the runtime class of each value. Indexed and mapped property expressions are delegated to
+ * {@link RQLFilterJavaBean}.
+ *
+ * @param <T>
+ */
+public class RQLFilterCachedJavaBean<T> extends RQLFilterJavaBean<T> {
+
+    private static final Pattern NESTED_SEPARATOR = Pattern.compile("\\.");
+
+    /**
+     * Readable properties of each class, property name to accessible getter
+     */
+    private static final ClassValue<Map<String, Method>> GETTERS = new ClassValue<Map<String, Method>>() {
+        @Override
+        protected Map<String, Method> computeValue(Class<?> type) {
+            try {
+                Map<String, Method> getters = new HashMap<>();
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                    if (descriptor.getReadMethod() == null) continue;
+                    Method getter = MethodUtils.getAccessibleMethod(type, descriptor.getReadMethod());
+                    if (getter != null) {
+                        getters.put(descriptor.getName(), getter);
+                    }
+                }
+                return Collections.unmodifiableMap(getters);
+            } catch (IntrospectionException e) {
+                return Collections.emptyMap();
+            }
+        }
+    };
+
+    /**
+     * Property expression to its segments, null for expressions which must be delegated
+     */
+    private final ConcurrentMap<String, String[]> paths = new ConcurrentHashMap<>();
+
+    public RQLFilterCachedJavaBean(ASTNode node) {
+        super(node);
+    }
+
+    @Override
+    protected Object getProperty(T item, String property) {
+        String[] path = paths.computeIfAbsent(property, p -> {
+            if (p.indexOf('(') >= 0 || p.indexOf('[') >= 0) {
+                return new String[0];
+            }
+            return NESTED_SEPARATOR.split(p);
+        });
+
+        if (path.length == 0) {
+            return super.getProperty(item, property);
+        }
+
+        Object value = item;
+        for (String segment : path) {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Map) {
+                value = ((Map<?, ?>) value).get(segment);
+                continue;
+            }
+
+            Method getter = GETTERS.get(value.getClass()).get(segment);
+            if (getter == null) {
+                // let the bean filter handle unknown properties in the same way as before
+                return super.getProperty(item, property);
+            }
+            try {
+                value = getter.invoke(value);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                return super.getProperty(item, property);
+            }
+        }
+        return value;
+    }
+}
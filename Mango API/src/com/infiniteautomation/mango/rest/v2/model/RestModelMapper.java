@@ -3,10 +3,14 @@
  */
 package com.infiniteautomation.mango.rest.v2.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiPredicate;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.converter.json.MappingJacksonValue;
@@ -15,6 +19,7 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.NamedType;
 import com.infiniteautomation.mango.rest.v2.exception.ServerErrorException;
+import com.infiniteautomation.mango.rest.v2.model.timing.RequestTimer;
 import com.serotonin.m2m2.i18n.ProcessResult;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
@@ -23,12 +28,19 @@ import com.serotonin.m2m2.vo.permission.PermissionHolder;
  * Gets a list of RestModelMapping beans from the Spring context and uses them to convert an object to its model.
  * The RestModelMapping beans can be annotated with @Order to specify their priority.
  *
+ * <p>The mappings which support a (from class, to class) pair are resolved once and cached in priority order, so the
+ * cost of mapping an object does not grow with the number of registered mappings. The cached mappings are still tried
+ * in order as a mapping may return null to defer to the next one. This assumes {@link RestModelMapping#supports(Class, Class)}
+ * depends only on the classes.</p>
+ *
  * @author Terry Packer
  */
 @Component
 public class RestModelMapper {
 
     private final List<RestModelMapping<?,?>> mappings;
+    private final ConcurrentMap<ClassPair, RestModelMapping<?,?>[]> mapDispatch = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ClassPair, RestModelMapping<?,?>[]> unMapDispatch = new ConcurrentHashMap<>();
 
     @Autowired
     public RestModelMapper(Optional<List<RestModelMapping<?,?>>> mappings) {
@@ -47,8 +59,8 @@ public class RestModelMapper {
         Objects.requireNonNull(from);
         Objects.requireNonNull(model);
 
-        for (RestModelMapping<?,?> mapping : mappings) {
-            if (mapping.supports(from.getClass(), model)) {
+        try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.MAPPING)) {
+            for (RestModelMapping<?,?> mapping : mappingsFor(from.getClass(), model)) {
                 @SuppressWarnings("unchecked")
                 T result = (T) mapping.map(from, user, this);
                 if (result != null) {
@@ -64,8 +76,8 @@ public class RestModelMapper {
         Objects.requireNonNull(from);
         Objects.requireNonNull(model);
 
-        for (RestModelMapping<?,?> mapping : mappings) {
-            if (mapping.supports(from.getClass(), model)) {
+        try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.MAPPING)) {
+            for (RestModelMapping<?,?> mapping : mappingsFor(from.getClass(), model)) {
                 @SuppressWarnings("unchecked")
                 T result = (T) mapping.map(from, user, this);
                 if (result != null) {
@@ -83,8 +95,8 @@ public class RestModelMapper {
         Objects.requireNonNull(from);
         Objects.requireNonNull(vo);
 
-        for (RestModelMapping<?,?> mapping : mappings) {
-            if (mapping.supports(vo, from.getClass())) {
+        try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.MAPPING)) {
+            for (RestModelMapping<?,?> mapping : unMappingsFor(from.getClass(), vo)) {
                 @SuppressWarnings("unchecked")
                 T result = (T) mapping.unmap(from, user, this);
                 if (result != null) {
@@ -105,12 +117,62 @@ public class RestModelMapper {
         Objects.requireNonNull(modelClass);
         Objects.requireNonNull(validatedClass);
 
+        RestModelMapping<?,?>[] supporting = mappingsFor(validatedClass, modelClass);
+        if (supporting.length > 0) {
+            return supporting[0].mapValidationErrors(modelClass, validatedClass, result, this);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the mappings which support mapping from the class to the model class, in priority order
+     */
+    private RestModelMapping<?,?>[] mappingsFor(Class<?> from, Class<?> model) {
+        return mapDispatch.computeIfAbsent(new ClassPair(from, model),
+                key -> resolve(key, (mapping, k) -> mapping.supports(k.from, k.to)));
+    }
+
+    /**
+     * @return the mappings which support un-mapping from the model class to the class, in priority order
+     */
+    private RestModelMapping<?,?>[] unMappingsFor(Class<?> model, Class<?> vo) {
+        return unMapDispatch.computeIfAbsent(new ClassPair(model, vo),
+                key -> resolve(key, (mapping, k) -> mapping.supports(k.to, k.from)));
+    }
+
+    private RestModelMapping<?,?>[] resolve(ClassPair key, BiPredicate<RestModelMapping<?,?>, ClassPair> supports) {
+        List<RestModelMapping<?,?>> supporting = new ArrayList<>();
         for (RestModelMapping<?,?> mapping : mappings) {
-            if (mapping.supports(validatedClass, modelClass)) {
-                return mapping.mapValidationErrors(modelClass, validatedClass, result, this);
+            if (supports.test(mapping, key)) {
+                supporting.add(mapping);
             }
         }
+        return supporting.toArray(new RestModelMapping<?,?>[0]);
+    }
 
-        return result;
+    private static final class ClassPair {
+        private final Class<?> from;
+        private final Class<?> to;
+        private final int hashCode;
+
+        private ClassPair(Class<?> from, Class<?> to) {
+            this.from = from;
+            this.to = to;
+            this.hashCode = 31 * from.hashCode() + to.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof ClassPair)) return false;
+            ClassPair other = (ClassPair) obj;
+            return from == other.from && to == other.to;
+        }
     }
 }
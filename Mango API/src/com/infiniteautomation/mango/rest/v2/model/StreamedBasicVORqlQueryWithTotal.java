@@ -4,37 +4,57 @@
 package com.infiniteautomation.mango.rest.v2.model;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.jooq.Field;
+import org.jooq.SortField;
 import org.springframework.http.HttpStatus;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.infiniteautomation.mango.db.query.ConditionSortLimit;
 import com.infiniteautomation.mango.rest.v2.exception.GenericRestException;
+import com.infiniteautomation.mango.rest.v2.model.timing.RequestTimer;
 import com.infiniteautomation.mango.spring.db.AbstractBasicTableDefinition;
 import com.infiniteautomation.mango.spring.service.AbstractBasicVOService;
+import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.db.dao.AbstractBasicDao;
 import com.serotonin.m2m2.vo.AbstractBasicVO;
 
 import net.jazdw.rql.parser.ASTNode;
 
 /**
+ * When constructed from RQL the query supports keyset pagination and an optional total, see {@link KeysetPagination}.
+ * A {@code nextCursor} is included in the response when cursor pagination was requested and the page is full.
+ *
  * @author Jared Wiltshire
  * @author Terry Packer
  */
 public class StreamedBasicVORqlQueryWithTotal<T extends AbstractBasicVO, TABLE extends AbstractBasicTableDefinition, DAO extends AbstractBasicDao<T, TABLE>, SERVICE extends AbstractBasicVOService<T, TABLE, DAO>> implements StreamedArrayWithTotal {
 
+    /**
+     * Minimum number of rows read per query when filtering in memory without counting the total
+     */
+    private static final int MIN_BATCH_SIZE = 100;
+
     protected final SERVICE service;
     protected final ConditionSortLimit conditions;
     protected final Function<T, ?> toModel;
     protected final Predicate<T> filter;
+    //Conditions used to retrieve the page, may differ from the conditions used to count when keyset paginating
+    protected final ConditionSortLimit pageConditions;
+    protected final KeysetPagination.Page keysetPage;
+    protected final boolean countTotal;
 
     //For use when we have a filter as we cannot accurately do a count query
     protected int count;
     protected int offsetCount;
+    protected T lastItem;
 
     /**
      * Use if permissions cannot be enforced in the RQL/Database query, this will perform a full query and count the results while respecting the limit.
@@ -46,7 +66,7 @@ public class StreamedBasicVORqlQueryWithTotal<T extends AbstractBasicVO, TABLE e
      * @param toModel
      */
     public StreamedBasicVORqlQueryWithTotal(SERVICE service, ASTNode rql, Map<String, Field<?>> fieldMap, Map<String, Function<Object, Object>> valueConverterMap, Predicate<T> filter, Function<T, ?> toModel) {
-        this(service, service.rqlToCondition(rql, fieldMap, valueConverterMap), filter, toModel);
+        this(service, KeysetPagination.parse(rql), fieldMap, valueConverterMap, filter, toModel);
     }
 
     /**
@@ -58,7 +78,18 @@ public class StreamedBasicVORqlQueryWithTotal<T extends AbstractBasicVO, TABLE e
      * @param toModel
      */
     public StreamedBasicVORqlQueryWithTotal(SERVICE service, ASTNode rql, Map<String, Field<?>> fieldMap, Map<String, Function<Object, Object>> valueConverterMap, Function<T, ?> toModel) {
-        this(service, service.rqlToCondition(rql, fieldMap, valueConverterMap), null, toModel);
+        this(service, KeysetPagination.parse(rql), fieldMap, valueConverterMap, null, toModel);
+    }
+
+    private StreamedBasicVORqlQueryWithTotal(SERVICE service, KeysetPagination pagination, Map<String, Field<?>> fieldMap, Map<String, Function<Object, Object>> valueConverterMap, Predicate<T> filter, Function<T, ?> toModel) {
+        this.service = service;
+        this.conditions = service.rqlToCondition(pagination.getQuery(), fieldMap, valueConverterMap);
+        this.toModel = toModel;
+        this.filter = filter;
+        this.keysetPage = pagination.resolve(conditions, service.getDao().getTable(), fieldMap, valueConverterMap);
+        this.pageConditions = keysetPage == null ? conditions : keysetPage.getConditions();
+        // with an in-memory filter the total can only be counted by scanning from the start
+        this.countTotal = pagination.isCountTotal() && !(filter != null && pagination.hasCursor());
     }
 
     /**
@@ -83,6 +114,9 @@ public class StreamedBasicVORqlQueryWithTotal<T extends AbstractBasicVO, TABLE e
         this.conditions = conditions;
         this.toModel = toModel;
         this.filter = filter;
+        this.pageConditions = conditions;
+        this.keysetPage = null;
+        this.countTotal = true;
     }
 
     @Override
@@ -90,50 +124,145 @@ public class StreamedBasicVORqlQueryWithTotal<T extends AbstractBasicVO, TABLE e
         return new StreamedVOArray();
     }
 
+    /**
+     * @return the total, or {@link NotCounted#TOTAL} (which is not serialized) if the total was not requested
+     */
     @Override
+    @JsonInclude(value = Include.CUSTOM, valueFilter = NotCounted.class)
     public int getTotal() {
-        if(filter != null) {
+        if (!countTotal) {
+            return NotCounted.TOTAL;
+        }else if(filter != null) {
             return count;
         }else {
-            return service.customizedCount(conditions);
+            try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.DATABASE)) {
+                return service.customizedCount(conditions);
+            }
+        }
+    }
+
+    /**
+     * Only available after the items have been written
+     * @return cursor for the next page, or null if this is the last page or keyset pagination is not possible
+     */
+    @JsonInclude(Include.NON_NULL)
+    public String getNextCursor() {
+        Integer limit = pageConditions.getLimit();
+        if (keysetPage == null || lastItem == null || limit == null) {
+            return null;
+        }
+        return offsetCount < limit ? null : keysetPage.cursorAfter(lastItem);
+    }
+
+    /**
+     * Value filter for {@link JsonInclude}, excludes the total if it was not counted
+     */
+    public static class NotCounted {
+        public static final int TOTAL = -1;
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Integer && (Integer) obj == TOTAL;
+        }
+
+        @Override
+        public int hashCode() {
+            return TOTAL;
         }
     }
 
     private class StreamedVOArray implements JSONStreamedArray {
         @Override
         public void writeArrayValues(JsonGenerator jgen) throws IOException {
-            if(filter != null) {
-                //Using memory filter
-                Integer offset = conditions.getOffset();
-                Integer limit = conditions.getLimit();
-                service.customizedQuery(conditions.withNullLimitOffset(), (T item, int index) -> {
-                    if (filter.test(item)) {
-                        if ((offset == null || count >= offset) && (limit == null || offsetCount < limit)) {
-                            try {
-                                jgen.writeObject(toModel.apply(item));
-                            } catch (IOException e) {
-                                //TODO Mango 4.0 this can mangle the response, perhaps handle in exception handler to reset stream
-                                //  also a nice way to cancel this query would be good as it will just keep throwing
-                                // the exception if we don't cancel it.
-                                throw new GenericRestException(HttpStatus.INTERNAL_SERVER_ERROR, e);
+            // the query runs while the response is being serialized, time spent outside of the callback is the database
+            try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.DATABASE)) {
+                if(filter != null) {
+                    //Using memory filter
+                    Integer offset = pageConditions.getOffset();
+                    Integer limit = pageConditions.getLimit();
+                    MappedRowCallback<T> callback = (T item, int index) -> {
+                        if (test(item)) {
+                            if ((offset == null || count >= offset) && (limit == null || offsetCount < limit)) {
+                                lastItem = item;
+                                write(jgen, item);
+                                offsetCount++;
                             }
-                            offsetCount++;
+                            count++;
                         }
-                        count++;
-                    }
-                });
-            }else {
-                //No filter just run query
-                service.customizedQuery(conditions, (T item, int index) -> {
-                    try {
-                        jgen.writeObject(toModel.apply(item));
-                    } catch (IOException e) {
-                        //TODO Mango 4.0 this can mangle the response, perhaps handle in exception handler to reset stream
-                        //  also a nice way to cancel this query would be good as it will just keep throwing
-                        // the exception if we don't cancel it.
-                        throw new GenericRestException(HttpStatus.INTERNAL_SERVER_ERROR, e);
+                    };
+                    if (countTotal || limit == null) {
+                        service.customizedQuery(pageConditions.withNullLimitOffset(), callback);
+                    } else {
+                        queryInBatches(callback, (offset == null ? 0 : offset) + limit);
                     }
+                }else {
+                    //No filter just run query
+                    service.customizedQuery(pageConditions, (T item, int index) -> {
+                        lastItem = item;
+                        offsetCount++;
+                        write(jgen, item);
+                    });
+                }
+            }
+        }
+
+        /**
+         * The total is not needed, read the rows in batches and stop once the page is full
+         */
+        private void queryInBatches(MappedRowCallback<T> callback, int required) {
+            List<SortField<Object>> sort = stableSort();
+            int batchSize = Math.max(MIN_BATCH_SIZE, required);
+            int batchOffset = 0;
+            while (count < required) {
+                int[] rows = new int[1];
+                ConditionSortLimit batch = new ConditionSortLimit(pageConditions.getCondition(), sort, batchSize, batchOffset);
+                service.customizedQuery(batch, (T item, int index) -> {
+                    rows[0]++;
+                    callback.row(item, index);
                 });
+                if (rows[0] < batchSize) {
+                    break;
+                }
+                batchOffset += batchSize;
+                batchSize = (int) Math.min(Integer.MAX_VALUE, batchSize * 2L);
+            }
+        }
+
+        /**
+         * Rows must be returned in the same order by every batch, the id is appended to the sort unless the keyset page
+         * already did so
+         */
+        @SuppressWarnings("unchecked")
+        private List<SortField<Object>> stableSort() {
+            List<SortField<Object>> sort = new ArrayList<>();
+            if (pageConditions.getSort() != null) {
+                sort.addAll(pageConditions.getSort());
+            }
+            Field<?> id = service.getDao().getTable().getAlias("id");
+            if (keysetPage == null && id != null) {
+                sort.add(((Field<Object>) id).asc());
+            }
+            return sort;
+        }
+
+        private boolean test(T item) {
+            try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.PERMISSION)) {
+                return filter.test(item);
+            }
+        }
+
+        private void write(JsonGenerator jgen, T item) {
+            Object model;
+            try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.MAPPING)) {
+                model = toModel.apply(item);
+            }
+            try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.SERIALIZATION)) {
+                jgen.writeObject(model);
+            } catch (IOException e) {
+                //TODO Mango 4.0 this can mangle the response, perhaps handle in exception handler to reset stream
+                //  also a nice way to cancel this query would be good as it will just keep throwing
+                // the exception if we don't cancel it.
+                throw new GenericRestException(HttpStatus.INTERNAL_SERVER_ERROR, e);
             }
         }
     }
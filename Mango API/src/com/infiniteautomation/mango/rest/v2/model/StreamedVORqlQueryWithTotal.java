@@ -33,7 +33,7 @@ public class StreamedVORqlQueryWithTotal<T extends AbstractVO, TABLE extends Abs
      * @param toModel
      */
     public StreamedVORqlQueryWithTotal(SERVICE service, ASTNode rql, Map<String, Field<?>> fieldMap, Map<String, Function<Object, Object>> valueConverterMap, Predicate<T> filter, Function<T, ?> toModel) {
-        this(service, service.rqlToCondition(rql, fieldMap, valueConverterMap), filter, toModel);
+        super(service, rql, fieldMap, valueConverterMap, filter, toModel);
     }
 
     /**
@@ -45,7 +45,7 @@ public class StreamedVORqlQueryWithTotal<T extends AbstractVO, TABLE extends Abs
      * @param toModel
      */
     public StreamedVORqlQueryWithTotal(SERVICE service, ASTNode rql, Map<String, Field<?>> fieldMap, Map<String, Function<Object, Object>> valueConverterMap, Function<T, ?> toModel) {
-        this(service, service.rqlToCondition(rql, fieldMap, valueConverterMap), null, toModel);
+        super(service, rql, fieldMap, valueConverterMap, toModel);
     }
 
     /**
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.infiniteautomation.mango.rest.v2.model.RestModelMapper;
+import com.infiniteautomation.mango.rest.v2.model.dataPoint.DataPointModel;
+import com.infiniteautomation.mango.rest.v2.model.datasource.AbstractDataSourceModel;
+import com.infiniteautomation.mango.rest.v2.model.event.detectors.AbstractPointEventDetectorModel;
+import com.infiniteautomation.mango.rest.v2.model.publisher.AbstractPublisherModel;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.infiniteautomation.mango.spring.events.DataPointTagsUpdatedEvent;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataPointTagsDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.db.dao.EventDetectorDao;
+import com.serotonin.m2m2.db.dao.PublisherDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.DataSourceEventType;
+import com.serotonin.m2m2.rt.event.type.EventType.EventTypeNames;
+import com.serotonin.m2m2.rt.event.type.PublisherEventType;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
+import com.serotonin.m2m2.vo.event.detector.AbstractEventDetectorVO;
+import com.serotonin.m2m2.vo.event.detector.AbstractPointEventDetectorVO;
+import com.serotonin.m2m2.vo.publish.PublishedPointVO;
+import com.serotonin.m2m2.vo.publish.PublisherVO;
+import com.serotonin.m2m2.vo.role.RoleVO;
+
+/**
+ * Caches the event types for every data point (with event detectors), data source and publisher. Each source type is
+ * loaded from the database on first use and then kept up to date by DAO events. The models mapped for a user are
+ * cached as well (up to {@code rest.eventTypes.userCacheSize} users per source type) until the source type changes.
+ *
+ * <p>The data point models include the point's tags and its data source's name and xid, so cached points are reloaded
+ * when their tags change or their data source is updated.</p>
+ *
+ * <p>Event types defined by modules are not cached, they are generated by the module's definition for each user and
+ * there are no events to tell when they change.</p>
+ */
+@Component
+public class EventTypeCatalogue {
+
+    private final int userCacheSize;
+    private final DataPointDao dataPointDao;
+
+    private final Section<DataPointVO> dataPoints;
+    private final Section<DataSourceVO> dataSources;
+    private final Section<PublisherVO<?>> publishers;
+
+    @Autowired
+    public EventTypeCatalogue(RestModelMapper modelMapper, PermissionService permissionService,
+            DataPointDao dataPointDao, DataSourceDao dataSourceDao, PublisherDao publisherDao, EventDetectorDao eventDetectorDao,
+            @Value("${rest.eventTypes.userCacheSize:20}") int userCacheSize) {
+        this.userCacheSize = Math.max(0, userCacheSize);
+        this.dataPointDao = dataPointDao;
+
+        this.dataPoints = new Section<DataPointVO>(DataPointVO::getId) {
+            @Override
+            Collection<DataPointVO> load() {
+                //Points which have at least one event detector
+                List<AbstractPointEventDetectorVO> peds = eventDetectorDao.getForSourceType(EventTypeNames.DATA_POINT);
+                Map<Integer, DataPointVO> uniquePointsMap = new HashMap<>();
+                for(AbstractPointEventDetectorVO ped : peds) {
+                    uniquePointsMap.put(ped.getDataPoint().getId(), ped.getDataPoint());
+                }
+                for(DataPointVO vo : uniquePointsMap.values()) {
+                    loadTags(vo);
+                }
+                return uniquePointsMap.values();
+            }
+
+            @Override
+            EventTypeVOModel<?,?,?> map(DataPointVO vo, User user) {
+                if(!permissionService.hasDataPointReadPermission(user, vo))
+                    return null;
+                DataPointEventTypeModel model = new DataPointEventTypeModel(new DataPointEventType(vo.getDataSourceId(), vo.getId(), 0, null), modelMapper.map(vo, DataPointModel.class, user));
+                return new EventTypeVOModel<DataPointEventType, DataPointModel,AbstractPointEventDetectorModel<?>>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true);
+            }
+        };
+
+        this.dataSources = new Section<DataSourceVO>(DataSourceVO::getId) {
+            @Override
+            Collection<DataSourceVO> load() {
+                return dataSourceDao.getAll();
+            }
+
+            @Override
+            EventTypeVOModel<?,?,?> map(DataSourceVO vo, User user) {
+                if(!permissionService.hasDataSourceEditPermission(user, vo))
+                    return null;
+                AbstractDataSourceModel<?> dsModel = modelMapper.map(vo, AbstractDataSourceModel.class, user);
+                DataSourceEventTypeModel model = new DataSourceEventTypeModel(new DataSourceEventType(vo.getId(), 0), dsModel);
+                return new EventTypeVOModel<DataSourceEventType, AbstractDataSourceModel<?>, String>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true);
+            }
+        };
+
+        this.publishers = new Section<PublisherVO<?>>(PublisherVO::getId) {
+            @Override
+            Collection<PublisherVO<?>> load() {
+                return new ArrayList<>(publisherDao.getAll());
+            }
+
+            @Override
+            EventTypeVOModel<?,?,?> map(PublisherVO<?> vo, User user) {
+                //There are no permissions for publishers
+                if(!permissionService.hasAdminRole(user))
+                    return null;
+                AbstractPublisherModel<?,?> publisherModel = modelMapper.map(vo, AbstractPublisherModel.class, user);
+                PublisherEventTypeModel model = new PublisherEventTypeModel(new PublisherEventType(vo.getId(), 0), publisherModel);
+                return new EventTypeVOModel<PublisherEventType, AbstractPublisherModel<?,?>, String>(model, new TranslatableMessage("event.eventsFor", vo.getName()), false, true, true);
+            }
+        };
+    }
+
+    /**
+     * @param user
+     * @return unmodifiable list of the data point event types the user can read, one per point with event detectors
+     */
+    public List<EventTypeVOModel<?,?,?>> getDataPointEventTypes(User user) {
+        return dataPoints.models(user);
+    }
+
+    /**
+     * @param user
+     * @return unmodifiable list of the data source event types the user can edit
+     */
+    public List<EventTypeVOModel<?,?,?>> getDataSourceEventTypes(User user) {
+        return dataSources.models(user);
+    }
+
+    /**
+     * @param user
+     * @return unmodifiable list of the publisher event types, empty if the user is not an admin
+     */
+    public List<EventTypeVOModel<?,?,?>> getPublisherEventTypes(User user) {
+        return publishers.models(user);
+    }
+
+    /**
+     * Discard all cached event types
+     */
+    public void invalidate() {
+        dataPoints.invalidate();
+        dataSources.invalidate();
+        publishers.invalidate();
+    }
+
+    @EventListener
+    protected void handleDataPointEvent(DaoEvent<? extends DataPointVO> event) {
+        DataPointVO vo = event.getVo();
+        if (event.getType() == DaoEventType.DELETE) {
+            dataPoints.remove(vo.getId());
+        } else if (event.getType() == DaoEventType.UPDATE) {
+            // only points which already have event detectors are in the catalogue
+            dataPoints.replace(vo.getId(), () -> loadTags(vo));
+        }
+    }
+
+    @EventListener
+    protected void handleDataPointTagsUpdatedEvent(DataPointTagsUpdatedEvent event) {
+        DataPointVO vo = event.getVo();
+        dataPoints.replace(vo.getId(), () -> loadTags(vo));
+    }
+
+    @EventListener
+    protected void handleEventDetectorEvent(DaoEvent<? extends AbstractEventDetectorVO> event) {
+        if (!(event.getVo() instanceof AbstractPointEventDetectorVO)) {
+            return;
+        }
+
+        AbstractPointEventDetectorVO ped = (AbstractPointEventDetectorVO) event.getVo();
+        if (event.getType() == DaoEventType.CREATE) {
+            dataPoints.putIfAbsent(ped.getDataPoint().getId(), () -> loadTags(ped.getDataPoint()));
+        } else if (event.getType() == DaoEventType.DELETE) {
+            // the point may not have any detectors left
+            dataPoints.invalidate();
+        }
+    }
+
+    @EventListener
+    protected void handleDataSourceEvent(DaoEvent<? extends DataSourceVO> event) {
+        DataSourceVO vo = event.getVo();
+        if (event.getType() == DaoEventType.DELETE) {
+            dataSources.remove(vo.getId());
+            // the data source's points were deleted with it
+            dataPoints.invalidate();
+        } else {
+            dataSources.put(vo.getId(), vo);
+            if (event.getType() == DaoEventType.UPDATE) {
+                // the point models contain the data source name and xid
+                dataPoints.reload(point -> point.getDataSourceId() == vo.getId(), point -> {
+                    DataPointVO reloaded = dataPointDao.get(point.getId());
+                    return reloaded == null ? null : loadTags(reloaded);
+                });
+            }
+        }
+    }
+
+    @EventListener
+    protected void handlePublisherEvent(DaoEvent<? extends PublisherVO<? extends PublishedPointVO>> event) {
+        PublisherVO<?> vo = event.getVo();
+        if (event.getType() == DaoEventType.DELETE) {
+            publishers.remove(vo.getId());
+        } else {
+            publishers.put(vo.getId(), vo);
+        }
+    }
+
+    @EventListener
+    protected void handleUserEvent(DaoEvent<? extends User> event) {
+        // the user's roles may have changed
+        int userId = event.getVo().getId();
+        dataPoints.invalidateUser(userId);
+        dataSources.invalidateUser(userId);
+        publishers.invalidateUser(userId);
+    }
+
+    @EventListener
+    protected void handleRoleEvent(DaoEvent<? extends RoleVO> event) {
+        dataPoints.invalidateModels();
+        dataSources.invalidateModels();
+        publishers.invalidateModels();
+    }
+
+    private DataPointVO loadTags(DataPointVO vo) {
+        vo.setTags(DataPointTagsDao.getInstance().getTagsForDataPointId(vo.getId()));
+        return vo;
+    }
+
+    private static class CachedModels {
+        final int version;
+        final List<EventTypeVOModel<?,?,?>> models;
+
+        CachedModels(int version, List<EventTypeVOModel<?,?,?>> models) {
+            this.version = version;
+            this.models = models;
+        }
+    }
+
+    /**
+     * The cached VOs for one source type, ordered by id
+     */
+    private abstract class Section<VO> {
+        private final ToIntFunction<VO> idFunction;
+        private volatile ConcurrentSkipListMap<Integer, VO> entries;
+        /**
+         * Incremented every time an entry changes, cached models for an older version are rebuilt
+         */
+        private volatile int version;
+        private final Cache<Integer, CachedModels> models = CacheBuilder.newBuilder()
+                .maximumSize(userCacheSize)
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+
+        Section(ToIntFunction<VO> idFunction) {
+            this.idFunction = idFunction;
+        }
+
+        abstract Collection<VO> load();
+
+        /**
+         * @return the model or null if the user does not have permission
+         */
+        abstract EventTypeVOModel<?,?,?> map(VO vo, User user);
+
+        List<EventTypeVOModel<?,?,?>> models(User user) {
+            CachedModels cached = models.getIfPresent(user.getId());
+            int version = this.version;
+            if (cached != null && cached.version == version) {
+                return cached.models;
+            }
+
+            List<EventTypeVOModel<?,?,?>> result = new ArrayList<>();
+            for (VO vo : entries().values()) {
+                EventTypeVOModel<?,?,?> model = map(vo, user);
+                if (model != null) {
+                    result.add(model);
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            models.put(user.getId(), new CachedModels(version, result));
+            return result;
+        }
+
+        private ConcurrentSkipListMap<Integer, VO> entries() {
+            ConcurrentSkipListMap<Integer, VO> entries = this.entries;
+            if (entries == null) {
+                synchronized (this) {
+                    entries = this.entries;
+                    if (entries == null) {
+                        entries = new ConcurrentSkipListMap<>();
+                        for (VO vo : load()) {
+                            entries.put(idFunction.applyAsInt(vo), vo);
+                        }
+                        this.entries = entries;
+                    }
+                }
+            }
+            return entries;
+        }
+
+        synchronized void put(int id, VO vo) {
+            if (entries != null) {
+                entries.put(id, vo);
+            }
+            version++;
+        }
+
+        synchronized void putIfAbsent(int id, Supplier<VO> vo) {
+            if (entries != null && !entries.containsKey(id)) {
+                entries.put(id, vo.get());
+            }
+            version++;
+        }
+
+        synchronized void replace(int id, Supplier<VO> vo) {
+            if (entries != null && entries.containsKey(id)) {
+                entries.put(id, vo.get());
+                version++;
+            }
+        }
+
+        /**
+         * Reload the entries which match the filter, entries which reload as null are removed
+         */
+        synchronized void reload(Predicate<VO> filter, Function<VO, VO> reload) {
+            if (entries == null) return;
+
+            boolean changed = false;
+            for (Map.Entry<Integer, VO> entry : entries.entrySet()) {
+                if (filter.test(entry.getValue())) {
+                    VO reloaded = reload.apply(entry.getValue());
+                    if (reloaded == null) {
+                        entries.remove(entry.getKey());
+                    } else {
+                        entries.put(entry.getKey(), reloaded);
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                version++;
+            }
+        }
+
+        synchronized void remove(int id) {
+            if (entries != null) {
+                entries.remove(id);
+            }
+            version++;
+        }
+
+        synchronized void invalidate() {
+            entries = null;
+            version++;
+        }
+
+        void invalidateUser(int userId) {
+            models.invalidate(userId);
+        }
+
+        void invalidateModels() {
+            models.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.exception.GenericRestException;
+import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
+import com.infiniteautomation.mango.spring.service.FileStoreService;
+import com.infiniteautomation.mango.util.exception.TranslatableIllegalArgumentException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Resumable uploads to a file store. An upload is initiated for a path in a store, chunks are then written directly
+ * at their offset in a temporary file (they may arrive out of order, in parallel or be re-sent). The received ranges
+ * are tracked so an interrupted upload can be resumed from where it stopped. On completion the checksum of the whole
+ * file is verified before it is moved into the store.
+ *
+ * <p>Chunks are written while holding the read lock of the upload, so they can be written in parallel. Completing or
+ * aborting an upload takes the write lock, it waits for chunks which are being written and any chunk received after
+ * the upload was completed or aborted is rejected.</p>
+ *
+ * <p>Uploads are kept in memory, an upload is discarded if no chunk is received for
+ * {@code rest.fileStore.upload.expiryMs}. Temporary files left behind by a restart are deleted on startup.</p>
+ */
+@Component
+public class ChunkedUploadManager {
+
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+    private static final String UPLOAD_DIR = "file-store-uploads";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Log log = LogFactory.getLog(ChunkedUploadManager.class);
+
+    private final FileStoreService service;
+    private final ScheduledExecutorService scheduledExecutor;
+    private final long expiry;
+    private final ConcurrentMap<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> expireTask;
+
+    @Autowired
+    public ChunkedUploadManager(FileStoreService service, ScheduledExecutorService scheduledExecutor,
+            @Value("${rest.fileStore.upload.expiryMs:86400000}") long expiry) {
+        this.service = service;
+        this.scheduledExecutor = scheduledExecutor;
+        this.expiry = Math.max(60000, expiry);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            FileUtils.deleteDirectory(uploadDirectory().toFile());
+        } catch (IOException e) {
+            log.warn("Failed to delete incomplete uploads", e);
+        }
+        long period = Math.min(expiry, TimeUnit.MINUTES.toMillis(10));
+        this.expireTask = scheduledExecutor.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (expireTask != null) {
+            expireTask.cancel(false);
+        }
+    }
+
+    private Path uploadDirectory() {
+        return Common.getTempPath().resolve(UPLOAD_DIR);
+    }
+
+    /**
+     * @param user
+     * @param storeName
+     * @param pathInStore path of the file to create
+     * @param size total size of the file if known
+     * @param algorithm message digest algorithm for the checksum, SHA-256 if null
+     * @param overwrite overwrite an existing file on completion, otherwise a unique name is chosen
+     * @return
+     * @throws IOException
+     */
+    public ChunkedUploadModel initiate(User user, String storeName, String pathInStore, Long size, String algorithm,
+            boolean overwrite) throws IOException {
+
+        // checks write permission for the path
+        resolveTarget(storeName, pathInStore);
+        if (size != null && size < 0) {
+            throw new BadRequestException(new TranslatableMessage("validate.invalidValue"));
+        }
+        String digestAlgorithm = algorithm == null ? DEFAULT_ALGORITHM : algorithm;
+        try {
+            MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new BadRequestException(new TranslatableMessage("filestore.unknownChecksumAlgorithm", digestAlgorithm));
+        }
+
+        Files.createDirectories(uploadDirectory());
+        String id = UUID.randomUUID().toString();
+        Path temp = Files.createFile(uploadDirectory().resolve(id));
+
+        ChunkedUpload upload = new ChunkedUpload(id, user.getId(), storeName, pathInStore, temp, size, digestAlgorithm, overwrite);
+        uploads.put(id, upload);
+        return upload.toModel();
+    }
+
+    public ChunkedUploadModel get(User user, String id) {
+        return getUpload(user, id).toModel();
+    }
+
+    /**
+     * Write a chunk at its offset, the bytes written before a failure are still recorded as received.
+     *
+     * @param user
+     * @param id
+     * @param offset
+     * @param input chunk data, read until the end of the stream
+     * @return status after the chunk was written
+     * @throws IOException
+     * @throws NotFoundRestException if the upload was completed or aborted
+     */
+    public ChunkedUploadModel writeChunk(User user, String id, long offset, InputStream input) throws IOException {
+        ChunkedUpload upload = getUpload(user, id);
+        if (offset < 0 || upload.size != null && offset > upload.size) {
+            throw new BadRequestException(new TranslatableMessage("filestore.invalidChunkOffset", offset, upload.size));
+        }
+
+        Lock lock = upload.lock.readLock();
+        lock.lock();
+        try {
+            if (upload.closed) {
+                throw new NotFoundRestException();
+            }
+
+            upload.touch();
+            long position = offset;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (FileChannel channel = FileChannel.open(upload.temp, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    if (upload.size != null && position + read > upload.size) {
+                        throw new BadRequestException(new TranslatableMessage("filestore.chunkExceedsSize", offset, upload.size));
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                }
+            } finally {
+                upload.received(offset, position);
+            }
+            return upload.toModel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verify the checksum and move the file into the store
+     *
+     * @param user
+     * @param id
+     * @param checksum hex encoded digest of the whole file
+     * @return the file in the store
+     * @throws IOException
+     */
+    public File complete(User user, String id, String checksum) throws IOException {
+        ChunkedUpload upload = getUpload(user, id);
+        Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            if (upload.closed) {
+                throw new NotFoundRestException();
+            }
+
+            long length = Files.size(upload.temp);
+            long expected = upload.size == null ? length : upload.size;
+            if (upload.contiguous() < expected) {
+                throw new BadRequestException(new TranslatableMessage("filestore.uploadIncomplete", upload.contiguous(), expected));
+            }
+
+            String actual = digest(upload);
+            if (checksum == null || !checksum.trim().equalsIgnoreCase(actual)) {
+                throw new BadRequestException(new TranslatableMessage("filestore.checksumMismatch", checksum, actual));
+            }
+
+            // permissions may have changed since the upload was initiated
+            Path target = resolveTarget(upload.storeName, upload.pathInStore);
+            File directory = target.getParent().toFile();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new GenericRestException(HttpStatus.INTERNAL_SERVER_ERROR,
+                        new TranslatableMessage("filestore.cannotCreateDir", upload.pathInStore, upload.storeName));
+            }
+
+            File destination;
+            try {
+                destination = service.findUniqueFileName(directory, target.getFileName().toString(), upload.overwrite);
+            } catch (TranslatableException e) {
+                throw new GenericRestException(HttpStatus.FORBIDDEN, e.getTranslatableMessage());
+            }
+
+            try {
+                Files.move(upload.temp, destination.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                // temp directory is on a different file system
+                Files.move(upload.temp, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            upload.closed = true;
+            uploads.remove(id);
+            return destination;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort(User user, String id) throws IOException {
+        ChunkedUpload upload = getUpload(user, id);
+        Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            if (upload.closed) {
+                throw new NotFoundRestException();
+            }
+            upload.closed = true;
+            uploads.remove(id);
+            Files.deleteIfExists(upload.temp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ChunkedUpload getUpload(User user, String id) {
+        ChunkedUpload upload = uploads.get(id);
+        if (upload == null) {
+            throw new NotFoundRestException();
+        }
+        if (upload.userId != user.getId()) {
+            throw new AccessDeniedException();
+        }
+        return upload;
+    }
+
+    private Path resolveTarget(String storeName, String pathInStore) {
+        if (pathInStore == null || pathInStore.isEmpty() || pathInStore.endsWith("/")) {
+            throw new BadRequestException(new TranslatableMessage("filestore.invalidUploadPath"));
+        }
+        try {
+            return service.getPathForWrite(storeName, pathInStore);
+        } catch (TranslatableIllegalArgumentException e) {
+            throw new AccessDeniedException(e.getTranslatableMessage());
+        }
+    }
+
+    private String digest(ChunkedUpload upload) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(upload.algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE * 16);
+        try (FileChannel channel = FileChannel.open(upload.temp, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void expire() {
+        long now = Common.timer.currentTimeMillis();
+        for (ChunkedUpload upload : uploads.values()) {
+            // an upload which is being written to or completed is not idle
+            Lock lock = upload.lock.writeLock();
+            if (upload.lastActivity + expiry >= now || !lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!upload.closed && uploads.remove(upload.id, upload)) {
+                    upload.closed = true;
+                    Files.deleteIfExists(upload.temp);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to delete expired upload " + upload.temp, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private class ChunkedUpload {
+        final String id;
+        final int userId;
+        final String storeName;
+        final String pathInStore;
+        final Path temp;
+        final Long size;
+        final String algorithm;
+        final boolean overwrite;
+
+        /**
+         * Received ranges, start to end (exclusive), ranges never overlap or touch
+         */
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        /**
+         * Set when the upload is completed, aborted or expired, guarded by the write lock
+         */
+        volatile boolean closed;
+        volatile long lastActivity;
+
+        ChunkedUpload(String id, int userId, String storeName, String pathInStore, Path temp, Long size,
+                String algorithm, boolean overwrite) {
+            this.id = id;
+            this.userId = userId;
+            this.storeName = storeName;
+            this.pathInStore = pathInStore;
+            this.temp = temp;
+            this.size = size;
+            this.algorithm = algorithm;
+            this.overwrite = overwrite;
+            touch();
+        }
+
+        void touch() {
+            this.lastActivity = Common.timer.currentTimeMillis();
+        }
+
+        synchronized void received(long start, long end) {
+            touch();
+            if (end <= start) return;
+
+            // merge with any range which overlaps or touches this one
+            Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+            if (floor != null && floor.getValue() >= start) {
+                start = floor.getKey();
+                end = Math.max(end, floor.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                ranges.remove(next.getKey());
+            }
+            ranges.put(start, end);
+        }
+
+        synchronized long contiguous() {
+            Long end = ranges.get(0L);
+            return end == null ? 0 : end;
+        }
+
+        synchronized ChunkedUploadModel toModel() {
+            ChunkedUploadModel model = new ChunkedUploadModel();
+            model.setId(id);
+            model.setFileStoreName(storeName);
+            model.setPath(pathInStore);
+            model.setSize(size);
+            model.setAlgorithm(algorithm);
+            model.setReceived(contiguous());
+            List<long[]> list = new ArrayList<>(ranges.size());
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                list.add(new long[] {range.getKey(), range.getValue()});
+            }
+            model.setRanges(list);
+            model.setExpires(new Date(lastActivity + expiry));
+            return model;
+        }
+    }
+}
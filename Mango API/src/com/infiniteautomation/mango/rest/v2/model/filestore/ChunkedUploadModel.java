@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Status of a chunked upload, used to resume an interrupted upload
+ */
+public class ChunkedUploadModel {
+
+    private String id;
+    private String fileStoreName;
+    private String path;
+    private Long size;
+    private String algorithm;
+    private long received;
+    private List<long[]> ranges;
+    private Date expires;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFileStoreName() {
+        return fileStoreName;
+    }
+
+    public void setFileStoreName(String fileStoreName) {
+        this.fileStoreName = fileStoreName;
+    }
+
+    /**
+     * @return path of the file relative to the store root
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return total size of the file, null if it was not supplied when the upload was initiated
+     */
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return message digest algorithm used to verify the checksum on completion
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @return number of bytes received without gaps from the start of the file, i.e. the offset to resume from
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    /**
+     * @return byte ranges which have been received, start inclusive and end exclusive
+     */
+    public List<long[]> getRanges() {
+        return ranges;
+    }
+
+    public void setRanges(List<long[]> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return the upload is discarded if no chunk is received before this time
+     */
+    public Date getExpires() {
+        return expires;
+    }
+
+    public void setExpires(Date expires) {
+        this.expires = expires;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Cache of gzip compressed copies of file store files, so compressible files (JSON, CSV, JavaScript etc.) are
+ * compressed once rather than on every request.
+ *
+ * <p>Compressed copies are kept outside of the file stores so they do not show up in listings or zip downloads. Each
+ * copy is named after the size and last modified time of the file it was created from, a copy of an older version of
+ * the file is never served even if the file was modified outside of the REST API. Copies are created in the
+ * background when a file is written, or on the first request for a file which does not have one yet.</p>
+ */
+@Component
+public class CompressedFileCache {
+
+    public static final String GZIP = "gzip";
+    private static final String CACHE_DIR = "file-store-compressed";
+
+    private final Log log = LogFactory.getLog(CompressedFileCache.class);
+
+    private final ExecutorService executor;
+    private final boolean enabled;
+    private final long minSize;
+    private final Set<String> extensions;
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CompressedFileCache(ExecutorService executor,
+            @Value("${rest.fileStore.compression.enabled:true}") boolean enabled,
+            @Value("${rest.fileStore.compression.minSize:1024}") long minSize,
+            @Value("${rest.fileStore.compression.extensions:json,csv,js,mjs,map,css,html,htm,svg,txt,xml}") String extensions) {
+        this.executor = executor;
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.extensions = Arrays.stream(extensions.split(","))
+                .map(e -> e.trim().toLowerCase(Locale.ROOT))
+                .filter(e -> !e.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    @PostConstruct
+    public void start() {
+        // entries for files deleted while Mango was not running would never be removed
+        try {
+            FileUtils.deleteDirectory(cacheDirectory().toFile());
+        } catch (IOException e) {
+            log.warn("Failed to clear compressed file cache", e);
+        }
+    }
+
+    private Path cacheDirectory() {
+        return Common.getTempPath().resolve(CACHE_DIR);
+    }
+
+    /**
+     * @param file
+     * @return true if the response for this file depends on the Accept-Encoding request header
+     */
+    public boolean isCompressible(Path file) {
+        if (!enabled) {
+            return false;
+        }
+        String filename = file.getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 && extensions.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param request
+     * @return true if the client accepts gzip content encoding
+     */
+    public boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                    return !isZeroQuality(parts);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the gzip compressed copy of a version of a file. If there is no copy one is created in the background and
+     * null is returned. The copy may be replaced or removed at any time, callers must handle it no longer existing.
+     *
+     * @param file
+     * @param attributes attributes of the version of the file, these should also be used for the response headers
+     * @return the compressed copy or null if not available
+     */
+    public Path get(Path file, BasicFileAttributes attributes) {
+        if (!isCompressible(file)) {
+            return null;
+        }
+        if (!attributes.isRegularFile() || attributes.size() < minSize) {
+            return null;
+        }
+
+        Path compressed = entryDirectory(file).resolve(entryName(attributes));
+        if (Files.isRegularFile(compressed)) {
+            return compressed;
+        }
+        compress(file);
+        return null;
+    }
+
+    /**
+     * Create a compressed copy of a file in the background, replacing the copy of any previous version
+     *
+     * @param file
+     */
+    public void compress(Path file) {
+        if (!isCompressible(file)) {
+            return;
+        }
+        Path key = file.toAbsolutePath().normalize();
+        if (!pending.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    createEntry(key);
+                } catch (NoSuchFileException e) {
+                    // deleted before it was compressed
+                } catch (IOException e) {
+                    log.warn("Failed to compress file " + key, e);
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+
+    /**
+     * Remove the compressed copy of a file, or of every file in a directory
+     *
+     * @param fileOrFolder
+     */
+    public void invalidate(Path fileOrFolder) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (Files.isDirectory(fileOrFolder)) {
+                Files.walkFileTree(fileOrFolder, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        removeEntry(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                removeEntry(fileOrFolder);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to remove compressed copy of " + fileOrFolder, e);
+        }
+    }
+
+    private void removeEntry(Path file) throws IOException {
+        if (isCompressible(file)) {
+            FileUtils.deleteDirectory(entryDirectory(file).toFile());
+        }
+    }
+
+    private void createEntry(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile() || attributes.size() < minSize) {
+            return;
+        }
+
+        Path directory = entryDirectory(file);
+        String name = entryName(attributes);
+        if (Files.isRegularFile(directory.resolve(name))) {
+            return;
+        }
+
+        // only the copy of the latest version is kept
+        FileUtils.deleteDirectory(directory.toFile());
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, name, ".tmp");
+        try {
+            try (OutputStream output = new BestCompressionOutputStream(Files.newOutputStream(temp))) {
+                Files.copy(file, output);
+            }
+
+            // file was modified while it was being compressed
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!name.equals(entryName(after))) {
+                return;
+            }
+
+            try {
+                Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path entryDirectory(Path file) {
+        return cacheDirectory().resolve(hash(file.toAbsolutePath().normalize().toString()));
+    }
+
+    private String entryName(BasicFileAttributes attributes) {
+        return Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + ".gz";
+    }
+
+    private String hash(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The file is only compressed once, use the best compression
+     */
+    private static class BestCompressionOutputStream extends GZIPOutputStream {
+        BestCompressionOutputStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.model.FilteredStreamWithTotal;
+import com.infiniteautomation.mango.rest.v2.model.KeysetPagination;
+import com.infiniteautomation.mango.rest.v2.model.RQLFilterCachedJavaBean;
+import com.infiniteautomation.mango.rest.v2.model.StreamWithTotal;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * RQL query against the entries of a file store directory. The directory is read with a {@link DirectoryStream} in a
+ * single pass, only the entries which can be on the requested page are retained. File attributes are read lazily so
+ * filtering by filename does not touch the attributes of entries which don't match.
+ *
+ * <p>Supports {@code after(cursor)} using the {@code nextCursor} returned with a full page. The filename is appended to
+ * the sort so the order is stable between requests. The total is always the number of matching entries in the
+ * directory.</p>
+ */
+public class DirectoryListing implements StreamWithTotal<FileModel> {
+
+    private static final String FILENAME = "filename";
+    private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper();
+
+    private final List<String> sort;
+    private final Long limit;
+    private final Comparator<FileModel> comparator;
+    private final FilteredStreamWithTotal<FileModel> results;
+    private List<FileModel> page;
+
+    /**
+     * @param directory
+     * @param toModel
+     * @param rql may be null
+     */
+    public DirectoryListing(Path directory, Function<Path, FileModel> toModel, ASTNode rql) {
+        KeysetPagination pagination = KeysetPagination.parse(rql);
+        ASTNode query = pagination.getQuery();
+
+        List<Object> nodes = new ArrayList<>();
+        if (query != null && "and".equals(query.getName())) {
+            nodes.addAll(query.getArguments());
+        } else if (query != null) {
+            nodes.add(query);
+        }
+
+        List<String> sort = null;
+        boolean limited = false;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!(nodes.get(i) instanceof ASTNode)) continue;
+            ASTNode node = (ASTNode) nodes.get(i);
+            if ("sort".equals(node.getName())) {
+                sort = node.getArguments().stream().map(String::valueOf).collect(Collectors.toCollection(ArrayList::new));
+                if (sort.stream().noneMatch(s -> FILENAME.equals(s.replaceFirst("^[+-]", "")))) {
+                    sort.add(FILENAME);
+                    nodes.set(i, new ASTNode("sort", new ArrayList<Object>(sort)));
+                }
+            } else if ("limit".equals(node.getName())) {
+                limited = true;
+            }
+        }
+        if (sort == null && (limited || pagination.hasCursor())) {
+            sort = new ArrayList<>();
+            sort.add(FILENAME);
+            nodes.add(new ASTNode("sort", FILENAME));
+        }
+
+        RQLFilterCachedJavaBean<FileModel> filter = new RQLFilterCachedJavaBean<>(nodes.size() == 1 ? (ASTNode) nodes.get(0) : new ASTNode("and", nodes));
+        this.sort = sort;
+        this.limit = filter.getLimit();
+        this.comparator = filter.getSort();
+
+        Predicate<FileModel> afterCursor = null;
+        if (pagination.hasCursor()) {
+            FileModel last = decode(pagination.getCursor());
+            afterCursor = item -> comparator.compare(item, last) > 0;
+        }
+
+        this.results = new FilteredStreamWithTotal<>(() -> list(directory, toModel), filter, afterCursor);
+    }
+
+    private static Stream<FileModel> list(Path directory, Function<Path, FileModel> toModel) {
+        try {
+            DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+            return StreamSupport.stream(entries.spliterator(), false)
+                    .map(toModel)
+                    .onClose(() -> {
+                        try {
+                            entries.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<FileModel> getItems() {
+        return getPage().stream();
+    }
+
+    @Override
+    public int getTotal() {
+        return results.getTotal();
+    }
+
+    /**
+     * @return cursor for the next page, or null if this is the last page
+     */
+    @JsonInclude(Include.NON_NULL)
+    public String getNextCursor() {
+        List<FileModel> page = getPage();
+        if (limit == null || page.isEmpty() || page.size() < limit) {
+            return null;
+        }
+
+        CursorModel model = new CursorModel();
+        model.sort = sort;
+        FileModel last = page.get(page.size() - 1);
+        model.last = new FileModel(last.getFolderPath(), last.getFilename(), last.getMimeType(),
+                last.getLastModified(), last.getSize(), last.isDirectory());
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(CURSOR_MAPPER.writeValueAsBytes(model));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized List<FileModel> getPage() {
+        if (page == null) {
+            page = results.getItems().collect(Collectors.toList());
+        }
+        return page;
+    }
+
+    private FileModel decode(String cursor) {
+        try {
+            CursorModel model = CURSOR_MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), CursorModel.class);
+            if (model.last == null || model.sort == null || !model.sort.equals(sort)) {
+                throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"));
+            }
+            return model.last;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidCursor"), e);
+        }
+    }
+
+    /**
+     * Serialized form of the cursor, the sort and the last entry on the previous page
+     */
+    public static class CursorModel {
+        public List<String> sort;
+        public FileModel last;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a directory and its contents as a zip archive to an output stream. The archive is built as it is written,
+ * only one file is open at a time and nothing is buffered beyond the copy buffers.
+ *
+ * <p>Files with an extension from {@code rest.fileStore.zip.storedExtensions} are already compressed, they are written
+ * with compression level 0 instead of being compressed again. A STORED entry would need the CRC before the data is
+ * written, which means reading every such file twice.</p>
+ */
+@Component
+public class DirectoryZipWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int compressionLevel;
+    private final Set<String> storedExtensions;
+
+    @Autowired
+    public DirectoryZipWriter(@Value("${rest.fileStore.zip.compressionLevel:-1}") int compressionLevel,
+            @Value("${rest.fileStore.zip.storedExtensions:zip,gz,tgz,bz2,xz,7z,rar,jar,br,zst,jpg,jpeg,png,gif,webp,mp3,mp4,woff,woff2}") String storedExtensions) {
+        this.compressionLevel = Math.max(Deflater.DEFAULT_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
+        this.storedExtensions = Arrays.stream(storedExtensions.split(","))
+                .map(e -> e.trim().toLowerCase(Locale.ROOT))
+                .filter(e -> !e.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @param directory
+     * @param output is not closed
+     * @throws IOException
+     */
+    public void write(Path directory, OutputStream output) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(directory)) {
+                    ZipEntry entry = new ZipEntry(entryName(directory, dir) + "/");
+                    entry.setLastModifiedTime(attrs.lastModifiedTime());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(0);
+                    entry.setCrc(0);
+                    zip.putNextEntry(entry);
+                    zip.closeEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                // links are not followed, they could point outside of the store
+                if (attrs.isRegularFile()) {
+                    zip.setLevel(isCompressed(file) ? Deflater.NO_COMPRESSION : compressionLevel);
+                    ZipEntry entry = new ZipEntry(entryName(directory, file));
+                    entry.setLastModifiedTime(attrs.lastModifiedTime());
+                    zip.putNextEntry(entry);
+                    Files.copy(file, zip);
+                    zip.closeEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // deleted or unreadable since the directory was listed
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        zip.finish();
+        zip.flush();
+    }
+
+    private String entryName(Path root, Path path) {
+        StringBuilder name = new StringBuilder();
+        for (Path segment : root.relativize(path)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(segment.toString());
+        }
+        return name.toString();
+    }
+
+    private boolean isCompressed(Path file) {
+        String filename = file.getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a file to the response, handling conditional and range requests.
+ *
+ * <ul>
+ * <li>A strong ETag is derived from the size and last modified time of the file, a matching {@code If-None-Match}
+ * (or {@code If-Modified-Since} when no ETag is sent) results in a 304 response.</li>
+ * <li>A single byte range is supported, the {@code Range} header is ignored if the {@code If-Range} validator does not
+ * match. Requests for multiple ranges are answered with the whole file.</li>
+ * <li>Transfers of at least {@code rest.fileStore.download.mappedThreshold} bytes map the file and pass the mapped
+ * buffers to Jetty, which writes them to the connection without copying them onto the heap. Smaller transfers use
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.</li>
+ * <li>A content encoded copy of the file may be sent in place of the file, ranges are not supported for the encoded
+ * copy. The ETag and Last-Modified headers are those of the file, with the encoding appended to the ETag. The caller
+ * passes the attributes of the file which the copy was selected for, so the headers always describe that version. If
+ * the copy no longer exists the file is sent without encoding.</li>
+ * </ul>
+ */
+@Component
+public class FileDownloadHandler {
+
+    private static final long MAPPED_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final long mappedThreshold;
+    private final boolean memoryMapped;
+
+    @Autowired
+    public FileDownloadHandler(@Value("${rest.fileStore.download.mappedThreshold:1048576}") long mappedThreshold,
+            @Value("${rest.fileStore.download.memoryMapped:true}") boolean memoryMapped) {
+        this.mappedThreshold = mappedThreshold;
+        // a mapped file cannot be renamed or deleted on Windows until the buffer is garbage collected
+        this.memoryMapped = memoryMapped && !System.getProperty("os.name", "").startsWith("Windows");
+    }
+
+    /**
+     * @param file
+     * @return strong entity tag for the current version of the file
+     * @throws IOException
+     */
+    public String entityTag(Path file) throws IOException {
+        return entityTag(Files.readAttributes(file, BasicFileAttributes.class), null);
+    }
+
+    private String entityTag(BasicFileAttributes attributes, String contentEncoding) {
+        String tag = Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis());
+        return "\"" + (contentEncoding == null ? tag : tag + "-" + contentEncoding) + "\"";
+    }
+
+    /**
+     * Write the file (or the requested range of it) to the response. Content type, disposition and cache control
+     * headers should be set on the response before calling this method.
+     *
+     * @param file
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    public void write(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        write(file, Files.readAttributes(file, BasicFileAttributes.class), null, null, request, response);
+    }
+
+    /**
+     * Write a content encoded copy of the file to the response, conditional requests are evaluated against the file.
+     *
+     * @param file
+     * @param attributes attributes of the file, read once by the caller
+     * @param encoded content encoded copy of the file (created from the version described by the attributes), if null
+     *        or if it no longer exists the file is written
+     * @param contentEncoding e.g. gzip
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    public void write(Path file, BasicFileAttributes attributes, Path encoded, String contentEncoding,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        FileChannel channel = null;
+        if (encoded != null) {
+            try {
+                channel = FileChannel.open(encoded, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // the copy was replaced or removed after it was looked up
+                encoded = null;
+            }
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        try {
+            write(channel, attributes, encoded == null ? null : contentEncoding, request, response);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(FileChannel channel, BasicFileAttributes attributes, String contentEncoding,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = entityTag(attributes, contentEncoding);
+        long length = contentEncoding == null ? attributes.size() : channel.size();
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = contentEncoding == null ? requestedRange(request, etag, lastModified) : null;
+        if (range != null) {
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        if (response.getContentType() == null) {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        }
+        if (contentEncoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        HttpOutput jettyOutput = memoryMapped && count >= mappedThreshold ? jettyOutput(request) : null;
+        if (jettyOutput != null) {
+            // commit the headers via any response wrappers before writing to Jetty directly
+            response.flushBuffer();
+            for (long position = start; position <= end; position += MAPPED_CHUNK_SIZE) {
+                long size = Math.min(MAPPED_CHUNK_SIZE, end + 1 - position);
+                jettyOutput.write(channel.map(MapMode.READ_ONLY, position, size));
+            }
+        } else {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end + 1 - position, target);
+                if (transferred <= 0) {
+                    // file was truncated while sending
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private HttpOutput jettyOutput(HttpServletRequest request) {
+        Request baseRequest = Request.getBaseRequest(request);
+        return baseRequest == null ? null : baseRequest.getResponse().getHttpOutput();
+    }
+
+    private boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // weak comparison
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * @return the requested range, or null if the whole file should be sent
+     */
+    private HttpRange requestedRange(HttpServletRequest request, String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !HttpMethod.GET.matches(request.getMethod())) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                // strong comparison, a weak tag never matches
+                if (!etag.equals(ifRange)) {
+                    return null;
+                }
+            } else {
+                long date = dateHeader(request, HttpHeaders.IF_RANGE);
+                if (date < 0 || date / 1000 != lastModified / 1000) {
+                    return null;
+                }
+            }
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // invalid range header is ignored
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    private long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
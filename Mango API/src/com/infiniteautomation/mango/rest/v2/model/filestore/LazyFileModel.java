@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.filestore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ * File model for directory listings, the file attributes are read (with a single call) the first time one of them is
+ * accessed. Entries which are filtered out by name never have their attributes read.
+ */
+public class LazyFileModel extends FileModel {
+
+    private final Path path;
+    private final Function<String, String> mimeTypes;
+    private boolean attributesRead;
+    private boolean mimeTypeResolved;
+
+    /**
+     * @param path
+     * @param folderPath path of the parent folder relative to the store root
+     * @param mimeTypes resolves the mime type from the filename
+     */
+    public LazyFileModel(Path path, String folderPath, Function<String, String> mimeTypes) {
+        this.path = path;
+        this.mimeTypes = mimeTypes;
+        this.filename = path.getFileName().toString();
+        this.folderPath = folderPath;
+    }
+
+    private void readAttributes() {
+        if (attributesRead) return;
+        attributesRead = true;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            this.directory = attributes.isDirectory();
+            this.lastModified = new Date(attributes.lastModifiedTime().toMillis());
+            this.size = attributes.isDirectory() ? null : attributes.size();
+        } catch (IOException e) {
+            // deleted since it was listed
+        }
+    }
+
+    @Override
+    public String getMimeType() {
+        if (!mimeTypeResolved) {
+            mimeTypeResolved = true;
+            this.mimeType = mimeTypes.apply(filename);
+        }
+        return mimeType;
+    }
+
+    @Override
+    public Date getLastModified() {
+        readAttributes();
+        return lastModified;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        readAttributes();
+        return directory;
+    }
+
+    @Override
+    public Long getSize() {
+        readAttributes();
+        return size;
+    }
+}
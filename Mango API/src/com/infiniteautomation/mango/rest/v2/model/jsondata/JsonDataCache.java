@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.jsondata;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Striped;
+import com.infiniteautomation.mango.rest.v2.exception.GenericRestException;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.infiniteautomation.mango.spring.service.JsonDataService;
+import com.infiniteautomation.mango.util.exception.NotFoundException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.json.JsonDataVO;
+import com.serotonin.m2m2.vo.permission.PermissionException;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Cache of the parsed JSON data by xid, so large documents are not read from the database and parsed for every
+ * request. The cached entry is replaced by the saved VO when a DAO event is received, and removed on delete.
+ *
+ * <p>Every change to an xid is assigned a new version which is used as an entity tag for optimistic locking of
+ * updates. Versions are only unique for the lifetime of this instance so the tag also contains a random epoch. A
+ * version is only kept while the xid is cached or being read, an xid which is read again after it was evicted gets a
+ * new version.</p>
+ *
+ * <p>All modifications made through this class ({@link #update}, {@link #patch} and {@link #delete}) hold a lock for
+ * the xid while the data is read, checked against the If-Match entity tags, modified and saved.</p>
+ *
+ * <p>The cached VOs and their JSON data are shared, they must never be modified. Copy the VO and the JSON data before
+ * making changes.</p>
+ *
+ * <p>{@link JsonDataChangeListener}s are notified of every change after the cache is updated, with the entity tags
+ * before and after the change.</p>
+ */
+@Component
+public class JsonDataCache {
+
+    private final JsonDataService service;
+    private final Cache<String, CachedJsonData> entries;
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    private final Striped<Lock> locks = Striped.lock(64);
+    private final List<JsonDataChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listens for changes to the JSON data, use instead of listening for the DAO events directly to get the entity tags
+     */
+    @FunctionalInterface
+    public interface JsonDataChangeListener {
+        /**
+         * @param event
+         * @param previousTag entity tag of the version which was changed, null if the data was created or its version
+         *        was not known (the xid was not cached)
+         * @param tag entity tag of the new version, null if the data was deleted
+         */
+        void changed(DaoEvent<? extends JsonDataVO> event, String previousTag, String tag);
+    }
+
+    @Autowired
+    public JsonDataCache(JsonDataService service,
+            @Value("${rest.jsonData.cache.maxEntries:100}") long maxEntries,
+            @Value("${rest.jsonData.cache.expiryMs:600000}") long expiry) {
+        this.service = service;
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(expiry, TimeUnit.MILLISECONDS)
+                .removalListener((RemovalNotification<String, CachedJsonData> n) -> versions.remove(n.getKey(), n.getValue().version))
+                .build();
+    }
+
+    @EventListener
+    protected void handleDaoEvent(DaoEvent<? extends JsonDataVO> event) {
+        JsonDataVO original = event.getOriginalVo();
+        String previousTag = null;
+        String tag = null;
+        synchronized (this) {
+            if (original != null && !original.getXid().equals(event.getVo().getXid())) {
+                previousTag = entityTag(removed(original.getXid()));
+            }
+            if (event.getType() == DaoEventType.DELETE) {
+                previousTag = entityTag(removed(event.getVo().getXid()));
+            } else {
+                CachedJsonData cached = updated(event.getVo());
+                tag = cached.getEntityTag();
+                if (previousTag == null) {
+                    previousTag = entityTag(cached.previousVersion);
+                }
+            }
+        }
+        for (JsonDataChangeListener listener : listeners) {
+            listener.changed(event, previousTag, tag);
+        }
+    }
+
+    public void addListener(JsonDataChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(JsonDataChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the JSON data for an xid, checking the user has read permission
+     *
+     * @param user
+     * @param xid
+     * @return
+     * @throws com.infiniteautomation.mango.util.exception.NotFoundException if the xid does not exist
+     */
+    public CachedJsonData get(PermissionHolder user, String xid) {
+        CachedJsonData cached = entries.getIfPresent(xid);
+        if (cached != null) {
+            if (!service.hasReadPermission(user, cached.getVo())) {
+                throw new PermissionException(new TranslatableMessage("permission.exception.doesNotHaveRequiredPermission", user), user);
+            }
+            return cached;
+        }
+
+        // the version is assigned before reading so a change while reading is detected
+        long version = versions.computeIfAbsent(xid, k -> sequence.incrementAndGet());
+        try {
+            JsonDataVO vo = service.get(xid);
+            cached = new CachedJsonData(vo, version, null);
+            synchronized (this) {
+                Long current = versions.get(xid);
+                if (current != null && current == version) {
+                    entries.asMap().putIfAbsent(xid, cached);
+                }
+            }
+            return cached;
+        } finally {
+            synchronized (this) {
+                // don't keep versions of xids which don't exist or could not be cached
+                CachedJsonData entry = entries.getIfPresent(xid);
+                if (entry == null || entry.version != version) {
+                    versions.remove(xid, version);
+                }
+            }
+        }
+    }
+
+    /**
+     * Modify the data and save it. Modifications of the same xid are applied one at a time.
+     *
+     * @param user
+     * @param xid
+     * @param ifMatch entity tags from the If-Match header, or null to modify the current version
+     * @param modify given the current data (null if the xid does not exist), saves the modified VO and returns it
+     * @return the saved data
+     * @throws GenericRestException 412 if the If-Match header does not match the current version
+     */
+    public CachedJsonData update(PermissionHolder user, String xid, String ifMatch, Function<CachedJsonData, JsonDataVO> modify) {
+        Lock lock = locks.get(xid);
+        lock.lock();
+        try {
+            CachedJsonData current;
+            try {
+                current = get(user, xid);
+            } catch (NotFoundException e) {
+                current = null;
+            }
+            checkMatches(xid, current, ifMatch);
+            return updated(modify.apply(current));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply a JSON Patch to the data and save it.
+     *
+     * @param user
+     * @param xid
+     * @param patch
+     * @param ifMatch entity tags from the If-Match header, or null to patch the current version
+     * @return the saved data
+     */
+    public CachedJsonData patch(PermissionHolder user, String xid, JsonNode patch, String ifMatch) {
+        return update(user, xid, ifMatch, current -> {
+            if (current == null) {
+                throw new NotFoundException();
+            }
+            JsonDataVO vo = (JsonDataVO) current.getVo().copy();
+            vo.setJsonData(JsonPatch.apply(patch, current.getJsonData() == null ? null : current.getJsonData().deepCopy()));
+            return service.update(xid, vo);
+        });
+    }
+
+    /**
+     * Delete the data
+     *
+     * @param user
+     * @param xid
+     * @param ifMatch entity tags from the If-Match header, or null to delete the current version
+     * @return the deleted VO
+     */
+    public JsonDataVO delete(PermissionHolder user, String xid, String ifMatch) {
+        Lock lock = locks.get(xid);
+        lock.lock();
+        try {
+            if (ifMatch != null) {
+                CachedJsonData current;
+                try {
+                    current = get(user, xid);
+                } catch (NotFoundException e) {
+                    current = null;
+                }
+                checkMatches(xid, current, ifMatch);
+            }
+            JsonDataVO deleted = service.delete(xid);
+            removed(xid);
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkMatches(String xid, CachedJsonData current, String ifMatch) {
+        if (ifMatch != null && (current == null || !current.matches(ifMatch))) {
+            throw new GenericRestException(HttpStatus.PRECONDITION_FAILED, new TranslatableMessage("rest.error.jsonDataModified", xid));
+        }
+    }
+
+    /**
+     * Called for the VO saved by {@link #update} and again for the DAO event, the version is only incremented once
+     */
+    private synchronized CachedJsonData updated(JsonDataVO vo) {
+        CachedJsonData cached = entries.getIfPresent(vo.getXid());
+        if (cached != null && cached.getVo() == vo) {
+            return cached;
+        }
+        long version = sequence.incrementAndGet();
+        Long previousVersion = versions.put(vo.getXid(), version);
+        cached = new CachedJsonData(vo, version, previousVersion);
+        entries.put(vo.getXid(), cached);
+        return cached;
+    }
+
+    /**
+     * @return the version of the removed xid, null if it was not known
+     */
+    private synchronized Long removed(String xid) {
+        Long version = versions.remove(xid);
+        entries.invalidate(xid);
+        return version;
+    }
+
+    private String entityTag(Long version) {
+        return version == null ? null : "\"" + epoch + "-" + Long.toHexString(version) + "\"";
+    }
+
+    public class CachedJsonData {
+        private final JsonDataVO vo;
+        private final long version;
+        private final Long previousVersion;
+
+        private CachedJsonData(JsonDataVO vo, long version, Long previousVersion) {
+            this.vo = vo;
+            this.version = version;
+            this.previousVersion = previousVersion;
+        }
+
+        /**
+         * @return shared VO, do not modify
+         */
+        public JsonDataVO getVo() {
+            return vo;
+        }
+
+        /**
+         * @return shared JSON data, do not modify
+         */
+        public JsonNode getJsonData() {
+            return vo.getJsonData();
+        }
+
+        public String getEntityTag() {
+            return entityTag(version);
+        }
+
+        /**
+         * @param ifMatch comma separated entity tags
+         * @return true if one of the tags matches this version
+         */
+        public boolean matches(String ifMatch) {
+            String tag = getEntityTag();
+            for (String candidate : ifMatch.split(",")) {
+                candidate = candidate.trim();
+                if ("*".equals(candidate) || tag.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.jsondata;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.exception.ConfictRestException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * JSON Patch (RFC 6902) operations on a {@link JsonNode}, apply a patch or create one from two versions of a document
+ */
+public final class JsonPatch {
+
+    /**
+     * Numbers are equal if they have the same value, e.g. 1 and 1.0
+     */
+    private static final Comparator<JsonNode> NUMERIC_EQUALITY = (a, b) -> {
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue());
+        }
+        return a.equals(b) ? 0 : 1;
+    };
+
+    private JsonPatch() {
+    }
+
+    /**
+     * Apply a patch to a document. The document is modified in place, if an operation fails the document may have
+     * been partially patched so a copy should be passed in.
+     *
+     * @param patch array of operations
+     * @param document may be null, only the root can be added to a null document
+     * @return the patched document, which is a different node if the root was replaced
+     * @throws BadRequestException if the patch is invalid
+     * @throws ConfictRestException if a path does not exist or a test operation fails
+     */
+    public static JsonNode apply(JsonNode patch, JsonNode document) {
+        if (patch == null || !patch.isArray()) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", String.valueOf(patch)));
+        }
+
+        // operations on a missing document fail with path not found
+        JsonNode result = document == null ? MissingNode.getInstance() : document;
+        for (JsonNode operation : patch) {
+            JsonPointer path = pointer(operation, "path");
+            switch (text(operation, "op")) {
+                case "add":
+                    result = add(result, path, value(operation));
+                    break;
+                case "remove":
+                    result = remove(result, path);
+                    break;
+                case "replace":
+                    get(result, path);
+                    result = path.matches() ? value(operation) : add(remove(result, path), path, value(operation));
+                    break;
+                case "move": {
+                    JsonPointer from = pointer(operation, "from");
+                    if (isProperPrefix(from, path)) {
+                        throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", operation.toString()));
+                    }
+                    JsonNode value = get(result, from);
+                    result = add(remove(result, from), path, value);
+                    break;
+                }
+                case "copy":
+                    result = add(result, path, get(result, pointer(operation, "from")).deepCopy());
+                    break;
+                case "test":
+                    if (!get(result, path).equals(NUMERIC_EQUALITY, value(operation))) {
+                        throw new ConfictRestException(new TranslatableMessage("rest.error.jsonPatchTestFailed", path.toString()));
+                    }
+                    break;
+                default:
+                    throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", operation.toString()));
+            }
+        }
+        return result.isMissingNode() ? null : result;
+    }
+
+    /**
+     * Create a patch which transforms one version of a document into another. Only the part of the documents at the
+     * path is compared, the paths of the operations are relative to the root of the document.
+     *
+     * <p>Arrays are compared element by element after removing the common leading and trailing elements, so inserting
+     * or removing elements results in add or remove operations for those elements only.</p>
+     *
+     * @param source may be null
+     * @param target may be null
+     * @param path
+     * @return patch operations, empty if the documents are equal at the path
+     */
+    public static ArrayNode diff(JsonNode source, JsonNode target, JsonPointer path) {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+        JsonNode from = source == null ? MissingNode.getInstance() : source.at(path);
+        JsonNode to = target == null ? MissingNode.getInstance() : target.at(path);
+
+        if (from.isMissingNode() && !to.isMissingNode()) {
+            addOperation(patch, "add", path.toString(), to);
+        } else if (!from.isMissingNode() && to.isMissingNode()) {
+            // the root can't be removed
+            if (!path.matches()) {
+                addOperation(patch, "remove", path.toString(), null);
+            }
+        } else if (!from.isMissingNode()) {
+            diff(from, to, path.toString(), patch);
+        }
+        return patch;
+    }
+
+    private static void diff(JsonNode from, JsonNode to, String path, ArrayNode patch) {
+        if (from.equals(to)) {
+            return;
+        }
+
+        if (from.isObject() && to.isObject()) {
+            Iterator<String> names = from.fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                if (!to.has(name)) {
+                    addOperation(patch, "remove", path + "/" + escape(name), null);
+                }
+            }
+            Iterator<Entry<String, JsonNode>> it = to.fields();
+            while (it.hasNext()) {
+                Entry<String, JsonNode> entry = it.next();
+                JsonNode value = from.get(entry.getKey());
+                String child = path + "/" + escape(entry.getKey());
+                if (value == null) {
+                    addOperation(patch, "add", child, entry.getValue());
+                } else {
+                    diff(value, entry.getValue(), child, patch);
+                }
+            }
+        } else if (from.isArray() && to.isArray()) {
+            int fromSize = from.size();
+            int toSize = to.size();
+            int prefix = 0;
+            while (prefix < fromSize && prefix < toSize && from.get(prefix).equals(to.get(prefix))) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < fromSize - prefix && suffix < toSize - prefix
+                    && from.get(fromSize - 1 - suffix).equals(to.get(toSize - 1 - suffix))) {
+                suffix++;
+            }
+
+            int common = Math.min(fromSize, toSize) - prefix - suffix;
+            for (int i = prefix; i < prefix + common; i++) {
+                diff(from.get(i), to.get(i), path + "/" + i, patch);
+            }
+            // remove from the end so the indexes of the remaining elements don't change
+            for (int i = fromSize - suffix - 1; i >= prefix + common; i--) {
+                addOperation(patch, "remove", path + "/" + i, null);
+            }
+            for (int i = prefix + common; i < toSize - suffix; i++) {
+                addOperation(patch, "add", path + "/" + i, to.get(i));
+            }
+        } else {
+            addOperation(patch, "replace", path, to);
+        }
+    }
+
+    private static void addOperation(ArrayNode patch, String op, String path, JsonNode value) {
+        ObjectNode operation = patch.addObject();
+        operation.put("op", op);
+        operation.put("path", path);
+        if (value != null) {
+            operation.set("value", value);
+        }
+    }
+
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static JsonNode add(JsonNode document, JsonPointer path, JsonNode value) {
+        if (path.matches()) {
+            return value;
+        }
+
+        JsonNode parent = parent(document, path);
+        String token = path.last().getMatchingProperty();
+        if (parent.isObject()) {
+            ((ObjectNode) parent).set(token, value);
+        } else {
+            ArrayNode array = (ArrayNode) parent;
+            if ("-".equals(token)) {
+                array.add(value);
+            } else {
+                array.insert(index(token, array.size() + 1, path), value);
+            }
+        }
+        return document;
+    }
+
+    private static JsonNode remove(JsonNode document, JsonPointer path) {
+        if (path.matches()) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", "remove " + path));
+        }
+
+        JsonNode parent = parent(document, path);
+        String token = path.last().getMatchingProperty();
+        if (parent.isObject()) {
+            if (((ObjectNode) parent).remove(token) == null) {
+                throw pathNotFound(path);
+            }
+        } else {
+            ArrayNode array = (ArrayNode) parent;
+            array.remove(index(token, array.size(), path));
+        }
+        return document;
+    }
+
+    private static JsonNode get(JsonNode document, JsonPointer path) {
+        JsonNode node = document.at(path);
+        if (node.isMissingNode()) {
+            throw pathNotFound(path);
+        }
+        return node;
+    }
+
+    private static JsonNode parent(JsonNode document, JsonPointer path) {
+        JsonNode parent = document.at(path.head());
+        if (!parent.isContainerNode()) {
+            throw pathNotFound(path);
+        }
+        return parent;
+    }
+
+    /**
+     * @param limit index must be less than this
+     */
+    private static int index(String token, int limit, JsonPointer path) {
+        // no sign or leading zeros
+        if (!token.matches("0|[1-9][0-9]{0,8}")) {
+            throw pathNotFound(path);
+        }
+        int index = Integer.parseInt(token);
+        if (index >= limit) {
+            throw pathNotFound(path);
+        }
+        return index;
+    }
+
+    private static boolean isProperPrefix(JsonPointer prefix, JsonPointer path) {
+        return path.toString().startsWith(prefix.toString() + "/");
+    }
+
+    private static ConfictRestException pathNotFound(JsonPointer path) {
+        return new ConfictRestException(new TranslatableMessage("rest.error.jsonPatchPathNotFound", path.toString()));
+    }
+
+    private static String text(JsonNode operation, String member) {
+        JsonNode node = operation.get(member);
+        if (node == null || !node.isTextual()) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", operation.toString()));
+        }
+        return node.textValue();
+    }
+
+    private static JsonPointer pointer(JsonNode operation, String member) {
+        try {
+            return JsonPointer.compile(text(operation, member));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", operation.toString()), e);
+        }
+    }
+
+    private static JsonNode value(JsonNode operation) {
+        JsonNode value = operation.get("value");
+        if (value == null) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidJsonPatch", operation.toString()));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sparse index of a Mango log file, records the timestamp and byte offset of the first log event found after every
+ * {@code spacing} bytes. Used to seek to the region of the file containing a time range instead of parsing the
+ * whole file.
+ *
+ * <p>The index is updated incrementally as the file grows and rebuilt if the file is replaced (rolled over) or
+ * truncated. Only a few lines are read per sample so building the index is much cheaper than parsing the file.</p>
+ *
+ * <p>Log events are written in (close to) time order, threads may log slightly out of order so the returned regions
+ * include one extra sample either side. If the sampled timestamps are not in order, e.g. the clock was changed, the
+ * whole file is returned.</p>
+ */
+public class LogFileIndex {
+
+    private static final int CHUNK_SIZE = 8192;
+    /**
+     * Minimum line length needed to parse the level and timestamp, "LEVEL yyyy-MM-ddTHH:mm:ss,SSS"
+     */
+    private static final int MIN_EVENT_LINE = 29;
+
+    private final Path path;
+    private final int spacing;
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private Object fileKey;
+    private long length;
+    private long nextScan;
+    private long[] timestamps = new long[64];
+    private long[] offsets = new long[64];
+    private int size;
+    private boolean ordered = true;
+    // timestamp of the event found by findEvent()
+    private long eventTimestamp;
+
+    /**
+     * @param path log file
+     * @param spacing approximate number of bytes between samples
+     */
+    public LogFileIndex(Path path, int spacing) {
+        this.path = path;
+        this.spacing = Math.max(CHUNK_SIZE, spacing);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Update the index and find the region of the file which contains all events in the time range
+     *
+     * @param from inclusive epoch ms, null for start of file
+     * @param to inclusive epoch ms, null for end of file
+     * @return region of the file to read, starting and ending on a line boundary
+     * @throws IOException
+     */
+    public synchronized Region region(Long from, Long to) throws IOException {
+        update();
+
+        if (!ordered || size == 0) {
+            return new Region(0, length);
+        }
+
+        long start = 0;
+        if (from != null) {
+            // last sample before the start of the range, then one further back
+            int index = lastBefore(from);
+            if (index >= 0) {
+                start = offsets[Math.max(0, index - 1)];
+            }
+        }
+
+        long end = length;
+        if (to != null) {
+            // first sample after the end of the range, then one further on
+            int index = lastBefore(to + 1) + 1;
+            if (index + 1 < size) {
+                end = offsets[index + 1];
+            }
+        }
+
+        return new Region(start, Math.max(start, end));
+    }
+
+    /**
+     * @return index of the last sample with a timestamp less than the value, or -1
+     */
+    private int lastBefore(long timestamp) {
+        int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // step back over equal timestamps
+        while (index >= 0 && timestamps[index] >= timestamp) {
+            index--;
+        }
+        return index;
+    }
+
+    private void update() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object key = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        long currentLength = attributes.size();
+
+        if (!Objects.equals(key, fileKey) || currentLength < length) {
+            // new or rolled over file
+            fileKey = key;
+            size = 0;
+            nextScan = 0;
+            ordered = true;
+        }
+        length = currentLength;
+
+        if (nextScan >= length) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (nextScan < length) {
+                long offset = findEvent(channel, nextScan);
+                if (offset < 0) {
+                    // no complete event after the scan position yet, try again next time
+                    break;
+                }
+                add(eventTimestamp, offset);
+                nextScan = offset + spacing;
+            }
+        }
+    }
+
+    /**
+     * Finds the first line at or after the position which starts with a log event
+     *
+     * @return offset of the line, or -1 if none found. The timestamp is stored in {@link #eventTimestamp}
+     */
+    private long findEvent(FileChannel channel, long position) throws IOException {
+        long lineStart = position == 0 ? 0 : nextLineStart(channel, position - 1);
+        while (lineStart >= 0 && lineStart + MIN_EVENT_LINE <= length) {
+            chunk.clear();
+            int read = channel.read(chunk, lineStart);
+            if (read < MIN_EVENT_LINE) {
+                return -1;
+            }
+            long timestamp = parseTimestamp(chunk.array(), 0, read);
+            if (timestamp != Long.MIN_VALUE) {
+                eventTimestamp = timestamp;
+                return lineStart;
+            }
+            lineStart = nextLineStart(channel, lineStart);
+        }
+        return -1;
+    }
+
+    /**
+     * @return offset after the next line feed at or after the position, or -1 if end of file
+     */
+    private long nextLineStart(FileChannel channel, long position) throws IOException {
+        long pos = position;
+        while (pos < length) {
+            chunk.clear();
+            int read = channel.read(chunk, pos);
+            if (read <= 0) {
+                return -1;
+            }
+            byte[] bytes = chunk.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return -1;
+    }
+
+    private void add(long timestamp, long offset) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            ordered = false;
+        }
+        timestamps[size] = timestamp;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * Parses the start of a line in the format written by Mango's log4j configuration i.e.
+     * {@code %-5p %d{ISO8601} ...}, for example {@code INFO  2020-05-04T13:41:27,362 (...)}
+     *
+     * @return epoch ms in the default time zone, or {@link Long#MIN_VALUE} if the line is not the start of an event
+     */
+    static long parseTimestamp(byte[] line, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        // level
+        int levelStart = i;
+        while (i < end && line[i] >= 'A' && line[i] <= 'Z') i++;
+        if (i == levelStart || i >= end || line[i] != ' ') {
+            return Long.MIN_VALUE;
+        }
+        while (i < end && line[i] == ' ') i++;
+
+        // yyyy-MM-ddTHH:mm:ss,SSS
+        if (end - i < 23) {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(line, i, 4);
+        int month = digits(line, i + 5, 2);
+        int day = digits(line, i + 8, 2);
+        int hour = digits(line, i + 11, 2);
+        int minute = digits(line, i + 14, 2);
+        int second = digits(line, i + 17, 2);
+        int millis = digits(line, i + 20, 3);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0
+                || line[i + 4] != '-' || line[i + 7] != '-' || line[i + 13] != ':' || line[i + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int digits(byte[] bytes, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Byte range of the log file, end is exclusive
+     */
+    public static class Region {
+        private final long start;
+        private final long end;
+
+        public Region(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start;
+        }
+    }
+}
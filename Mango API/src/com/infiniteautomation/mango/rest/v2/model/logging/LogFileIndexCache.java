@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.logging;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a {@link LogFileIndex} for each log file which has been queried so subsequent queries only need to index
+ * the data appended since.
+ */
+@Component
+public class LogFileIndexCache {
+
+    private final ConcurrentMap<Path, LogFileIndex> indexes = new ConcurrentHashMap<>();
+    private final int spacing;
+    private final boolean memoryMapped;
+
+    @Autowired
+    public LogFileIndexCache(@Value("${rest.logging.index.spacing:65536}") int spacing,
+            @Value("${rest.logging.memoryMappedReads:true}") boolean memoryMapped) {
+        this.spacing = spacing;
+        // a mapped file cannot be renamed or deleted on Windows until the buffer is garbage collected, this would
+        // prevent log4j from rolling over the log file
+        this.memoryMapped = memoryMapped && !System.getProperty("os.name", "").startsWith("Windows");
+    }
+
+    public LogFileIndex get(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        // drop indexes of deleted log files
+        indexes.keySet().removeIf(p -> !p.equals(key) && !Files.exists(p));
+        return indexes.computeIfAbsent(key, p -> new LogFileIndex(p, spacing));
+    }
+
+    /**
+     * @return read the log files via a MappedByteBuffer
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+}
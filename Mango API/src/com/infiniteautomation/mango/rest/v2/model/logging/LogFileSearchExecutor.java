@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.logging;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.exception.ServerErrorException;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileIndex.Region;
+import com.serotonin.m2m2.Common;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Searches the active and rolled Mango log files (including gzip compressed archives, which are decompressed as they
+ * are read) in parallel, bounded by {@code rest.logging.search.maxParallelism}.
+ *
+ * <p>Results are merged by time, newest first. Only the newest {@code limit + offset} matches are retained, as an
+ * event is never written after its file was last modified, a file is skipped (or its read is stopped) once that many
+ * matches newer than its modification time have been found.</p>
+ */
+@Component
+public class LogFileSearchExecutor {
+
+    private static final Comparator<LogMessageModel> OLDEST_FIRST = Comparator.comparingLong(LogMessageModel::getTime);
+
+    private final ExecutorService executor;
+    private final LogFileIndexCache indexes;
+    private final int maxParallelism;
+    private final int maxResults;
+    private final Pattern filePattern;
+
+    @Autowired
+    public LogFileSearchExecutor(ExecutorService executor, LogFileIndexCache indexes,
+            @Value("${rest.logging.search.maxParallelism:4}") int maxParallelism,
+            @Value("${rest.logging.search.maxResults:10000}") int maxResults,
+            @Value("${rest.logging.search.filePattern:ma.*\\.log(\\.\\d+)?(\\.gz)?}") String filePattern) {
+        this.executor = executor;
+        this.indexes = indexes;
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.maxResults = Math.max(1, maxResults);
+        this.filePattern = Pattern.compile(filePattern);
+    }
+
+    /**
+     * @return the log files which are searched, newest first
+     * @throws IOException
+     */
+    public List<Path> getFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Common.getLogsDir().toPath())) {
+            return files.filter(p -> Files.isRegularFile(p) && Files.isReadable(p))
+                    .filter(p -> filePattern.matcher(p.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Search all log files, blocks until the search completes.
+     *
+     * @param rql supports the same filters as a single file query, plus limit(limit, offset). The limit is capped at
+     *        {@code rest.logging.search.maxResults}.
+     * @return matching messages, newest first
+     * @throws IOException
+     * @throws ServerErrorException if the calling thread is interrupted before the search completes
+     */
+    public List<LogMessageModel> search(ASTNode rql) throws IOException {
+        Search search = new Search(rql);
+        List<Path> files = getFiles();
+
+        AtomicInteger nextFile = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextFile.getAndIncrement()) < files.size()) {
+                Path file = files.get(i);
+                long lastModified = file.toFile().lastModified();
+                if (search.isComplete(lastModified)) {
+                    // files are ordered newest first, none of the remaining files can contain a result
+                    break;
+                }
+                try {
+                    search.searchFile(file, () -> search.isComplete(lastModified));
+                } catch (IOException e) {
+                    throw new SearchFailedException(e);
+                }
+            }
+        };
+
+        int workers = Math.min(maxParallelism, files.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            // the calling thread is one of the workers
+            for (int i = 1; i < workers; i++) {
+                futures.add(executor.submit(worker));
+            }
+            if (workers > 0) {
+                worker.run();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            // the remaining files were not searched, don't return the partial results as if they were complete
+            throw new ServerErrorException(e);
+        } catch (ExecutionException | SearchFailedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e instanceof SearchFailedException ? e : e.getCause();
+            if (cause instanceof SearchFailedException) {
+                throw ((SearchFailedException) cause).getCause();
+            }
+            throw new RuntimeException(cause);
+        }
+
+        return search.results();
+    }
+
+    private class Search {
+        private final ASTNode query;
+        private final Long[] timeRange;
+        private final int offset;
+        private final int retain;
+        private final PriorityQueue<LogMessageModel> newest = new PriorityQueue<>(OLDEST_FIRST);
+
+        Search(ASTNode rql) {
+            List<ASTNode> nodes = new ArrayList<>();
+            if (rql != null && "and".equals(rql.getName())) {
+                for (Object arg : rql.getArguments()) {
+                    if (arg instanceof ASTNode) {
+                        nodes.add((ASTNode) arg);
+                    }
+                }
+            } else if (rql != null) {
+                nodes.add(rql);
+            }
+
+            // the limit applies to the merged results, not to each file, sort is always by time
+            int limit = maxResults;
+            int offset = 0;
+            List<Object> remaining = new ArrayList<>();
+            for (ASTNode node : nodes) {
+                if ("limit".equals(node.getName())) {
+                    if (node.getArgumentsSize() > 0 && node.getArgument(0) instanceof Number) {
+                        limit = Math.min(maxResults, Math.max(0, ((Number) node.getArgument(0)).intValue()));
+                    }
+                    if (node.getArgumentsSize() > 1 && node.getArgument(1) instanceof Number) {
+                        offset = Math.max(0, ((Number) node.getArgument(1)).intValue());
+                    }
+                } else if (!"sort".equals(node.getName())) {
+                    remaining.add(node);
+                }
+            }
+
+            this.query = remaining.size() == 1 ? (ASTNode) remaining.get(0) : new ASTNode("and", remaining);
+            this.timeRange = LogQueryArrayStream.timeRange(this.query);
+            this.offset = offset;
+            this.retain = (int) Math.min(maxResults, (long) limit + offset);
+        }
+
+        void searchFile(Path file, BooleanSupplier stopped) throws IOException {
+            if (retain == 0 || timeRange[0] != null && file.toFile().lastModified() < timeRange[0]) {
+                return;
+            }
+
+            MangoLogFilePatternReceiver receiver = new MangoLogFilePatternReceiver(query, this::add);
+            receiver.setLogFormat("LEVEL TIMESTAMP (CLASS.METHOD:LINE) - MESSAGE");
+            receiver.setFileURL(file.toUri().toURL().toExternalForm());
+            receiver.initialize();
+            receiver.createPattern();
+
+            try (Reader reader = new StoppableReader(open(file), stopped)) {
+                receiver.process(new BufferedReader(reader));
+            }
+        }
+
+        private Reader open(Path file) throws IOException {
+            if (file.getFileName().toString().endsWith(".gz")) {
+                return new InputStreamReader(new GZIPInputStream(Files.newInputStream(file), 65536));
+            }
+
+            Region region = timeRange[0] != null || timeRange[1] != null ?
+                    indexes.get(file).region(timeRange[0], timeRange[1]) :
+                    new Region(0, Files.size(file));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(region.getStart());
+            return new InputStreamReader(new BoundedInputStream(Channels.newInputStream(channel), region.getLength()));
+        }
+
+        private synchronized void add(LogMessageModel model) {
+            if (newest.size() < retain) {
+                newest.add(model);
+            } else if (model.getTime() > newest.peek().getTime()) {
+                newest.poll();
+                newest.add(model);
+            }
+        }
+
+        /**
+         * @return true if no message written before this time can be part of the result
+         */
+        synchronized boolean isComplete(long time) {
+            return retain == 0 || newest.size() >= retain && newest.peek().getTime() > time;
+        }
+
+        synchronized List<LogMessageModel> results() {
+            List<LogMessageModel> results = new ArrayList<>(newest);
+            results.sort(OLDEST_FIRST.reversed());
+            return offset >= results.size() ? new ArrayList<>() : results.subList(offset, results.size());
+        }
+    }
+
+    /**
+     * Signals the end of the stream once the search no longer needs the rest of the file
+     */
+    private static class StoppableReader extends FilterReader {
+        private final BooleanSupplier stopped;
+
+        StoppableReader(Reader in, BooleanSupplier stopped) {
+            super(in);
+            this.stopped = stopped;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return stopped.getAsBoolean() ? -1 : super.read();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return stopped.getAsBoolean() ? -1 : super.read(cbuf, off, len);
+        }
+    }
+
+    private static class SearchFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchFailedException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
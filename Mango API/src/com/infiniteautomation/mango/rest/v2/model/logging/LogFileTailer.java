@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.logging;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Follows the active Mango log file (ma.log) while there are listeners. New data is read from the last offset every
+ * {@code rest.logging.tail.intervalMs} and parsed into {@link LogMessageModel}s which are passed to the listeners in
+ * batches.
+ *
+ * <p>An event may be followed by more lines (e.g. a stack trace) so the last event read is held back until the next
+ * event starts or no more data is written for an interval.</p>
+ */
+@Component
+public class LogFileTailer {
+
+    private static final String LOG_FILE = "ma.log";
+    private static final int MAX_READ = 4 * 1024 * 1024;
+
+    private final Log log = LogFactory.getLog(LogFileTailer.class);
+
+    private final ScheduledExecutorService scheduledExecutor;
+    private final long interval;
+    private final List<Consumer<List<LogMessageModel>>> listeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledFuture<?> tailTask;
+    private Object fileKey;
+    private long offset = -1;
+    private long previousLength;
+    private MangoLogFilePatternReceiver receiver;
+    private final List<LogMessageModel> parsed = new ArrayList<>();
+
+    @Autowired
+    public LogFileTailer(ScheduledExecutorService scheduledExecutor,
+            @Value("${rest.logging.tail.intervalMs:1000}") long interval) {
+        this.scheduledExecutor = scheduledExecutor;
+        this.interval = Math.max(100, interval);
+    }
+
+    public synchronized void addListener(Consumer<List<LogMessageModel>> listener) {
+        listeners.add(listener);
+        if (tailTask == null) {
+            // start following from the end of the file
+            offset = -1;
+            tailTask = scheduledExecutor.scheduleWithFixedDelay(this::tailSafely, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void removeListener(Consumer<List<LogMessageModel>> listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            stop();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (tailTask != null) {
+            tailTask.cancel(false);
+            tailTask = null;
+        }
+    }
+
+    private void tailSafely() {
+        try {
+            List<LogMessageModel> messages = tail();
+            if (!messages.isEmpty()) {
+                List<LogMessageModel> batch = Collections.unmodifiableList(messages);
+                for (Consumer<List<LogMessageModel>> listener : listeners) {
+                    try {
+                        listener.accept(batch);
+                    } catch (Exception e) {
+                        log.warn("Log tail listener failed", e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // don't let an exception cancel the scheduled task, don't log every interval either
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to read log file", e);
+            }
+        }
+    }
+
+    /**
+     * @return messages written since the last call
+     * @throws IOException
+     */
+    private synchronized List<LogMessageModel> tail() throws IOException {
+        Path path = new File(Common.getLogsDir(), LOG_FILE).toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object key = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        long length = attributes.size();
+
+        if (offset < 0) {
+            // first read, skip the existing content
+            fileKey = key;
+            offset = length;
+            previousLength = length;
+            return Collections.emptyList();
+        }
+        if (!Objects.equals(key, fileKey) || length < offset) {
+            // rolled over, start from the beginning of the new file
+            fileKey = key;
+            offset = 0;
+            previousLength = 0;
+        }
+        if (length <= offset) {
+            return Collections.emptyList();
+        }
+
+        boolean growing = length != previousLength;
+        previousLength = length;
+
+        byte[] data = read(path, offset, (int) Math.min(MAX_READ, length - offset));
+        int end = completeEnd(data, growing);
+        if (end <= 0) {
+            return Collections.emptyList();
+        }
+        offset += end;
+
+        if (receiver == null) {
+            // not using activateOptions() as it logs at info level, we would then read our own log messages
+            receiver = new MangoLogFilePatternReceiver(new ASTNode("and"), parsed::add);
+            receiver.setLogFormat("LEVEL TIMESTAMP (CLASS.METHOD:LINE) - MESSAGE");
+            receiver.setFileURL(path.toUri().toURL().toExternalForm());
+            receiver.initialize();
+            receiver.createPattern();
+        }
+        try {
+            receiver.process(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data, 0, end))));
+            return new ArrayList<>(parsed);
+        } finally {
+            parsed.clear();
+        }
+    }
+
+    /**
+     * @param growing data is still being written
+     * @return number of bytes which contain complete events
+     */
+    private int completeEnd(byte[] data, boolean growing) {
+        int lastLineFeed = -1;
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                lastLineFeed = i;
+                break;
+            }
+        }
+        if (lastLineFeed < 0) {
+            return 0;
+        }
+        if (!growing) {
+            return lastLineFeed + 1;
+        }
+
+        // hold back the last event as more lines may follow it
+        int lineStart = lastLineFeed;
+        while (lineStart > 0) {
+            int previousLineFeed = lineStart - 1;
+            while (previousLineFeed >= 0 && data[previousLineFeed] != '\n') {
+                previousLineFeed--;
+            }
+            int start = previousLineFeed + 1;
+            if (LogFileIndex.parseTimestamp(data, start, lineStart - start) != Long.MIN_VALUE) {
+                return start;
+            }
+            lineStart = previousLineFeed;
+        }
+        return 0;
+    }
+
+    private byte[] read(Path path, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -6,15 +6,32 @@ package com.infiniteautomation.mango.rest.v2.model.logging;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.infiniteautomation.mango.rest.v2.model.JSONStreamedArray;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileIndex.Region;
 import com.serotonin.m2m2.Common;
 
 import net.jazdw.rql.parser.ASTNode;
 
 /**
+ * When a {@link LogFileIndexCache} is supplied and the query restricts the time, only the region of the file
+ * containing that time range is read.
+ *
  * @author Terry Packer
  *
  */
@@ -23,10 +40,16 @@ public class LogQueryArrayStream implements JSONStreamedArray {
     public static final String LOGFILE_REGEX = ".*ma.log";
     private String filename;
     private ASTNode query;
+    private final LogFileIndexCache indexes;
 
     public LogQueryArrayStream(String filename, ASTNode query){
+        this(filename, query, null);
+    }
+
+    public LogQueryArrayStream(String filename, ASTNode query, LogFileIndexCache indexes){
         this.filename = filename;
         this.query = query;
+        this.indexes = indexes;
     }
 
     /**
@@ -54,6 +77,18 @@ public class LogQueryArrayStream implements JSONStreamedArray {
                 receiver.setFileURL(logFile.toURI().toURL().toExternalForm());
                 receiver.setUseCurrentThread(true);
 
+                if (indexes != null) {
+                    Path path = logFile.toPath();
+                    Long[] range = timeRange(query);
+                    Region region;
+                    if (range[0] != null || range[1] != null) {
+                        region = indexes.get(path).region(range[0], range[1]);
+                    } else {
+                        region = new Region(0, logFile.length());
+                    }
+                    receiver.setReader(open(path, region, indexes.isMemoryMapped()));
+                }
+
                 //Start the parsing
                 receiver.activateOptions();
             } catch (MalformedURLException e) {
@@ -65,4 +100,85 @@ public class LogQueryArrayStream implements JSONStreamedArray {
             throw new IOException("Cannot query non Mango Log4J Files");
         }
     }
+
+    private Reader open(Path path, Region region, boolean memoryMapped) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (memoryMapped && region.getLength() <= Integer.MAX_VALUE) {
+            try {
+                // the mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, region.getStart(), region.getLength());
+                return new InputStreamReader(new ByteBufferBackedInputStream(buffer));
+            } finally {
+                channel.close();
+            }
+        }
+        channel.position(region.getStart());
+        return new InputStreamReader(new BoundedInputStream(Channels.newInputStream(channel), region.getLength()));
+    }
+
+    /**
+     * Finds the time range restricted by the top level of the query, e.g. {@code gt(time,2020-05-04T00:00:00Z)}
+     *
+     * @param query
+     * @return from and to (epoch ms, inclusive), either may be null if unrestricted
+     */
+    static Long[] timeRange(ASTNode query) {
+        Long[] range = new Long[2];
+        if (query == null) {
+            return range;
+        }
+        if ("and".equals(query.getName())) {
+            for (Object arg : query.getArguments()) {
+                if (arg instanceof ASTNode) {
+                    restrict((ASTNode) arg, range);
+                }
+            }
+        } else {
+            restrict(query, range);
+        }
+        return range;
+    }
+
+    private static void restrict(ASTNode node, Long[] range) {
+        if (node.getArgumentsSize() != 2) {
+            return;
+        }
+        Object property = node.getArgument(0);
+        if (!"time".equals(property) && !"timestamp".equals(property)) {
+            return;
+        }
+        Long value = toMillis(node.getArgument(1));
+        if (value == null) {
+            return;
+        }
+
+        switch (node.getName()) {
+            case "gt":
+            case "ge":
+            case "gte":
+                range[0] = range[0] == null ? value : Math.max(range[0], value);
+                break;
+            case "lt":
+            case "le":
+            case "lte":
+                range[1] = range[1] == null ? value : Math.min(range[1], value);
+                break;
+            case "eq":
+                range[0] = range[0] == null ? value : Math.max(range[0], value);
+                range[1] = range[1] == null ? value : Math.min(range[1], value);
+                break;
+            default:
+        }
+    }
+
+    private static Long toMillis(Object value) {
+        if (value instanceof DateTime) {
+            return ((DateTime) value).getMillis();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
 }
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
@@ -58,13 +59,27 @@ public class MangoLogFilePatternReceiver {
     // Wait for file?
     private long waitMillis = 100; // 2000; //default 2 seconds
 
-    private final JsonGenerator jgen;
+    private final Consumer<LogMessageModel> output;
     // Filtering
     private final RQLFilter<LoggingEvent> filter;
     private final Predicate<LoggingEvent> filterPredicate;
 
     public MangoLogFilePatternReceiver(ASTNode query, JsonGenerator jgen) {
-        this.jgen = jgen;
+        this(query, model -> {
+            try {
+                jgen.writeObject(model);
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * @param query
+     * @param output receives each log message which matches the query
+     */
+    public MangoLogFilePatternReceiver(ASTNode query, Consumer<LogMessageModel> output) {
+        this.output = output;
 
         Map<String, String> propertyAliases = new HashMap<>();
         propertyAliases.put("classname", "className");
@@ -138,12 +153,8 @@ public class MangoLogFilePatternReceiver {
 
             String[] stackTrace = event.getStackTrace();
 
-            try {
-                jgen.writeObject(new LogMessageModel(event.getLevel().toString(), classname, method,
-                        lineNumber, message, stackTrace, event.getTimestamp()));
-            } catch (IOException e) {
-                LOG.error(e.getMessage(), e);
-            }
+            output.accept(new LogMessageModel(event.getLevel().toString(), classname, method,
+                    lineNumber, message, stackTrace, event.getTimestamp()));
             this.count++;
         }
     }
@@ -232,6 +243,16 @@ public class MangoLogFilePatternReceiver {
         this.fileURL = fileURL;
     }
 
+    /**
+     * Read the events from this reader instead of opening the file URL, e.g. to only read part of the file.
+     * The file URL must still be set.
+     *
+     * @param reader
+     */
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
     /**
      * If the log file contains non-log4j level strings, they can be mapped to log4j levels using
      * the format (android example): V=TRACE,D=DEBUG,I=INFO,W=WARN,E=ERROR,F=FATAL,S=OFF
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.StatusUpdateException;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.util.DateUtils;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+/**
+ * Purges point values for many data points. Points are purged in parallel (bounded by
+ * {@code rest.pointValues.purge.maxParallelism}) and the values of each point are deleted in time chunks so that
+ * every delete is a short transaction. The chunk period adapts to the density of the point's values, it aims to delete
+ * about {@code rest.pointValues.purge.valuesPerChunk} values per chunk.
+ *
+ * <p>Progress is reported to the temporary resource after every chunk, cancelling or timing out the resource stops the
+ * purge before the next chunk is deleted.</p>
+ */
+@Component
+public class PurgePointValuesExecutor {
+
+    private final ExecutorService executor;
+    private final PermissionService permissionService;
+    private final PointValueDao pointValueDao;
+    private final int maxParallelism;
+    private final long valuesPerChunk;
+    private final long initialChunkPeriod;
+
+    @Autowired
+    public PurgePointValuesExecutor(ExecutorService executor, PermissionService permissionService,
+            @Value("${rest.pointValues.purge.maxParallelism:4}") int maxParallelism,
+            @Value("${rest.pointValues.purge.valuesPerChunk:10000}") long valuesPerChunk,
+            @Value("${rest.pointValues.purge.initialChunkPeriodMs:86400000}") long initialChunkPeriod) {
+        this.executor = executor;
+        this.permissionService = permissionService;
+        this.pointValueDao = Common.databaseProxy.newPointValueDao();
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.valuesPerChunk = Math.max(1, valuesPerChunk);
+        this.initialChunkPeriod = Math.max(1000, initialChunkPeriod);
+    }
+
+    /**
+     * Purge the values of the points, blocks until all points are purged or the resource is cancelled/timed out.
+     * The resource completes successfully when the last point is purged.
+     *
+     * @param resource resource to report progress to
+     * @param result the result of the resource, purged points are added to it
+     * @param points the points to purge
+     * @param position number of points which have already been processed (e.g. not found)
+     * @param maximum total number of points in the purge request
+     * @param model the purge settings
+     */
+    public void purge(TemporaryResource<PurgePointValuesResponseModel, ?> resource, PurgePointValuesResponseModel result,
+            List<DataPointVO> points, int position, int maximum, AbstractPurgeValuesModel model) {
+
+        PurgeRange range = PurgeRange.fromModel(model);
+        Progress progress = new Progress(resource, result, position, maximum);
+        progress.update(false);
+
+        AtomicInteger nextPoint = new AtomicInteger();
+        PermissionHolder user = Common.getUser();
+        Runnable worker = () -> permissionService.runAs(user, () -> {
+            int i;
+            while (!progress.isStopped() && (i = nextPoint.getAndIncrement()) < points.size()) {
+                DataPointVO point = points.get(i);
+                if (purgePoint(point, range, progress)) {
+                    result.getSuccessfullyPurged().add(point.getXid());
+                    progress.update(true);
+                }
+            }
+        });
+
+        int workers = Math.min(maxParallelism, points.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            // the calling thread is one of the workers
+            for (int i = 1; i < workers; i++) {
+                futures.add(executor.submit(worker));
+            }
+            if (workers > 0) {
+                worker.run();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            progress.stop();
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            progress.stop();
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return true if the point was completely purged, false if the purge was stopped part way through
+     */
+    private boolean purgePoint(DataPointVO point, PurgeRange range, Progress progress) {
+        long inception = pointValueDao.getInceptionDate(point.getId());
+        if (inception < 0) {
+            // no values or unknown start, purge in a single call
+            range.purgeInOneCall(point);
+            return true;
+        }
+
+        long from = Math.max(range.from, inception);
+        long chunkPeriod = initialChunkPeriod;
+        while (from < range.chunkedTo) {
+            if (progress.isStopped()) {
+                return false;
+            }
+
+            long to = range.chunkedTo - from > chunkPeriod ? from + chunkPeriod : range.chunkedTo;
+            long count = Common.runtimeManager.purgeDataPointValuesBetween(point, from, to);
+            progress.chunkPurged(count);
+
+            if (count < valuesPerChunk / 2 && chunkPeriod < Long.MAX_VALUE / 2) {
+                chunkPeriod *= 2;
+            } else if (count > valuesPerChunk * 2) {
+                chunkPeriod = Math.max(1000, chunkPeriod / 2);
+            }
+            from = to;
+        }
+
+        if (range.purgeAll) {
+            if (progress.isStopped()) {
+                return false;
+            }
+            // removes any values after now and clears the point's cache
+            Common.runtimeManager.purgeDataPointValuesWithoutCount(point);
+        }
+        return true;
+    }
+
+    /**
+     * The time range to purge, values in [from, chunkedTo) are deleted in chunks.
+     */
+    private static class PurgeRange {
+        final long from;
+        final long chunkedTo;
+        final boolean purgeAll;
+
+        private PurgeRange(long from, long chunkedTo, boolean purgeAll) {
+            this.from = from;
+            this.chunkedTo = chunkedTo;
+            this.purgeAll = purgeAll;
+        }
+
+        static PurgeRange fromModel(AbstractPurgeValuesModel model) {
+            if (model.isPurgeAll()) {
+                return new PurgeRange(Long.MIN_VALUE, Common.timer.currentTimeMillis(), true);
+            } else if (model.isUseTimeRange()) {
+                return new PurgeRange(model.getTimeRange().getFrom().getTime(), model.getTimeRange().getTo().getTime(), false);
+            } else {
+                long before = DateUtils.minus(Common.timer.currentTimeMillis(),
+                        TimePeriodType.convertFrom(model.getDuration().getType()), model.getDuration().getPeriods());
+                return new PurgeRange(Long.MIN_VALUE, before, false);
+            }
+        }
+
+        void purgeInOneCall(DataPointVO point) {
+            if (purgeAll) {
+                Common.runtimeManager.purgeDataPointValuesWithoutCount(point);
+            } else if (from == Long.MIN_VALUE) {
+                Common.runtimeManager.purgeDataPointValuesWithoutCount(point, chunkedTo);
+            } else {
+                Common.runtimeManager.purgeDataPointValuesBetween(point, from, chunkedTo);
+            }
+        }
+    }
+
+    private static class Progress {
+        private final TemporaryResource<PurgePointValuesResponseModel, ?> resource;
+        private final PurgePointValuesResponseModel result;
+        private final int maximum;
+        private int position;
+        private volatile boolean stopped = false;
+
+        Progress(TemporaryResource<PurgePointValuesResponseModel, ?> resource, PurgePointValuesResponseModel result, int position, int maximum) {
+            this.resource = resource;
+            this.result = result;
+            this.position = position;
+            this.maximum = maximum;
+        }
+
+        boolean isStopped() {
+            return stopped || resource.isComplete();
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        void chunkPurged(long count) {
+            result.addValuesPurged(count);
+            update(false);
+        }
+
+        synchronized void update(boolean pointCompleted) {
+            if (stopped) return;
+            if (pointCompleted) {
+                position++;
+            }
+            try {
+                resource.progressOrSuccess(result, position, maximum);
+            } catch (StatusUpdateException e) {
+                // resource was cancelled or timed out
+                stopped = true;
+            }
+        }
+    }
+}
@@ -3,8 +3,9 @@
  */
 package com.infiniteautomation.mango.rest.v2.model.pointValue;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Terry Packer
@@ -15,11 +16,14 @@ public class PurgePointValuesResponseModel {
     private List<String> successfullyPurged;
     private List<String> noEditPermission;
     private List<String> notFound;
+    private final AtomicLong valuesPurged = new AtomicLong();
     
     public PurgePointValuesResponseModel() {
-        this.successfullyPurged = new ArrayList<>();
-        this.noEditPermission = new ArrayList<>();
-        this.notFound = new ArrayList<>();
+        //Points are purged in parallel and the result is serialized while the purge is running,
+        //iterating a copy on write list is safe without locking
+        this.successfullyPurged = new CopyOnWriteArrayList<>();
+        this.noEditPermission = new CopyOnWriteArrayList<>();
+        this.notFound = new CopyOnWriteArrayList<>();
     }
     
     /**
@@ -58,6 +62,24 @@ public class PurgePointValuesResponseModel {
     public void setNotFound(List<String> notFound) {
         this.notFound = notFound;
     }
+    /**
+     * @return the number of values deleted by time chunked purges (does not include purge all's final delete of future values)
+     */
+    public long getValuesPurged() {
+        return valuesPurged.get();
+    }
+    /**
+     * @param valuesPurged the valuesPurged to set
+     */
+    public void setValuesPurged(long valuesPurged) {
+        this.valuesPurged.set(valuesPurged);
+    }
+    /**
+     * @param count number of values deleted
+     */
+    public void addValuesPurged(long count) {
+        this.valuesPurged.addAndGet(count);
+    }
     
     
 }
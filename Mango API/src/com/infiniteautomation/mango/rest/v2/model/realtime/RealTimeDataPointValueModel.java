@@ -5,6 +5,7 @@ package com.infiniteautomation.mango.rest.v2.model.realtime;
 
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  *
@@ -15,6 +16,7 @@ public class RealTimeDataPointValueModel {
     private String xid;
     private String deviceName;
     private String name;
+    private String dataSourceXid;
     private Object value;
     private String renderedValue;
     private String type;
@@ -41,6 +43,16 @@ public class RealTimeDataPointValueModel {
     public void setName(String name) {
         this.name = name;
     }
+    /**
+     * Only used to filter the points, not part of the response
+     */
+    @JsonIgnore
+    public String getDataSourceXid() {
+        return dataSourceXid;
+    }
+    public void setDataSourceXid(String dataSourceXid) {
+        this.dataSourceXid = dataSourceXid;
+    }
     public Object getValue() {
         return value;
     }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.realtime;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * Indexes the running data points by xid, name, device name and data source xid so that the equality predicates of an
+ * RQL query can be used to select the candidate points without visiting every running point.
+ *
+ * <p>The running points are fetched from the runtime manager for every query. The index is rebuilt when they differ
+ * from the indexed points, i.e. after a point was started or stopped (a restarted point has a new {@link DataPointRT}).
+ * Checking the points is much cheaper than rebuilding the index.</p>
+ *
+ * <p>The candidates are a superset of the points matched by the RQL filter, the filter must still be applied to them.
+ * Values are matched ignoring case and arguments which RQL converted to another type (numbers, booleans, null, dates)
+ * are not answered from the index, so no point which the filter would match is left out.</p>
+ */
+@Component
+public class RunningDataPointIndex {
+
+    private static final Map<String, Function<DataPointRT, String>> INDEXED_PROPERTIES;
+    static {
+        Map<String, Function<DataPointRT, String>> properties = new HashMap<>();
+        properties.put("xid", rt -> rt.getVO().getXid());
+        properties.put("name", rt -> rt.getVO().getName());
+        properties.put("deviceName", rt -> rt.getVO().getDeviceName());
+        properties.put("dataSourceXid", rt -> rt.getVO().getDataSourceXid());
+        INDEXED_PROPERTIES = Collections.unmodifiableMap(properties);
+    }
+
+    private volatile Snapshot<DataPointRT> snapshot;
+
+    /**
+     * Select the running points which may match the query, the query must still be applied to the result.
+     * Points are returned in the same order as {@link com.serotonin.m2m2.rt.RuntimeManager#getRunningDataPoints()}.
+     *
+     * @param query may be null
+     * @return
+     */
+    public List<DataPointRT> candidates(ASTNode query) {
+        List<DataPointRT> running = Common.runtimeManager.getRunningDataPoints();
+        if (query == null) {
+            return running;
+        }
+
+        Snapshot<DataPointRT> snapshot = this.snapshot;
+        if (snapshot == null || !snapshot.indexes(running)) {
+            // concurrent queries may both rebuild the index, either snapshot is valid
+            snapshot = new Snapshot<>(running, INDEXED_PROPERTIES);
+            this.snapshot = snapshot;
+        }
+        return snapshot.candidates(query);
+    }
+
+    /**
+     * Index of a list of items by string properties
+     */
+    static class Snapshot<T> {
+        final List<T> items;
+        /**
+         * Property name to folded property value to positions in items list, in ascending order
+         */
+        final Map<String, Map<String, int[]>> indexes = new HashMap<>();
+
+        Snapshot(List<T> items, Map<String, Function<T, String>> properties) {
+            this.items = Collections.unmodifiableList(new ArrayList<>(items));
+
+            for (Map.Entry<String, Function<T, String>> property : properties.entrySet()) {
+                Map<String, List<Integer>> positions = new HashMap<>();
+                for (int i = 0; i < this.items.size(); i++) {
+                    String value = property.getValue().apply(this.items.get(i));
+                    if (value != null) {
+                        positions.computeIfAbsent(fold(value), k -> new ArrayList<>(1)).add(i);
+                    }
+                }
+
+                Map<String, int[]> index = new HashMap<>(positions.size() * 4 / 3 + 1);
+                for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                    index.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+                }
+                indexes.put(property.getKey(), index);
+            }
+        }
+
+        /**
+         * @return true if the items are the same items, in the same order, as the indexed items
+         */
+        boolean indexes(List<T> items) {
+            if (items.size() != this.items.size()) {
+                return false;
+            }
+            for (int i = 0; i < this.items.size(); i++) {
+                if (items.get(i) != this.items.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the items which may match the query, in index order
+         */
+        List<T> candidates(ASTNode query) {
+            BitSet selected = select(query);
+            if (selected == null) {
+                return items;
+            }
+
+            List<T> candidates = new ArrayList<>(selected.cardinality());
+            for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+                candidates.add(items.get(i));
+            }
+            return candidates;
+        }
+
+        /**
+         * @return the positions of the items which may match the node, or null if the node can't be answered from the indexes
+         */
+        BitSet select(ASTNode node) {
+            switch (node.getName()) {
+                case "and": {
+                    BitSet result = null;
+                    for (Object arg : node.getArguments()) {
+                        BitSet selected = arg instanceof ASTNode ? select((ASTNode) arg) : null;
+                        if (selected != null) {
+                            if (result == null) {
+                                result = selected;
+                            } else {
+                                result.and(selected);
+                            }
+                        }
+                    }
+                    return result;
+                }
+                case "or": {
+                    BitSet result = new BitSet(items.size());
+                    for (Object arg : node.getArguments()) {
+                        BitSet selected = arg instanceof ASTNode ? select((ASTNode) arg) : null;
+                        if (selected == null) {
+                            // one of the branches is unrestricted
+                            return null;
+                        }
+                        result.or(selected);
+                    }
+                    return result;
+                }
+                case "eq":
+                    if (node.getArgumentsSize() == 2) {
+                        return lookup(node.getArgument(0), Collections.singletonList(node.getArgument(1)));
+                    }
+                    return null;
+                case "in":
+                    if (node.getArgumentsSize() == 2 && node.getArgument(1) instanceof List) {
+                        return lookup(node.getArgument(0), (List<?>) node.getArgument(1));
+                    } else if (node.getArgumentsSize() > 1) {
+                        return lookup(node.getArgument(0), node.getArguments().subList(1, node.getArgumentsSize()));
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        private BitSet lookup(Object property, List<?> values) {
+            Map<String, int[]> index = indexes.get(property);
+            if (index == null) {
+                return null;
+            }
+
+            BitSet result = new BitSet(items.size());
+            for (Object value : values) {
+                // RQL converts some arguments e.g. numbers and null, these can't be matched against the index
+                if (!(value instanceof String)) {
+                    return null;
+                }
+                int[] positions = index.get(fold((String) value));
+                if (positions != null) {
+                    for (int position : positions) {
+                        result.set(position);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Two strings fold to the same key if and only if {@link String#equalsIgnoreCase(String)} is true, so the index
+     * selects every match whether the filter compares values exactly or ignoring case.
+     */
+    static String fold(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        value.codePoints().forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        return folded.toString();
+    }
+}
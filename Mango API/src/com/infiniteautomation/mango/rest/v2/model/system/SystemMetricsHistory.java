@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.system;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+import com.infiniteautomation.mango.rest.v2.model.system.ValueMonitorHistoryModel.ValueMonitorSample;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Keeps a short history of every {@link ValueMonitor} in memory. All monitors are sampled together every
+ * {@code rest.systemMetrics.history.intervalMs} and the last {@code rest.systemMetrics.history.size} samples are kept
+ * in a ring buffer, one column of values per monitor.
+ *
+ * <p>Listeners are notified of each sample, e.g. to push it to websocket clients.</p>
+ */
+@Component
+public class SystemMetricsHistory {
+
+    private final Log log = LogFactory.getLog(SystemMetricsHistory.class);
+
+    private final ScheduledExecutorService scheduledExecutor;
+    private final long interval;
+    private final int capacity;
+
+    private final long[] timestamps;
+    /**
+     * Monitor id to column of values, same positions as timestamps
+     */
+    private final Map<String, Object[]> columns = new HashMap<>();
+    private int next;
+    private int size;
+
+    private final List<Consumer<SystemMetricsSampleModel>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ScheduledFuture<?> sampleTask;
+
+    @Autowired
+    public SystemMetricsHistory(ScheduledExecutorService scheduledExecutor,
+            @Value("${rest.systemMetrics.history.intervalMs:10000}") long interval,
+            @Value("${rest.systemMetrics.history.size:360}") int capacity) {
+        this.scheduledExecutor = scheduledExecutor;
+        this.interval = interval;
+        this.capacity = Math.max(1, capacity);
+        this.timestamps = new long[this.capacity];
+    }
+
+    @PostConstruct
+    public void start() {
+        if (this.interval > 0 && this.sampleTask == null) {
+            this.sampleTask = this.scheduledExecutor.scheduleAtFixedRate(this::sampleSafely, this.interval, this.interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        ScheduledFuture<?> task = this.sampleTask;
+        if (task != null) {
+            task.cancel(false);
+            this.sampleTask = null;
+        }
+    }
+
+    public void addListener(Consumer<SystemMetricsSampleModel> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<SystemMetricsSampleModel> listener) {
+        listeners.remove(listener);
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (Exception e) {
+            // don't let an exception cancel the scheduled task
+            log.error("Failed to sample system metrics", e);
+        }
+    }
+
+    /**
+     * Record the current value of every monitor
+     */
+    public void sample() {
+        List<ValueMonitor<?>> monitors = Common.MONITORED_VALUES.getMonitors();
+        long timestamp = Common.timer.currentTimeMillis();
+        Map<String, Object> values = new LinkedHashMap<>(monitors.size() * 4 / 3 + 1);
+        for (ValueMonitor<?> monitor : monitors) {
+            values.put(monitor.getId(), monitor.getValue());
+        }
+
+        synchronized (this) {
+            int slot = next;
+            timestamps[slot] = timestamp;
+            // columns for monitors which were removed get a null value
+            for (Object[] column : columns.values()) {
+                column[slot] = null;
+            }
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                columns.computeIfAbsent(entry.getKey(), k -> new Object[capacity])[slot] = entry.getValue();
+            }
+            next = (slot + 1) % capacity;
+            size = Math.min(size + 1, capacity);
+        }
+
+        if (!listeners.isEmpty()) {
+            SystemMetricsSampleModel model = new SystemMetricsSampleModel(timestamp, Collections.unmodifiableMap(values));
+            for (Consumer<SystemMetricsSampleModel> listener : listeners) {
+                try {
+                    listener.accept(model);
+                } catch (Exception e) {
+                    log.warn("System metrics listener failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param ids monitor ids to return, null for all
+     * @param from inclusive, epoch ms
+     * @param to exclusive, epoch ms
+     * @return the recorded values of each monitor in the time range, in time ascending order
+     */
+    public List<ValueMonitorHistoryModel> query(Collection<String> ids, long from, long to) {
+        Map<String, TranslatableMessage> names = new HashMap<>();
+        for (ValueMonitor<?> monitor : Common.MONITORED_VALUES.getMonitors()) {
+            names.put(monitor.getId(), monitor.getName());
+        }
+
+        List<ValueMonitorHistoryModel> result = new ArrayList<>();
+        synchronized (this) {
+            Collection<String> selected = ids == null ? columns.keySet() : ids;
+            int oldest = Math.floorMod(next - size, capacity);
+            for (String id : selected) {
+                Object[] column = columns.get(id);
+                if (column == null) continue;
+
+                ValueMonitorHistoryModel model = new ValueMonitorHistoryModel(id, names.get(id));
+                for (int i = 0; i < size; i++) {
+                    int slot = (oldest + i) % capacity;
+                    long timestamp = timestamps[slot];
+                    if (timestamp >= from && timestamp < to && column[slot] != null) {
+                        model.getValues().add(new ValueMonitorSample(timestamp, column[slot]));
+                    }
+                }
+                result.add(model);
+            }
+        }
+        return result;
+    }
+}
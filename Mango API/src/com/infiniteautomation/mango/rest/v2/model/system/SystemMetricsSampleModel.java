@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.system;
+
+import java.util.Map;
+
+/**
+ * The values of all monitors at one point in time
+ */
+public class SystemMetricsSampleModel {
+
+    private final long timestamp;
+    private final Map<String, Object> values;
+
+    public SystemMetricsSampleModel(long timestamp, Map<String, Object> values) {
+        this.timestamp = timestamp;
+        this.values = values;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return monitor id to value
+     */
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
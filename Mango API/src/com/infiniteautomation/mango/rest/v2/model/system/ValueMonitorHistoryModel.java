@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Recent values of one monitor, in time ascending order
+ */
+public class ValueMonitorHistoryModel {
+
+    private final String id;
+    private final TranslatableMessage name;
+    private final List<ValueMonitorSample> values = new ArrayList<>();
+
+    public ValueMonitorHistoryModel(String id, TranslatableMessage name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the name, null if the monitor no longer exists
+     */
+    public TranslatableMessage getName() {
+        return name;
+    }
+
+    public List<ValueMonitorSample> getValues() {
+        return values;
+    }
+
+    public static class ValueMonitorSample {
+        private final long timestamp;
+        private final Object value;
+
+        public ValueMonitorSample(long timestamp, Object value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
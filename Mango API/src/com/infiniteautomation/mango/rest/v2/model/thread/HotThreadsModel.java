@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+import java.util.List;
+
+/**
+ * CPU time and allocation of the busiest threads, and of all thread pools, measured over an interval
+ */
+public class HotThreadsModel {
+
+    private final long interval;
+    private final List<ThreadUsageModel> threads;
+    private final List<ThreadPoolUsageModel> pools;
+
+    public HotThreadsModel(long interval, List<ThreadUsageModel> threads, List<ThreadPoolUsageModel> pools) {
+        this.interval = interval;
+        this.threads = threads;
+        this.pools = pools;
+    }
+
+    /**
+     * @return actual time between the snapshots (ms)
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public List<ThreadUsageModel> getThreads() {
+        return threads;
+    }
+
+    public List<ThreadPoolUsageModel> getPools() {
+        return pools;
+    }
+}
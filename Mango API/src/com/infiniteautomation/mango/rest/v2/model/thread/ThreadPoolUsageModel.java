@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+/**
+ * Resources used by all threads of a pool during an interval, threads are grouped by their name with numbers removed
+ */
+public class ThreadPoolUsageModel {
+
+    private final String pool;
+    private int threadCount;
+    private long cpuTime;
+    private long allocatedBytes;
+    private double cpuPercent;
+
+    public ThreadPoolUsageModel(String pool) {
+        this.pool = pool;
+    }
+
+    void add(long cpuTime, long allocatedBytes) {
+        this.threadCount++;
+        this.cpuTime += cpuTime;
+        if (allocatedBytes > 0) {
+            this.allocatedBytes += allocatedBytes;
+        }
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return CPU time used during the interval (ns)
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return bytes allocated during the interval
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return CPU time as a percentage of the interval, i.e. 200 is two cores
+     */
+    public double getCpuPercent() {
+        return cpuPercent;
+    }
+
+    void setCpuPercent(double cpuPercent) {
+        this.cpuPercent = cpuPercent;
+    }
+}
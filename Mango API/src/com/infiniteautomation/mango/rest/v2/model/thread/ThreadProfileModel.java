@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+import java.util.List;
+
+/**
+ * Result of a sampling profiler run, the stacks are in collapsed format (frames separated by semicolons, root first)
+ * ordered by count descending.
+ */
+public class ThreadProfileModel {
+
+    private int sampleCount;
+    private long stackSampleCount;
+    private long duration;
+    private long interval;
+    private List<CollapsedStack> stacks;
+
+    public ThreadProfileModel() { }
+
+    public ThreadProfileModel(int sampleCount, long stackSampleCount, long duration, long interval, List<CollapsedStack> stacks) {
+        this.sampleCount = sampleCount;
+        this.stackSampleCount = stackSampleCount;
+        this.duration = duration;
+        this.interval = interval;
+        this.stacks = stacks;
+    }
+
+    /**
+     * @return number of times all threads were sampled
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * @return total number of thread stacks recorded
+     */
+    public long getStackSampleCount() {
+        return stackSampleCount;
+    }
+
+    public void setStackSampleCount(long stackSampleCount) {
+        this.stackSampleCount = stackSampleCount;
+    }
+
+    /**
+     * @return actual time spent sampling (ms)
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public List<CollapsedStack> getStacks() {
+        return stacks;
+    }
+
+    public void setStacks(List<CollapsedStack> stacks) {
+        this.stacks = stacks;
+    }
+
+    /**
+     * @return the stacks in the collapsed text format read by flame graph tools, one stack and its count per line
+     */
+    public String toCollapsed() {
+        StringBuilder builder = new StringBuilder();
+        if (stacks != null) {
+            for (CollapsedStack stack : stacks) {
+                builder.append(stack.getStack()).append(' ').append(stack.getCount()).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    public static class CollapsedStack {
+        private String stack;
+        private long count;
+
+        public CollapsedStack() { }
+
+        public CollapsedStack(String stack, long count) {
+            this.stack = stack;
+            this.count = count;
+        }
+
+        public String getStack() {
+            return stack;
+        }
+
+        public void setStack(String stack) {
+            this.stack = stack;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+}
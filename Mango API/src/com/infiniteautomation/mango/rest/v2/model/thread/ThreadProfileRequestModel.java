@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+import com.infiniteautomation.mango.util.exception.ValidationException;
+import com.serotonin.m2m2.i18n.ProcessResult;
+
+/**
+ * Settings for a sampling profiler run
+ */
+public class ThreadProfileRequestModel {
+
+    public static final long MAX_DURATION = 600000; // 10 minutes
+
+    private long duration = 10000;
+    private long interval = 20;
+    private int maxStackDepth = 128;
+    private boolean runnableOnly = true;
+    private boolean groupByThread = false;
+
+    private Long expiry;
+    private Long timeout;
+
+    public void ensureValid() throws ValidationException {
+        ProcessResult result = new ProcessResult();
+        if (duration <= 0 || duration > MAX_DURATION) {
+            result.addContextualMessage("duration", "validate.between", 1, MAX_DURATION);
+        }
+        if (interval <= 0 || interval > duration) {
+            result.addContextualMessage("interval", "validate.between", 1, duration);
+        }
+        if (maxStackDepth <= 0) {
+            result.addContextualMessage("maxStackDepth", "validate.greaterThanZero");
+        }
+        result.ensureValid();
+    }
+
+    /**
+     * @return how long to sample for (ms)
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return time between samples (ms)
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * @return maximum number of frames to sample from the top of each stack
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public void setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    /**
+     * @return only sample threads which are RUNNABLE, i.e. only show CPU hotspots
+     */
+    public boolean isRunnableOnly() {
+        return runnableOnly;
+    }
+
+    public void setRunnableOnly(boolean runnableOnly) {
+        this.runnableOnly = runnableOnly;
+    }
+
+    /**
+     * @return add the thread name (with numbers removed) as the root frame of each stack
+     */
+    public boolean isGroupByThread() {
+        return groupByThread;
+    }
+
+    public void setGroupByThread(boolean groupByThread) {
+        this.groupByThread = groupByThread;
+    }
+
+    public Long getExpiry() {
+        return expiry;
+    }
+
+    public void setExpiry(Long expiry) {
+        this.expiry = expiry;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+}
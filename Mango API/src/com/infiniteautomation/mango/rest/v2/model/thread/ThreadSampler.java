@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.model.thread.ThreadProfileModel.CollapsedStack;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.StatusUpdateException;
+
+/**
+ * Sampling profiler, periodically records the stack of every thread via the {@link ThreadMXBean} and aggregates
+ * identical stacks so the result can be rendered as a flame graph. Also measures per thread CPU and allocation
+ * over an interval to find the threads which are busy right now.
+ */
+@Component
+public class ThreadSampler {
+
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Samples the threads until the duration elapses or the resource is cancelled/timed out, then completes the resource
+     * with the aggregated stacks.
+     *
+     * @param resource
+     * @param request
+     */
+    public void profile(TemporaryResource<ThreadProfileModel, ?> resource, ThreadProfileRequestModel request) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(request.getInterval());
+        int expectedSamples = (int) Math.max(1, request.getDuration() / request.getInterval());
+        long selfId = Thread.currentThread().getId();
+
+        Map<String, long[]> counts = new HashMap<>();
+        StringBuilder builder = new StringBuilder();
+        int samples = 0;
+        long stackSamples = 0;
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(request.getDuration());
+        long nextProgress = start + PROGRESS_INTERVAL_NANOS;
+        long next = start;
+
+        try {
+            while (samples < expectedSamples && !resource.isComplete()) {
+                long now = System.nanoTime();
+                if (now >= end) break;
+                if (next > now) {
+                    TimeUnit.NANOSECONDS.sleep(next - now);
+                }
+                next += intervalNanos;
+
+                ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), request.getMaxStackDepth());
+                for (ThreadInfo info : infos) {
+                    if (info == null || info.getThreadId() == selfId) continue;
+                    if (request.isRunnableOnly() && info.getThreadState() != Thread.State.RUNNABLE) continue;
+
+                    StackTraceElement[] frames = info.getStackTrace();
+                    if (frames.length == 0) continue;
+
+                    collapse(info, frames, request.isGroupByThread(), builder);
+                    counts.computeIfAbsent(builder.toString(), k -> new long[1])[0]++;
+                    stackSamples++;
+                }
+                samples++;
+
+                if (System.nanoTime() >= nextProgress) {
+                    nextProgress += PROGRESS_INTERVAL_NANOS;
+                    resource.progress(null, samples, expectedSamples);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (StatusUpdateException e) {
+            // cancelled or timed out
+            return;
+        }
+
+        List<CollapsedStack> stacks = new ArrayList<>(counts.size());
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            stacks.add(new CollapsedStack(entry.getKey(), entry.getValue()[0]));
+        }
+        stacks.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        try {
+            resource.success(new ThreadProfileModel(samples, stackSamples, duration, request.getInterval(), stacks));
+        } catch (StatusUpdateException e) {
+            // cancelled or timed out
+        }
+    }
+
+    /**
+     * Takes two snapshots of the CPU time and allocated bytes of every thread, the interval apart, and returns the
+     * threads which used the most in between along with the usage of each thread pool.
+     *
+     * @param interval time between snapshots (ms)
+     * @param limit maximum number of threads to return
+     * @param orderByAllocation order by allocated bytes instead of CPU time
+     * @return
+     * @throws InterruptedException
+     */
+    public HotThreadsModel hotThreads(long interval, int limit, boolean orderByAllocation) throws InterruptedException {
+        long[] ids = threadMXBean.getAllThreadIds();
+        long[] cpuBefore = cpuTimes(ids);
+        long[] userBefore = userTimes(ids);
+        long[] allocatedBefore = allocatedBytes(ids);
+        long start = System.nanoTime();
+
+        TimeUnit.MILLISECONDS.sleep(interval);
+
+        long[] cpuAfter = cpuTimes(ids);
+        long[] userAfter = userTimes(ids);
+        long[] allocatedAfter = allocatedBytes(ids);
+        long elapsed = System.nanoTime() - start;
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, 0);
+
+        List<ThreadUsageModel> threads = new ArrayList<>(ids.length);
+        Map<String, ThreadPoolUsageModel> pools = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            ThreadInfo info = infos[i];
+            // thread died, or CPU time measurement disabled
+            if (info == null || cpuBefore[i] < 0 || cpuAfter[i] < 0) continue;
+
+            String pool = poolName(info.getThreadName());
+            long cpu = cpuAfter[i] - cpuBefore[i];
+            long user = userBefore[i] < 0 || userAfter[i] < 0 ? -1 : userAfter[i] - userBefore[i];
+            long allocated = allocatedBefore[i] < 0 || allocatedAfter[i] < 0 ? -1 : allocatedAfter[i] - allocatedBefore[i];
+
+            threads.add(new ThreadUsageModel(ids[i], info.getThreadName(), pool, info.getThreadState(), cpu, user, allocated, percent(cpu, elapsed)));
+            pools.computeIfAbsent(pool, ThreadPoolUsageModel::new).add(cpu, allocated);
+        }
+
+        Comparator<ThreadUsageModel> threadOrder = orderByAllocation ?
+                Comparator.comparingLong(ThreadUsageModel::getAllocatedBytes) : Comparator.comparingLong(ThreadUsageModel::getCpuTime);
+        threads.sort(threadOrder.reversed());
+        if (threads.size() > limit) {
+            threads = new ArrayList<>(threads.subList(0, limit));
+        }
+
+        List<ThreadPoolUsageModel> poolList = new ArrayList<>(pools.values());
+        for (ThreadPoolUsageModel usage : poolList) {
+            usage.setCpuPercent(percent(usage.getCpuTime(), elapsed));
+        }
+        Comparator<ThreadPoolUsageModel> poolOrder = orderByAllocation ?
+                Comparator.comparingLong(ThreadPoolUsageModel::getAllocatedBytes) : Comparator.comparingLong(ThreadPoolUsageModel::getCpuTime);
+        poolList.sort(poolOrder.reversed());
+
+        return new HotThreadsModel(TimeUnit.NANOSECONDS.toMillis(elapsed), threads, poolList);
+    }
+
+    private long[] cpuTimes(long[] ids) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadCpuTime(ids);
+        }
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            times[i] = threadMXBean.getThreadCpuTime(ids[i]);
+        }
+        return times;
+    }
+
+    private long[] userTimes(long[] ids) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadUserTime(ids);
+        }
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            times[i] = threadMXBean.getThreadUserTime(ids[i]);
+        }
+        return times;
+    }
+
+    /**
+     * @return allocated bytes for each thread, -1 if not supported
+     */
+    private long[] allocatedBytes(long[] ids) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(ids);
+            }
+        }
+        long[] bytes = new long[ids.length];
+        Arrays.fill(bytes, -1);
+        return bytes;
+    }
+
+    private static double percent(long cpuNanos, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : cpuNanos * 100d / elapsedNanos;
+    }
+
+    /**
+     * @return the thread name with numbers removed, so threads from the same pool have the same name
+     */
+    static String poolName(String threadName) {
+        return DIGITS.matcher(threadName).replaceAll("#");
+    }
+
+    /**
+     * Writes the frames root first separated by semicolons, the format used by flame graph tools
+     */
+    private void collapse(ThreadInfo info, StackTraceElement[] frames, boolean groupByThread, StringBuilder builder) {
+        builder.setLength(0);
+        if (groupByThread) {
+            // remove numbers so threads in the same pool are grouped together
+            builder.append(poolName(info.getThreadName()).replace(';', ':'));
+        }
+        for (int i = frames.length - 1; i >= 0; i--) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+            StackTraceElement frame = frames[i];
+            builder.append(frame.getClassName()).append('.').append(frame.getMethodName());
+        }
+    }
+}
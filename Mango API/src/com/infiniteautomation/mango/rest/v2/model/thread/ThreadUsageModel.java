@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.thread;
+
+import java.lang.Thread.State;
+
+/**
+ * Resources used by a thread during an interval
+ */
+public class ThreadUsageModel {
+
+    private final long id;
+    private final String name;
+    private final String pool;
+    private final State state;
+    private final long cpuTime;
+    private final long userTime;
+    private final long allocatedBytes;
+    private final double cpuPercent;
+
+    public ThreadUsageModel(long id, String name, String pool, State state, long cpuTime, long userTime, long allocatedBytes, double cpuPercent) {
+        this.id = id;
+        this.name = name;
+        this.pool = pool;
+        this.state = state;
+        this.cpuTime = cpuTime;
+        this.userTime = userTime;
+        this.allocatedBytes = allocatedBytes;
+        this.cpuPercent = cpuPercent;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the thread name with numbers removed
+     */
+    public String getPool() {
+        return pool;
+    }
+
+    /**
+     * @return state at the end of the interval
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return CPU time used during the interval (ns)
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return user mode CPU time used during the interval (ns), -1 if not available
+     */
+    public long getUserTime() {
+        return userTime;
+    }
+
+    /**
+     * @return bytes allocated during the interval, -1 if not supported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return CPU time as a percentage of the interval, may be over 100 for a single thread due to measurement granularity
+     */
+    public double getCpuPercent() {
+        return cpuPercent;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.timing;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Latency statistics for a handler method, all durations are in ms
+ */
+public class HandlerTimingModel {
+
+    private String handler;
+    private long count;
+    private double mean;
+    private double max;
+    private Map<String, Double> percentiles;
+    private Map<String, Double> phases;
+    @JsonInclude(Include.NON_NULL)
+    private List<LatencyHistogram.Bucket> buckets;
+
+    public HandlerTimingModel() { }
+
+    public HandlerTimingModel(String handler, long count, double mean, double max, Map<String, Double> percentiles, Map<String, Double> phases) {
+        this.handler = handler;
+        this.count = count;
+        this.mean = mean;
+        this.max = max;
+        this.percentiles = percentiles;
+        this.phases = phases;
+    }
+
+    /**
+     * @return controller class and method name
+     */
+    public String getHandler() {
+        return handler;
+    }
+
+    public void setHandler(String handler) {
+        this.handler = handler;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+
+    /**
+     * @return p50, p90, p99 and p999 request durations
+     */
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<String, Double> percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    /**
+     * @return mean time spent in each phase of the request
+     */
+    public Map<String, Double> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(Map<String, Double> phases) {
+        this.phases = phases;
+    }
+
+    /**
+     * @return histogram buckets, bounds are in microseconds
+     */
+    public List<LatencyHistogram.Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(List<LatencyHistogram.Bucket> buckets) {
+        this.buckets = buckets;
+    }
+}
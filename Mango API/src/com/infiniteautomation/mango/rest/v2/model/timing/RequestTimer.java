@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.timing;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long a single REST request spends in each phase. Exactly one phase is active at a time, entering a
+ * nested phase pauses the enclosing one so the phase durations are exclusive and add up to the total.
+ *
+ * <p>The timer for the request being processed is bound to the current thread, code which wants to attribute time
+ * to a phase should use:</p>
+ * <pre>
+ * try (RequestTimer.Phase phase = RequestTimer.enter(RequestTimer.DATABASE)) {
+ *     ...
+ * }
+ * </pre>
+ * <p>which does nothing if timing is disabled or the thread is not processing a request.</p>
+ *
+ * <p>Not thread safe, a request is only processed by one thread at a time.</p>
+ */
+public class RequestTimer {
+
+    /**
+     * Servlet filter chain including Spring Security authentication, up until the request reaches the handler
+     */
+    public static final String FILTER = "filter";
+    /**
+     * Controller method, excluding the time spent in the other phases
+     */
+    public static final String HANDLER = "handler";
+    public static final String PERMISSION = "permission";
+    public static final String DATABASE = "db";
+    public static final String MAPPING = "mapping";
+    public static final String SERIALIZATION = "serialization";
+
+    private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<>();
+    private static final Phase NO_OP = () -> { };
+
+    private final long startNanos;
+    private final Map<String, long[]> durations = new LinkedHashMap<>();
+    private final Deque<String> stack = new ArrayDeque<>();
+    private final Phase exit = this::exit;
+
+    private String current;
+    private long mark;
+    private long endNanos = -1;
+
+    /**
+     * @param filterNanos time spent before the handler was invoked, 0 if unknown
+     */
+    public RequestTimer(long filterNanos) {
+        this.startNanos = System.nanoTime() - Math.max(0, filterNanos);
+        if (filterNanos > 0) {
+            durations.put(FILTER, new long[] {filterNanos});
+        }
+        switchTo(HANDLER);
+    }
+
+    /**
+     * @return the timer bound to the current thread, or null
+     */
+    public static RequestTimer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind the timer to the current thread, must be followed by {@link #unbind()}
+     * @param timer
+     */
+    public static void bind(RequestTimer timer) {
+        CURRENT.set(timer);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Attribute time to the given phase until the returned phase is closed. Does nothing if there is no timer bound to
+     * the current thread.
+     *
+     * @param phase
+     * @return never null
+     */
+    public static Phase enter(String phase) {
+        RequestTimer timer = CURRENT.get();
+        if (timer == null || timer.endNanos >= 0) {
+            return NO_OP;
+        }
+        timer.stack.push(timer.current);
+        timer.switchTo(phase);
+        return timer.exit;
+    }
+
+    private void exit() {
+        if (endNanos < 0 && !stack.isEmpty()) {
+            switchTo(stack.pop());
+        }
+    }
+
+    /**
+     * Switch the top level phase, e.g. from the handler to serialization.
+     * @param phase
+     */
+    public void startPhase(String phase) {
+        if (endNanos < 0) {
+            stack.clear();
+            switchTo(phase);
+        }
+    }
+
+    /**
+     * Stops the timer, phases entered afterwards are ignored
+     */
+    public void stop() {
+        if (endNanos < 0) {
+            switchTo(null);
+            endNanos = mark;
+        }
+    }
+
+    private void switchTo(String phase) {
+        long now = System.nanoTime();
+        if (current != null) {
+            durations.computeIfAbsent(current, k -> new long[1])[0] += now - mark;
+        }
+        current = phase;
+        mark = now;
+    }
+
+    /**
+     * @return total time so far, or the total time once stopped (ns)
+     */
+    public long getTotalNanos() {
+        return (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    /**
+     * @return the time spent in each phase (ns), in the order the phases were first entered. The active phase is only
+     * included up until it was last paused.
+     */
+    public Map<String, Long> getDurations() {
+        Map<String, Long> result = new LinkedHashMap<>(durations.size() * 4 / 3 + 1);
+        for (Map.Entry<String, long[]> entry : durations.entrySet()) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return the durations in the Server-Timing header format, e.g. {@code handler;dur=1.25, total;dur=2.5}
+     */
+    public String toServerTiming() {
+        // pause the active phase so it is included
+        if (endNanos < 0) {
+            switchTo(current);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : durations.entrySet()) {
+            appendMetric(builder, entry.getKey(), entry.getValue()[0]);
+        }
+        appendMetric(builder, "total", getTotalNanos());
+        return builder.toString();
+    }
+
+    private static void appendMetric(StringBuilder builder, String name, long nanos) {
+        if (builder.length() > 0) {
+            builder.append(", ");
+        }
+        // microsecond precision is plenty and keeps the header short
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        builder.append(name).append(";dur=").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) builder.append('0');
+        if (fraction < 10) builder.append('0');
+        builder.append(fraction);
+    }
+
+    /**
+     * Closing the phase resumes the enclosing phase
+     */
+    @FunctionalInterface
+    public interface Phase extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.timing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Aggregates the {@link RequestTimer} of every completed request into a latency histogram per handler method, and
+ * keeps the most recent requests which took longer than {@code rest.requestTiming.slowThresholdMs} in a ring buffer.
+ */
+@Component
+public class RequestTimingStatistics {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final boolean enabled;
+    private final boolean serverTimingHeader;
+    private final long slowThresholdNanos;
+    private final SlowRequestModel[] slowRequests;
+    private int next;
+    private int size;
+
+    private final ConcurrentMap<String, HandlerStatistics> handlers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RequestTimingStatistics(@Value("${rest.requestTiming.enabled:true}") boolean enabled,
+            @Value("${rest.requestTiming.serverTimingHeader:false}") boolean serverTimingHeader,
+            @Value("${rest.requestTiming.slowThresholdMs:1000}") long slowThreshold,
+            @Value("${rest.requestTiming.slowRequests.size:100}") int slowRequestsSize) {
+        this.enabled = enabled;
+        this.serverTimingHeader = serverTimingHeader;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThreshold);
+        this.slowRequests = new SlowRequestModel[Math.max(1, slowRequestsSize)];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isServerTimingHeader() {
+        return serverTimingHeader;
+    }
+
+    /**
+     * Record a completed request
+     *
+     * @param handler name of the handler method
+     * @param method HTTP method
+     * @param path request URI, without the query string
+     * @param status response status
+     * @param username null if not authenticated
+     * @param timer stopped timer for the request
+     */
+    public void record(String handler, String method, String path, int status, String username, RequestTimer timer) {
+        long total = timer.getTotalNanos();
+        Map<String, Long> durations = timer.getDurations();
+
+        HandlerStatistics statistics = handlers.computeIfAbsent(handler, k -> new HandlerStatistics());
+        statistics.histogram.record(TimeUnit.NANOSECONDS.toMicros(total));
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            statistics.phases.computeIfAbsent(entry.getKey(), k -> new LongAdder()).add(entry.getValue());
+        }
+
+        if (total >= slowThresholdNanos) {
+            Map<String, Double> phases = new LinkedHashMap<>(durations.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Long> entry : durations.entrySet()) {
+                phases.put(entry.getKey(), toMillis(entry.getValue()));
+            }
+            SlowRequestModel model = new SlowRequestModel(Common.timer.currentTimeMillis(), method, path, handler,
+                    status, username, toMillis(total), phases);
+            synchronized (slowRequests) {
+                slowRequests[next] = model;
+                next = (next + 1) % slowRequests.length;
+                size = Math.min(size + 1, slowRequests.length);
+            }
+        }
+    }
+
+    /**
+     * @return the slow requests, newest first
+     */
+    public List<SlowRequestModel> getSlowRequests() {
+        synchronized (slowRequests) {
+            List<SlowRequestModel> result = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                result.add(slowRequests[Math.floorMod(next - i, slowRequests.length)]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param includeBuckets include the histogram buckets in the result
+     * @return statistics for each handler, ordered by the total time spent in the handler descending
+     */
+    public List<HandlerTimingModel> getHandlers(boolean includeBuckets) {
+        List<HandlerTimingModel> result = new ArrayList<>(handlers.size());
+        for (Map.Entry<String, HandlerStatistics> entry : handlers.entrySet()) {
+            LatencyHistogram histogram = entry.getValue().histogram;
+            long count = histogram.getCount();
+            if (count == 0) continue;
+
+            Map<String, Double> percentiles = new LinkedHashMap<>();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentiles.put(PERCENTILE_NAMES[i], histogram.percentile(PERCENTILES[i]) / 1000d);
+            }
+            Map<String, Double> phases = new LinkedHashMap<>();
+            for (Map.Entry<String, LongAdder> phase : entry.getValue().phases.entrySet()) {
+                phases.put(phase.getKey(), toMillis(phase.getValue().sum()) / count);
+            }
+
+            HandlerTimingModel model = new HandlerTimingModel(entry.getKey(), count, histogram.getMean() / 1000d,
+                    histogram.getMax() / 1000d, percentiles, phases);
+            if (includeBuckets) {
+                model.setBuckets(histogram.getBuckets());
+            }
+            result.add(model);
+        }
+        result.sort(Comparator.comparingDouble((HandlerTimingModel m) -> m.getMean() * m.getCount()).reversed());
+        return result;
+    }
+
+    /**
+     * Clear the histograms and slow requests
+     */
+    public void reset() {
+        handlers.clear();
+        synchronized (slowRequests) {
+            for (int i = 0; i < slowRequests.length; i++) {
+                slowRequests[i] = null;
+            }
+            next = 0;
+            size = 0;
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000d;
+    }
+
+    private static class HandlerStatistics {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final ConcurrentMap<String, LongAdder> phases = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.timing;
+
+import java.util.Map;
+
+/**
+ * A request which took longer than the slow request threshold, durations are in ms
+ */
+public class SlowRequestModel {
+
+    private long timestamp;
+    private String method;
+    private String path;
+    private String handler;
+    private int status;
+    private String username;
+    private double duration;
+    private Map<String, Double> phases;
+
+    public SlowRequestModel() { }
+
+    public SlowRequestModel(long timestamp, String method, String path, String handler, int status, String username,
+            double duration, Map<String, Double> phases) {
+        this.timestamp = timestamp;
+        this.method = method;
+        this.path = path;
+        this.handler = handler;
+        this.status = status;
+        this.username = username;
+        this.duration = duration;
+        this.phases = phases;
+    }
+
+    /**
+     * @return time the request completed (epoch ms)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    /**
+     * @return request URI without the query string
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getHandler() {
+        return handler;
+    }
+
+    public void setHandler(String handler) {
+        this.handler = handler;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return time spent in each phase of the request
+     */
+    public Map<String, Double> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(Map<String, Double> phases) {
+        this.phases = phases;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.temporaryResource;
+
+import java.util.List;
+
+/**
+ * A temporary resource result which only ever has items appended to it while the resource is running,
+ * allows subscribers to be sent only the items which were added since their last update.
+ *
+ * @param <I> item type
+ */
+public interface IncrementalResult<I> {
+
+    /**
+     * @return the number of items currently in the result
+     */
+    int getItemCount();
+
+    /**
+     * @param fromIndex index of the first item to return (inclusive)
+     * @return a copy of the items from the index to the end of the result
+     */
+    List<I> getItems(int fromIndex);
+}
@@ -12,6 +12,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.util.CrudNotificationType;
 import com.infiniteautomation.mango.rest.v2.util.RestExceptionMapper;
+import com.infiniteautomation.mango.rest.v2.views.AdminView;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.UserDao;
@@ -36,14 +37,25 @@ public final class MangoTaskTemporaryResourceManager<T> extends TemporaryResourc
 
     private final PermissionService permissionService;
     private final TemporaryResourceWebSocketHandler websocketHandler;
+    private final TemporaryResourceResultStore resultStore;
 
     public MangoTaskTemporaryResourceManager(PermissionService permissionService) {
         this(permissionService, null);
     }
 
     public MangoTaskTemporaryResourceManager(PermissionService permissionService, TemporaryResourceWebSocketHandler websocketHandler) {
+        this(permissionService, websocketHandler, null);
+    }
+
+    /**
+     * @param permissionService
+     * @param websocketHandler may be null
+     * @param resultStore results of completed resources are handed to the store so large results can be spilled to disk, may be null
+     */
+    public MangoTaskTemporaryResourceManager(PermissionService permissionService, TemporaryResourceWebSocketHandler websocketHandler, TemporaryResourceResultStore resultStore) {
         this.websocketHandler = websocketHandler;
         this.permissionService = permissionService;
+        this.resultStore = resultStore;
     }
 
     @Override
@@ -66,6 +78,8 @@ public final class MangoTaskTemporaryResourceManager<T> extends TemporaryResourc
         if (tasks.expirationTask != null) {
             tasks.expirationTask.cancel();
         }
+
+        resource.releaseResult();
     }
 
     @Override
@@ -92,9 +106,29 @@ public final class MangoTaskTemporaryResourceManager<T> extends TemporaryResourc
         if (tasks.timeoutTask != null) {
             tasks.timeoutTask.cancel();
         }
+        // no point storing the result if the resource is removed immediately
+        if (this.resultStore != null && resource.getExpiration() > 0) {
+            this.scheduleStoreResult(resource);
+        }
         this.scheduleRemoval(resource);
     }
 
+    /**
+     * Storing the result may serialize it, this is done in the background as the resource may have been completed
+     * (e.g. cancelled) from a HTTP request thread.
+     */
+    private void scheduleStoreResult(TemporaryResource<T, AbstractRestV2Exception> resource) {
+        Common.backgroundProcessing.execute(new HighPriorityTask("Store temporary resource result " + resource.getResourceType() + " " + resource.getId()) {
+            @Override
+            public void run(long runtime) {
+                // spill the result using the view of the user who owns it
+                User owner = UserDao.getInstance().get(resource.getUserId());
+                Class<?> view = owner != null && permissionService.hasAdminRole(owner) ? AdminView.class : Object.class;
+                resource.storeResult(resultStore, view);
+            }
+        });
+    }
+
     private void scheduleTask(TemporaryResource<T, AbstractRestV2Exception> resource) {
         TaskData tasks = (TaskData) resource.getData();
 
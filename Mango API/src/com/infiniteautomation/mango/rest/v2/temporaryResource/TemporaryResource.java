@@ -3,13 +3,21 @@
  */
 package com.infiniteautomation.mango.rest.v2.temporaryResource;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.function.Consumer;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager.ResourceTask;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore.StoredResult;
 import com.serotonin.m2m2.Common;
 
 /**
@@ -26,6 +34,8 @@ public final class TemporaryResource<T, E> {
         private static final long serialVersionUID = 1L;
     }
 
+    private static final Log log = LogFactory.getLog(TemporaryResource.class);
+
     private final String resourceType;
     private final String id;
     private final int userId;
@@ -39,14 +49,20 @@ public final class TemporaryResource<T, E> {
      * Increments every time the status is changed or progress() is called
      */
     private int resourceVersion;
-    @JsonView(TemporaryResourceViews.ShowResult.class)
     private T result;
+    /**
+     * Set after the resource completes if the manager has a result store
+     */
+    private volatile StoredResult storedResult;
+    private boolean storingResult;
+    private boolean removed;
     private E error;
     private Date startTime;
     private Date completionTime;
     private Integer position;
     private Integer maximum;
     private volatile Consumer<TemporaryResource<T, E>> completeCallback;
+    private final List<AutoCloseable> closeOnCompletion = new ArrayList<>();
 
     /**
      * Holds runtime data for the resource manager to use
@@ -165,6 +181,76 @@ public final class TemporaryResource<T, E> {
         if (completeCallback != null) {
             completeCallback.accept(this);
         }
+
+        for (AutoCloseable closeable : this.closeOnCompletion) {
+            this.close(closeable);
+        }
+        this.closeOnCompletion.clear();
+    }
+
+    /**
+     * Close something the task uses (e.g. a spooled request body) once the resource completes, whether or not the task
+     * ever ran. Closed immediately if the resource is already complete.
+     *
+     * @param closeable
+     */
+    public synchronized final void closeOnCompletion(AutoCloseable closeable) {
+        if (this.isComplete()) {
+            this.close(closeable);
+        } else {
+            this.closeOnCompletion.add(closeable);
+        }
+    }
+
+    private void close(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to close " + closeable + " for temporary resource " + this.id, e);
+            }
+        }
+    }
+
+    /**
+     * Hand the result of a completed resource to the store, if the store spilled it to disk it is released from the heap.
+     * The result is serialized without holding the lock on this resource.
+     *
+     * @param store
+     * @param view JSON view of the user who owns the resource
+     */
+    protected final void storeResult(TemporaryResourceResultStore store, Class<?> view) {
+        T result;
+        synchronized (this) {
+            if (!this.isComplete() || this.removed || this.result == null || this.storingResult) return;
+            this.storingResult = true;
+            result = this.result;
+        }
+
+        StoredResult stored = store.store(result, view);
+        if (stored == null) return;
+
+        synchronized (this) {
+            if (this.removed) {
+                stored.release();
+                return;
+            }
+            this.storedResult = stored;
+            if (stored.isOnDisk()) {
+                this.result = null;
+            }
+        }
+    }
+
+    /**
+     * Release the stored result (if any), called when the resource is removed
+     */
+    protected synchronized final void releaseResult() {
+        this.removed = true;
+        StoredResult stored = this.storedResult;
+        if (stored != null) {
+            stored.release();
+        }
     }
 
     @JsonIgnore
@@ -195,10 +281,51 @@ public final class TemporaryResource<T, E> {
         return status;
     }
 
+    /**
+     * @return the result, null once the result of a completed resource has been spilled to disk (see
+     * {@link #loadResult(Class)} and {@link #getSerializableResult()})
+     */
+    @JsonIgnore
     public final T getResult() {
         return result;
     }
 
+    /**
+     * @return the result, or the stored result if it was spilled to disk (streamed from the file when serialized)
+     */
+    @JsonProperty("result")
+    @JsonView(TemporaryResourceViews.ShowResult.class)
+    public final Object getSerializableResult() {
+        StoredResult stored = this.storedResult;
+        if (stored != null && stored.isOnDisk()) {
+            return stored;
+        }
+        return result;
+    }
+
+    /**
+     * @param type the result type, must be deserializable if the result may be spilled (bulk responses are not)
+     * @return the result, read back from disk if it was spilled
+     * @throws IOException
+     */
+    @JsonIgnore
+    public final T loadResult(Class<T> type) throws IOException {
+        StoredResult stored = this.storedResult;
+        if (stored != null && stored.isOnDisk()) {
+            return stored.read(type);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the result of the completed resource was spilled to disk
+     */
+    @JsonIgnore
+    public final boolean isResultSpilled() {
+        StoredResult stored = this.storedResult;
+        return stored != null && stored.isOnDisk();
+    }
+
     public final E getError() {
         return error;
     }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.temporaryResource;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Storage for the results of completed temporary resources. The size of each result is estimated when its resource
+ * completes, results which are larger than the spill threshold are serialized to a temporary file and released from
+ * the heap. A result which has been spilled to disk is memory-mapped and copied to the output when the resource is
+ * serialized, it is never loaded back into memory.
+ *
+ * <p>Results are spilled using the JSON view of the user who owns the resource, so properties hidden from that user are
+ * never written to disk. Files are deleted when the resource is removed, any left over from a previous run are deleted
+ * on startup.</p>
+ *
+ * <p>The size of the results held in memory (estimated) and on disk is reported via system metrics.</p>
+ */
+@Component
+public class TemporaryResourceResultStore {
+
+    public static final String MEMORY_MONITOR_ID = "com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore.MEMORY";
+    public static final String DISK_MONITOR_ID = "com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceResultStore.DISK";
+
+    private static final String SPILL_DIR = "temporary-resource-results";
+    /**
+     * Number of items serialized to estimate the size of an {@link IncrementalResult}
+     */
+    private static final int SAMPLE_SIZE = 16;
+
+    private static final Log log = LogFactory.getLog(TemporaryResourceResultStore.class);
+
+    private final ObjectMapper mapper;
+    private final int spillThreshold;
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicInteger spilledCount = new AtomicInteger();
+
+    private final ValueMonitor<Long> memoryMonitor;
+    private final ValueMonitor<Long> diskMonitor;
+
+    @Autowired
+    public TemporaryResourceResultStore(@Qualifier(MangoRuntimeContextConfiguration.REST_OBJECT_MAPPER_NAME) ObjectMapper mapper,
+            @Value("${rest.temporaryResource.spillThresholdBytes:1048576}") int spillThreshold) {
+        this.mapper = mapper;
+        this.spillThreshold = Math.max(0, spillThreshold);
+
+        this.memoryMonitor = Common.MONITORED_VALUES.<Long>create(MEMORY_MONITOR_ID)
+                .name(new TranslatableMessage("rest.monitor.temporaryResourceMemory"))
+                .function((ts) -> memoryBytes.get())
+                .buildPollable();
+        this.diskMonitor = Common.MONITORED_VALUES.<Long>create(DISK_MONITOR_ID)
+                .name(new TranslatableMessage("rest.monitor.temporaryResourceDisk"))
+                .function((ts) -> diskBytes.get())
+                .buildPollable();
+    }
+
+    @PostConstruct
+    public void start() {
+        // results of resources which were never removed because Mango was shut down
+        try {
+            FileUtils.deleteDirectory(spillDirectory().toFile());
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary resource results from previous run", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        Common.MONITORED_VALUES.remove(MEMORY_MONITOR_ID);
+        Common.MONITORED_VALUES.remove(DISK_MONITOR_ID);
+    }
+
+    private Path spillDirectory() {
+        return Common.getTempPath().resolve(SPILL_DIR);
+    }
+
+    /**
+     * Store a result, if its estimated size is larger than the spill threshold it is serialized to a temporary file.
+     * This may take some time, do not call while holding a lock.
+     *
+     * @param result
+     * @param view JSON view to serialize the result with
+     * @return the stored result or null if the result could not be serialized
+     */
+    public StoredResult store(Object result, Class<?> view) {
+        try {
+            long estimate = estimateSize(result, view);
+            if (estimate <= spillThreshold) {
+                memoryBytes.addAndGet(estimate);
+                return new StoredResult(null, estimate, view);
+            }
+
+            Path directory = spillDirectory();
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "result-", ".json");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                mapper.writerWithView(view).writeValue(out, result);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+
+            long size = Files.size(file);
+            diskBytes.addAndGet(size);
+            spilledCount.incrementAndGet();
+            return new StoredResult(file, size, view);
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to serialize temporary resource result, it will be kept in memory", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The size of an incremental result is extrapolated from its last few items. Other results are serialized until
+     * they exceed the spill threshold, so the cost is bounded by the threshold rather than by the size of the result.
+     */
+    private long estimateSize(Object result, Class<?> view) throws IOException {
+        if (result instanceof IncrementalResult) {
+            IncrementalResult<?> incremental = (IncrementalResult<?>) result;
+            int count = incremental.getItemCount();
+            if (count == 0) {
+                return 0;
+            }
+            List<?> sample = incremental.getItems(Math.max(0, count - SAMPLE_SIZE));
+            long sampleSize = measure(sample, view);
+            return sample.isEmpty() ? sampleSize : sampleSize * count / sample.size();
+        }
+        return measure(result, view);
+    }
+
+    private long measure(Object value, Class<?> view) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(spillThreshold);
+        try {
+            mapper.writerWithView(view).writeValue(out, value);
+        } catch (IOException e) {
+            // Jackson may wrap the exception thrown by the stream
+            if (!out.isExceeded()) {
+                throw e;
+            }
+        }
+        return out.getCount();
+    }
+
+    /**
+     * Counts the bytes written and throws once the limit is exceeded
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final long limit;
+        private long count;
+
+        CountingOutputStream(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.add(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.add(len);
+        }
+
+        private void add(int length) throws IOException {
+            count += length;
+            if (count > limit) {
+                throw new IOException("Limit exceeded");
+            }
+        }
+
+        boolean isExceeded() {
+            return count > limit;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * @return estimated size of the completed results held in memory (bytes)
+     */
+    public long getMemoryBytes() {
+        return memoryBytes.get();
+    }
+
+    /**
+     * @return size of the completed results which have been spilled to disk (bytes)
+     */
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    /**
+     * @return number of results currently spilled to disk
+     */
+    public int getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public ValueMonitor<Long> getMemoryMonitor() {
+        return memoryMonitor;
+    }
+
+    public ValueMonitor<Long> getDiskMonitor() {
+        return diskMonitor;
+    }
+
+    /**
+     * A stored result, if it was spilled to disk it is written out from the file when serialized.
+     */
+    public final class StoredResult implements JsonSerializable {
+        private final Path file;
+        private final long size;
+        private final Class<?> view;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private StoredResult(Path file, long size, Class<?> view) {
+            this.file = file;
+            this.size = size;
+            this.view = view;
+        }
+
+        public boolean isOnDisk() {
+            return file != null;
+        }
+
+        /**
+         * @return size of the result (bytes), estimated if it is held in memory
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the JSON view the result was serialized with
+         */
+        public Class<?> getView() {
+            return view;
+        }
+
+        /**
+         * Deletes the temporary file and updates the metrics, may be called more than once
+         */
+        public void release() {
+            if (!released.compareAndSet(false, true)) return;
+
+            if (file == null) {
+                memoryBytes.addAndGet(-size);
+                return;
+            }
+
+            diskBytes.addAndGet(-size);
+            spilledCount.decrementAndGet();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Failed to delete temporary resource result " + file, e);
+                }
+            }
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            if (file == null) {
+                throw new IllegalStateException("Result is not stored on disk");
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    InputStream in = openStream(channel);
+                    JsonParser parser = mapper.getFactory().createParser(in)) {
+                parser.nextToken();
+                gen.copyCurrentStructure(parser);
+            }
+        }
+
+        /**
+         * Deserialize a result which was spilled to disk, properties excluded by the view are not set. Only for result
+         * types which can be deserialized, e.g. not bulk responses.
+         *
+         * @param type
+         * @return
+         * @throws IOException
+         */
+        public <R> R read(Class<R> type) throws IOException {
+            if (file == null) {
+                throw new IllegalStateException("Result is not stored on disk");
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    InputStream in = openStream(channel)) {
+                return mapper.readValue(in, type);
+            }
+        }
+
+        private InputStream openStream(FileChannel channel) throws IOException {
+            // a single mapping is limited to 2GB
+            if (size > Integer.MAX_VALUE) {
+                return Channels.newInputStream(channel);
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+            return new ByteBufferBackedInputStream(buffer);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+            this.serialize(gen, serializers);
+        }
+    }
+}
@@ -6,9 +6,15 @@ package com.infiniteautomation.mango.rest.v2.temporaryResource;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
@@ -31,13 +37,60 @@ import com.serotonin.m2m2.vo.User;
 @WebSocketMapping("/websocket/temporary-resources")
 public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHandler {
     private static final String SUBSCRIPTION_ATTRIBUTE = "TemporaryResourceSubscription";
+    private static final String UPDATE_STATES_ATTRIBUTE = "TemporaryResourceUpdateStates";
     public static final String REQUEST_TYPE_SUBSCRIPTION = "SUBSCRIPTION";
+    public static final String RESULT_DELTA_ATTRIBUTE = "resultDelta";
+
+    /**
+     * Tracks what has been sent to a session for a single resource, used for result deltas and to coalesce updates
+     */
+    private static class UpdateState {
+        int sentItemCount;
+        long lastSent;
+        TemporaryResourceStatus lastStatus;
+        ScheduledFuture<?> pendingUpdate;
+
+        void cancelPending() {
+            if (pendingUpdate != null) {
+                pendingUpdate.cancel(false);
+                pendingUpdate = null;
+            }
+        }
+    }
+
+    /**
+     * Only the items which were appended to the result since the last notification
+     */
+    public static class ResultDelta {
+        private final int fromIndex;
+        private final List<?> items;
+
+        public ResultDelta(int fromIndex, List<?> items) {
+            this.fromIndex = fromIndex;
+            this.items = items;
+        }
+
+        public int getFromIndex() {
+            return fromIndex;
+        }
+
+        public List<?> getItems() {
+            return items;
+        }
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         super.afterConnectionEstablished(session);
 
         session.getAttributes().put(SUBSCRIPTION_ATTRIBUTE, new TemporaryResourceSubscription());
+        session.getAttributes().put(UPDATE_STATES_ATTRIBUTE, new ConcurrentHashMap<String, UpdateState>());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        super.afterConnectionClosed(session, status);
+        this.clearUpdateStates(session);
     }
 
     @Override
@@ -49,6 +102,7 @@ public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHand
                 log.debug("Subscription for " + session.getId() + " has been set to " + subscription);
             }
             session.getAttributes().put(SUBSCRIPTION_ATTRIBUTE, subscription);
+            this.clearUpdateStates(session);
             this.sendRawMessage(session, new WebSocketResponse<Void>(subscription.getSequenceNumber()));
         }
     }
@@ -90,31 +144,120 @@ public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHand
             if ((subscription.isAnyStatus() || statuses.contains(resource.getStatus())) &&
                     (subscription.isAnyResourceType() || resourceTypes.contains(resource.getResourceType()))) {
 
-                WebSocketNotification<TemporaryResource<?, ?>> notificationMessage = new WebSocketNotification<>(type, resource);
-                boolean showResult = !resource.isComplete() && subscription.isShowResultWhenIncomplete() ||
-                        resource.isComplete() && subscription.isShowResultWhenComplete();
-
-                if (type == CrudNotificationType.DELETE) {
-                    showResult = false;
+                if (type == CrudNotificationType.UPDATE && !resource.isComplete() && subscription.getMaxUpdateRate() > 0) {
+                    long minInterval = TimeUnit.SECONDS.toNanos(1) / subscription.getMaxUpdateRate();
+                    UpdateState state = this.getUpdateState(session, resource);
+                    synchronized (state) {
+                        long elapsed = System.nanoTime() - state.lastSent;
+                        if (state.lastStatus != resource.getStatus()) {
+                            // status changes are not coalesced, the pending update would be a duplicate
+                            state.cancelPending();
+                        } else if (state.lastSent != 0 && elapsed < minInterval) {
+                            // coalesce, the latest state of the resource is sent once the interval has elapsed
+                            if (state.pendingUpdate == null) {
+                                state.pendingUpdate = this.scheduledExecutor.schedule(() -> this.sendPendingUpdate(session, resource, subscription),
+                                        minInterval - elapsed, TimeUnit.NANOSECONDS);
+                            }
+                            return;
+                        }
+                    }
                 }
 
-                Class<?> view = showResult ? TemporaryResourceViews.ShowResult.class : Object.class;
+                this.sendNotification(session, type, resource, subscription);
+            }
+        }
+    }
 
-                if (log.isTraceEnabled()) {
-                    log.trace("Notifying session " + session.getId() + " of change to resource " + resource);
-                }
+    private void sendPendingUpdate(WebSocketSession session, TemporaryResource<?, ?> resource, TemporaryResourceSubscription subscription) {
+        // lock order is always resource then update state, same as when notified from within the resource
+        synchronized (resource) {
+            UpdateState state = this.getUpdateState(session, resource);
+            synchronized (state) {
+                state.pendingUpdate = null;
+            }
+            if (!session.isOpen() || resource.isComplete() || session.getAttributes().get(SUBSCRIPTION_ATTRIBUTE) != subscription) {
+                return;
+            }
+            this.sendNotification(session, CrudNotificationType.UPDATE, resource, subscription);
+        }
+    }
 
-                try {
-                    this.sendRawMessageUsingView(session, notificationMessage, view);
-                } catch (Exception e) {
-                    if (log.isWarnEnabled()) {
-                        log.warn("Error notifying session " + session.getId() + " of change to resource " + resource, e);
-                    }
+    private void sendNotification(WebSocketSession session, CrudNotificationType type, TemporaryResource<?, ?> resource, TemporaryResourceSubscription subscription) {
+        boolean showResult = !resource.isComplete() && subscription.isShowResultWhenIncomplete() ||
+                resource.isComplete() && subscription.isShowResultWhenComplete();
+
+        if (type == CrudNotificationType.DELETE) {
+            showResult = false;
+        }
+
+        WebSocketNotification<TemporaryResource<?, ?>> notificationMessage;
+        // don't read a spilled result back from disk just to send a delta
+        Object result = type != CrudNotificationType.DELETE && subscription.isShowResultDeltas() && !resource.isResultSpilled() ? resource.getResult() : null;
+        if (result instanceof IncrementalResult) {
+            // send only the newly appended items, the resource itself is sent without its result
+            UpdateState state = this.getUpdateState(session, resource);
+            ResultDelta delta;
+            synchronized (state) {
+                int fromIndex = state.sentItemCount;
+                List<?> items = ((IncrementalResult<?>) result).getItems(fromIndex);
+                state.sentItemCount = fromIndex + items.size();
+                delta = new ResultDelta(fromIndex, items);
+            }
+            notificationMessage = new WebSocketNotification<>(type, resource, Collections.singletonMap(RESULT_DELTA_ATTRIBUTE, delta));
+            showResult = false;
+        } else {
+            notificationMessage = new WebSocketNotification<>(type, resource);
+        }
+
+        Class<?> view = showResult ? TemporaryResourceViews.ShowResult.class : Object.class;
+
+        if (log.isTraceEnabled()) {
+            log.trace("Notifying session " + session.getId() + " of change to resource " + resource);
+        }
+
+        try {
+            this.sendRawMessageUsingView(session, notificationMessage, view);
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error notifying session " + session.getId() + " of change to resource " + resource, e);
+            }
+        }
+
+        if (type == CrudNotificationType.DELETE || resource.isComplete()) {
+            UpdateState state = this.getUpdateStates(session).remove(resource.getId());
+            if (state != null) {
+                synchronized (state) {
+                    state.cancelPending();
                 }
             }
+        } else if (subscription.getMaxUpdateRate() > 0 || subscription.isShowResultDeltas()) {
+            UpdateState state = this.getUpdateState(session, resource);
+            synchronized (state) {
+                state.lastSent = System.nanoTime();
+                state.lastStatus = resource.getStatus();
+            }
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, UpdateState> getUpdateStates(WebSocketSession session) {
+        return (Map<String, UpdateState>) session.getAttributes().computeIfAbsent(UPDATE_STATES_ATTRIBUTE, k -> new ConcurrentHashMap<String, UpdateState>());
+    }
+
+    private UpdateState getUpdateState(WebSocketSession session, TemporaryResource<?, ?> resource) {
+        return this.getUpdateStates(session).computeIfAbsent(resource.getId(), k -> new UpdateState());
+    }
+
+    private void clearUpdateStates(WebSocketSession session) {
+        Map<String, UpdateState> states = this.getUpdateStates(session);
+        for (UpdateState state : states.values()) {
+            synchronized (state) {
+                state.cancelPending();
+            }
+        }
+        states.clear();
+    }
+
     @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, include=JsonTypeInfo.As.PROPERTY, property="requestType")
     @JsonSubTypes({
         @JsonSubTypes.Type(name = REQUEST_TYPE_SUBSCRIPTION, value = TemporaryResourceSubscription.class)
@@ -128,6 +271,8 @@ public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHand
         private boolean showResultWhenComplete = false;
         private boolean anyStatus = false;
         private boolean anyResourceType = false;
+        private boolean showResultDeltas = false;
+        private int maxUpdateRate = 0;
         private Set<TemporaryResourceStatus> statuses;
         private Set<String> resourceTypes;
 
@@ -187,12 +332,37 @@ public class TemporaryResourceWebSocketHandler extends MultiSessionWebSocketHand
             this.showResultWhenComplete = showResultWhenComplete;
         }
 
+        /**
+         * If true and the result supports it, only the result items appended since the last notification are sent
+         * (as the resultDelta attribute) instead of the whole result
+         */
+        public boolean isShowResultDeltas() {
+            return showResultDeltas;
+        }
+
+        public void setShowResultDeltas(boolean showResultDeltas) {
+            this.showResultDeltas = showResultDeltas;
+        }
+
+        /**
+         * Maximum number of progress updates per second sent for each resource, 0 for no limit.
+         * Status changes and completion are always sent immediately.
+         */
+        public int getMaxUpdateRate() {
+            return maxUpdateRate;
+        }
+
+        public void setMaxUpdateRate(int maxUpdateRate) {
+            this.maxUpdateRate = Math.max(0, maxUpdateRate);
+        }
+
         @Override
         public String toString() {
             return "TemporaryResourceSubscription [ownResourcesOnly=" + ownResourcesOnly
                     + ", showResultWhenIncomplete=" + showResultWhenIncomplete
                     + ", showResultWhenComplete=" + showResultWhenComplete + ", anyStatus="
-                    + anyStatus + ", anyResourceType=" + anyResourceType + ", statuses=" + statuses
+                    + anyStatus + ", anyResourceType=" + anyResourceType + ", showResultDeltas="
+                    + showResultDeltas + ", maxUpdateRate=" + maxUpdateRate + ", statuses=" + statuses
                     + ", resourceTypes=" + resourceTypes + "]";
         }
     }
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonDataCache;
+import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonDataCache.JsonDataChangeListener;
+import com.infiniteautomation.mango.rest.v2.model.jsondata.JsonPatch;
+import com.infiniteautomation.mango.rest.v2.util.CrudNotificationType;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.serotonin.m2m2.i18n.ProcessResult;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.Validatable;
+import com.serotonin.m2m2.vo.json.JsonDataVO;
+
+/**
+ * Notifies sessions of changes to the JSON data items they watch. Instead of the whole document only a JSON Patch
+ * (RFC 6902) of the changes to the watched paths is sent, the operation paths are relative to the root of the
+ * document. A session can watch any number of xids, watching an xid again replaces its paths.
+ *
+ * <p>The diff for each watched path is computed once per change and shared by all sessions watching that path.</p>
+ *
+ * <p>Each notification contains the entity tags of the data before and after the change (the same tags as the ETag
+ * header of the REST controller). A client which applies the patches should check that the previous tag matches the
+ * tag of its copy, if it does not (or is null) a notification was missed and the data must be read again.</p>
+ */
+@Component
+@WebSocketMapping("/websocket/json-data-patches")
+public class JsonDataPatchWebSocketHandler extends MultiSessionWebSocketHandler implements JsonDataChangeListener {
+
+    public static final String WATCHES_ATTRIBUTE = "JsonDataWatches";
+    public static final String REQUEST_TYPE_WATCH = "WATCH";
+    public static final String REQUEST_TYPE_UNWATCH = "UNWATCH";
+
+    @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, include=JsonTypeInfo.As.PROPERTY, property="requestType")
+    @JsonSubTypes({
+        @JsonSubTypes.Type(name = REQUEST_TYPE_WATCH, value = JsonDataWatch.class),
+        @JsonSubTypes.Type(name = REQUEST_TYPE_UNWATCH, value = JsonDataUnwatch.class)
+    })
+    public static abstract class JsonDataWatchRequest extends WebSocketRequest implements Validatable {
+        private String xid;
+
+        @Override
+        public void validate(ProcessResult response) {
+            if (xid == null || xid.isEmpty()) {
+                response.addContextualMessage("xid", "validate.required");
+            }
+        }
+
+        public String getXid() {
+            return xid;
+        }
+        public void setXid(String xid) {
+            this.xid = xid;
+        }
+    }
+
+    public static class JsonDataWatch extends JsonDataWatchRequest {
+        private List<String> paths; // JSON pointers, null or empty for the whole document
+
+        @Override
+        public void validate(ProcessResult response) {
+            super.validate(response);
+            if (paths != null) {
+                for (int i = 0; i < paths.size(); i++) {
+                    try {
+                        JsonPointer.compile(paths.get(i));
+                    } catch (IllegalArgumentException | NullPointerException e) {
+                        response.addContextualMessage("paths[" + i + "]", "validate.invalidValue");
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the paths without any paths which are inside of another watched path
+         */
+        List<JsonPointer> pointers() {
+            List<String> paths = this.paths == null || this.paths.isEmpty() ? Collections.singletonList("") : this.paths;
+            List<JsonPointer> pointers = new ArrayList<>();
+            for (String path : paths) {
+                boolean nested = paths.stream().anyMatch(p -> !p.equals(path) && (p.isEmpty() || path.startsWith(p + "/")));
+                JsonPointer pointer = JsonPointer.compile(path);
+                if (!nested && !pointers.contains(pointer)) {
+                    pointers.add(pointer);
+                }
+            }
+            return pointers;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+    }
+
+    public static class JsonDataUnwatch extends JsonDataWatchRequest {
+    }
+
+    public static class JsonDataPatchModel {
+        private final String xid;
+        private final String previousTag;
+        private final String tag;
+        private final ArrayNode patch;
+
+        public JsonDataPatchModel(String xid, String previousTag, String tag, ArrayNode patch) {
+            this.xid = xid;
+            this.previousTag = previousTag;
+            this.tag = tag;
+            this.patch = patch;
+        }
+
+        public String getXid() {
+            return xid;
+        }
+
+        /**
+         * @return entity tag of the version the patch applies to, null if the data was created or the version is not known
+         */
+        public String getPreviousTag() {
+            return previousTag;
+        }
+
+        /**
+         * @return entity tag of the version after applying the patch, null if the data was deleted
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * @return operations for the watched paths (empty if they did not change), null if the data was deleted
+         */
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public ArrayNode getPatch() {
+            return patch;
+        }
+    }
+
+    private final JsonDataCache cache;
+
+    @Autowired
+    public JsonDataPatchWebSocketHandler(JsonDataCache cache) {
+        super(true);
+        this.cache = cache;
+    }
+
+    @PostConstruct
+    private void init() {
+        cache.addListener(this);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        cache.removeListener(this);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        JsonNode tree = this.jacksonMapper.readTree(message.getPayload());
+
+        if (!WebSocketMessageType.REQUEST.messageTypeMatches(tree) || tree.get("requestType") == null) {
+            return;
+        }
+
+        JsonDataWatchRequest request = this.jacksonMapper.treeToValue(tree, JsonDataWatchRequest.class);
+        try {
+            request.ensureValid();
+        } catch (Exception e) {
+            this.sendErrorMessage(session, MangoWebSocketErrorType.SERVER_ERROR,
+                    new TranslatableMessage("rest.error.serverError", e.getMessage()));
+            return;
+        }
+
+        ConcurrentMap<String, List<JsonPointer>> watches = getWatches(session, true);
+        if (request instanceof JsonDataWatch) {
+            watches.put(request.getXid(), ((JsonDataWatch) request).pointers());
+        } else if (request instanceof JsonDataUnwatch) {
+            watches.remove(request.getXid());
+        }
+        this.sendRawMessage(session, new WebSocketResponse<Void>(request.getSequenceNumber()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<String, List<JsonPointer>> getWatches(WebSocketSession session, boolean create) {
+        if (create) {
+            return (ConcurrentMap<String, List<JsonPointer>>) session.getAttributes()
+                    .computeIfAbsent(WATCHES_ATTRIBUTE, k -> new ConcurrentHashMap<String, List<JsonPointer>>());
+        }
+        return (ConcurrentMap<String, List<JsonPointer>>) session.getAttributes().get(WATCHES_ATTRIBUTE);
+    }
+
+    @Override
+    public void changed(DaoEvent<? extends JsonDataVO> event, String previousTag, String tag) {
+        JsonDataVO vo = event.getVo();
+        JsonDataVO originalVo = event.getOriginalVo();
+        String xid = originalVo != null ? originalVo.getXid() : vo.getXid();
+
+        CrudNotificationType type;
+        if (event.getType() == DaoEventType.CREATE) {
+            type = CrudNotificationType.CREATE;
+        } else if (event.getType() == DaoEventType.UPDATE) {
+            type = CrudNotificationType.UPDATE;
+        } else {
+            type = CrudNotificationType.DELETE;
+        }
+        JsonNode source = type == CrudNotificationType.UPDATE && originalVo != null ? originalVo.getJsonData() : null;
+        JsonNode target = vo.getJsonData();
+
+        Map<String, Object> attributes = xid.equals(vo.getXid()) ? Collections.emptyMap() : Collections.singletonMap("originalXid", xid);
+        Map<JsonPointer, ArrayNode> diffs = new HashMap<>();
+        for (WebSocketSession session : sessions) {
+            ConcurrentMap<String, List<JsonPointer>> watches = getWatches(session, false);
+            List<JsonPointer> watched = watches == null ? null : watches.get(xid);
+            User user = getUser(session);
+            if (watched == null || user == null || !permissionService.hasPermission(user, vo.getReadPermission())) {
+                continue;
+            }
+
+            ArrayNode patch = null;
+            if (type != CrudNotificationType.DELETE) {
+                patch = this.jacksonMapper.createArrayNode();
+                // sent even if the watched paths did not change, otherwise the client could not follow the tags
+                for (JsonPointer path : watched) {
+                    patch.addAll(diffs.computeIfAbsent(path, p -> JsonPatch.diff(source, target, p)));
+                }
+            }
+
+            try {
+                String json = this.jacksonMapper.writeValueAsString(
+                        new WebSocketNotification<>(type, new JsonDataPatchModel(vo.getXid(), previousTag, tag, patch), attributes));
+                this.sendStringMessageAsync(session, json);
+            } catch (WebSocketSendException e) {
+                log.warn("Error notifying websocket", e);
+            } catch (Exception e) {
+                log.warn("Failed to send JSON data patch", e);
+            }
+        }
+    }
+}
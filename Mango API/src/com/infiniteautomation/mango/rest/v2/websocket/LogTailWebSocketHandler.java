@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.Level;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogFileTailer;
+import com.infiniteautomation.mango.rest.v2.model.logging.LogMessageModel;
+import com.serotonin.m2m2.i18n.ProcessResult;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.Validatable;
+
+/**
+ * Pushes new messages from the Mango log file to the connected sessions. Each session subscribes with its own
+ * filters, only matching messages are sent.
+ *
+ * <p>At most one message is in flight per session, messages received in the meantime are queued and sent as one
+ * batch once the previous send completes. If the queue for a slow session is full the oldest messages are dropped
+ * and the number dropped is sent with the next batch.</p>
+ */
+@Component
+@WebSocketMapping("/websocket/logging")
+public class LogTailWebSocketHandler extends MultiSessionWebSocketHandler {
+
+    public static final String SUBSCRIPTION_ATTRIBUTE = "LogTailSubscription";
+    public static final String REQUEST_TYPE_SUBSCRIPTION = "SUBSCRIPTION";
+    public static final String NOTIFICATION_TYPE = "log";
+    private static final int MAX_BATCH = 500;
+
+    @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, include=JsonTypeInfo.As.PROPERTY, property="requestType")
+    @JsonSubTypes({
+        @JsonSubTypes.Type(name = REQUEST_TYPE_SUBSCRIPTION, value = LogTailSubscription.class)
+    })
+    public static abstract class LogTailRequest extends WebSocketRequest implements Validatable {
+    }
+
+    public static class LogTailSubscription extends LogTailRequest {
+        private String level; // minimum level, null for all
+        private String classname; // regex, null for any
+        private String message; // regex, null for any
+
+        @Override
+        public void validate(ProcessResult response) {
+            if (level != null && Level.getLevel(level) == null) {
+                response.addContextualMessage("level", "validate.invalidValue");
+            }
+            validateRegex("classname", classname, response);
+            validateRegex("message", message, response);
+        }
+
+        private void validateRegex(String property, String regex, ProcessResult response) {
+            if (regex != null) {
+                try {
+                    Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    response.addContextualMessage(property, "validate.invalidValue");
+                }
+            }
+        }
+
+        public String getLevel() {
+            return level;
+        }
+        public void setLevel(String level) {
+            this.level = level;
+        }
+        public String getClassname() {
+            return classname;
+        }
+        public void setClassname(String classname) {
+            this.classname = classname;
+        }
+        public String getMessage() {
+            return message;
+        }
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    public static class LogTailModel {
+        private final List<LogMessageModel> messages;
+        private final int dropped;
+
+        public LogTailModel(List<LogMessageModel> messages, int dropped) {
+            this.messages = messages;
+            this.dropped = dropped;
+        }
+
+        public List<LogMessageModel> getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return number of messages which were dropped before this batch as the client was not keeping up
+         */
+        public int getDropped() {
+            return dropped;
+        }
+    }
+
+    private final LogFileTailer tailer;
+    private final int maxQueued;
+    private final Consumer<List<LogMessageModel>> listener = this::messagesReceived;
+    private boolean listening;
+
+    @Autowired
+    public LogTailWebSocketHandler(LogFileTailer tailer, @Value("${rest.logging.tail.maxQueued:1000}") int maxQueued) {
+        super(true);
+        this.tailer = tailer;
+        this.maxQueued = Math.max(MAX_BATCH, maxQueued);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        tailer.removeListener(listener);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        User user = getUser(session);
+        if (user == null) {
+            return;
+        } else if (!permissionService.hasAdminRole(user)) {
+            if (session.isOpen()) {
+                session.close(MangoWebSocketHandler.NOT_AUTHORIZED);
+            }
+            return;
+        }
+
+        super.afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        super.afterConnectionClosed(session, status);
+        updateListener();
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        super.handleTransportError(session, exception);
+        updateListener();
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        JsonNode tree = this.jacksonMapper.readTree(message.getPayload());
+
+        if (!WebSocketMessageType.REQUEST.messageTypeMatches(tree) || tree.get("requestType") == null) {
+            return;
+        }
+
+        LogTailRequest request = this.jacksonMapper.treeToValue(tree, LogTailRequest.class);
+        try {
+            request.ensureValid();
+        } catch (Exception e) {
+            this.sendErrorMessage(session, MangoWebSocketErrorType.SERVER_ERROR,
+                    new TranslatableMessage("rest.error.serverError", e.getMessage()));
+            return;
+        }
+
+        if (request instanceof LogTailSubscription) {
+            session.getAttributes().put(SUBSCRIPTION_ATTRIBUTE, new SessionTail(session, (LogTailSubscription) request));
+            updateListener();
+            this.sendRawMessage(session, new WebSocketResponse<Void>(request.getSequenceNumber()));
+        }
+    }
+
+    /**
+     * Only follow the log file while a session is subscribed
+     */
+    private synchronized void updateListener() {
+        boolean subscribed = sessions.stream().anyMatch(s -> s.getAttributes().get(SUBSCRIPTION_ATTRIBUTE) != null);
+        if (subscribed && !listening) {
+            tailer.addListener(listener);
+            listening = true;
+        } else if (!subscribed && listening) {
+            tailer.removeListener(listener);
+            listening = false;
+        }
+    }
+
+    private void messagesReceived(List<LogMessageModel> messages) {
+        for (WebSocketSession session : sessions) {
+            SessionTail tail = (SessionTail) session.getAttributes().get(SUBSCRIPTION_ATTRIBUTE);
+            if (tail != null) {
+                tail.offer(messages);
+            }
+        }
+    }
+
+    /**
+     * Filters and queues the messages for a session
+     */
+    private class SessionTail implements WriteCallback {
+        private final WebSocketSession session;
+        private final Level level;
+        private final Pattern classname;
+        private final Pattern message;
+
+        private final Deque<LogMessageModel> queue = new ArrayDeque<>();
+        private int dropped;
+        private boolean sending;
+
+        SessionTail(WebSocketSession session, LogTailSubscription subscription) {
+            this.session = session;
+            this.level = subscription.getLevel() == null ? null : Level.getLevel(subscription.getLevel());
+            this.classname = subscription.getClassname() == null ? null : Pattern.compile(subscription.getClassname());
+            this.message = subscription.getMessage() == null ? null : Pattern.compile(subscription.getMessage());
+        }
+
+        boolean matches(LogMessageModel model) {
+            if (level != null) {
+                Level modelLevel = Level.toLevel(model.getLevel(), Level.ALL);
+                if (!modelLevel.isMoreSpecificThan(level)) {
+                    return false;
+                }
+            }
+            if (classname != null && (model.getClassname() == null || !classname.matcher(model.getClassname()).find())) {
+                return false;
+            }
+            return message == null || (model.getMessage() != null && message.matcher(model.getMessage()).find());
+        }
+
+        synchronized void offer(List<LogMessageModel> messages) {
+            for (LogMessageModel model : messages) {
+                if (matches(model)) {
+                    if (queue.size() >= maxQueued) {
+                        queue.removeFirst();
+                        dropped++;
+                    }
+                    queue.addLast(model);
+                }
+            }
+            sendNext();
+        }
+
+        private void sendNext() {
+            if (sending || queue.isEmpty() || !session.isOpen()) {
+                return;
+            }
+
+            List<LogMessageModel> batch = new ArrayList<>(Math.min(queue.size(), MAX_BATCH));
+            while (!queue.isEmpty() && batch.size() < MAX_BATCH) {
+                batch.add(queue.removeFirst());
+            }
+
+            String payload;
+            try {
+                payload = jacksonMapper.writeValueAsString(new WebSocketNotification<>(NOTIFICATION_TYPE, new LogTailModel(batch, dropped)));
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize log messages", e);
+                return;
+            }
+            dropped = 0;
+            sending = true;
+            try {
+                ((JettyWebSocketSession) session).getNativeSession().getRemote().sendString(payload, this);
+            } catch (Exception e) {
+                sending = false;
+                log.warn("Error sending log messages to websocket session", e);
+            }
+        }
+
+        @Override
+        public synchronized void writeSuccess() {
+            sending = false;
+            sendNext();
+        }
+
+        @Override
+        public synchronized void writeFailed(Throwable x) {
+            sending = false;
+            queue.clear();
+        }
+    }
+}
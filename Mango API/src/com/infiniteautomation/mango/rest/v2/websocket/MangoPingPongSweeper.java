@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Timing wheel which checks the Ping/Pong state of every WebSocket session using a single scheduled task.
+ * Sessions are spread over a fixed number of slots and one slot is swept per tick, so each session is
+ * visited once per ping timeout period regardless of how many sessions are connected.
+ *
+ * <p>The scheduled task only picks the sessions to visit, sending the pings and closing sessions is done on the
+ * executor so a slow client can't hold up the wheel.</p>
+ */
+@Component("mangoPingPongSweeperV2")
+public final class MangoPingPongSweeper {
+
+    private final Log log = LogFactory.getLog(this.getClass());
+
+    private final ScheduledExecutorService scheduledExecutor;
+    private final ExecutorService executor;
+    private final int pingPongTimeoutMs;
+    private final List<Set<MangoPingPongTracker>> slots;
+    private final long tickMs;
+
+    /**
+     * Index of the next slot to be swept, only ever incremented
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+    /**
+     * Sessions are assigned to slots round robin so they are spread evenly over the wheel
+     */
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile ScheduledFuture<?> sweepTask;
+
+    @Autowired
+    public MangoPingPongSweeper(ScheduledExecutorService scheduledExecutor, ExecutorService executor,
+            @Value("${web.websocket.pingTimeoutMs:10000}") int pingPongTimeoutMs,
+            @Value("${web.websocket.pingPongWheelSlots:64}") int slotCount) {
+
+        this.scheduledExecutor = scheduledExecutor;
+        this.executor = executor;
+        this.pingPongTimeoutMs = pingPongTimeoutMs;
+
+        int count = Math.max(1, slotCount);
+        List<Set<MangoPingPongTracker>> slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            slots.add(ConcurrentHashMap.newKeySet());
+        }
+        this.slots = Collections.unmodifiableList(slots);
+        this.tickMs = Math.max(1, pingPongTimeoutMs / count);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (this.pingPongTimeoutMs > 0 && this.sweepTask == null) {
+            this.sweepTask = this.scheduledExecutor.scheduleAtFixedRate(this::sweep, this.tickMs, this.tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        ScheduledFuture<?> task = this.sweepTask;
+        if (task != null) {
+            task.cancel(false);
+            this.sweepTask = null;
+        }
+    }
+
+    /**
+     * Start tracking the Ping/Pong state of a session, the first ping is sent when its slot is next swept.
+     *
+     * @param session
+     */
+    public void register(WebSocketSession session) {
+        int slot = Math.floorMod(this.nextSlot.getAndIncrement(), this.slots.size());
+        MangoPingPongTracker tracker = new MangoPingPongTracker(session, slot);
+        Object previous = session.getAttributes().put(MangoWebSocketHandler.PING_PONG_TRACKER_ATTRIBUTE, tracker);
+        if (previous instanceof MangoPingPongTracker) {
+            this.remove((MangoPingPongTracker) previous);
+        }
+        if (this.slots.get(slot).add(tracker)) {
+            this.size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop tracking the Ping/Pong state of a session
+     *
+     * @param session
+     */
+    public void unregister(WebSocketSession session) {
+        Object tracker = session.getAttributes().remove(MangoWebSocketHandler.PING_PONG_TRACKER_ATTRIBUTE);
+        if (tracker instanceof MangoPingPongTracker) {
+            this.remove((MangoPingPongTracker) tracker);
+        }
+    }
+
+    private void remove(MangoPingPongTracker tracker) {
+        if (tracker.slot >= 0 && this.slots.get(tracker.slot).remove(tracker)) {
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sweep the next slot of the wheel, pings are sent to sessions which responded since the last sweep and
+     * those which did not are closed.
+     */
+    void sweep() {
+        int slot = Math.floorMod(this.cursor.getAndIncrement(), this.slots.size());
+        for (MangoPingPongTracker tracker : this.slots.get(slot)) {
+            if (!tracker.getSession().isOpen()) {
+                // may be removed concurrently by unregister(), only the caller whose removal succeeds decrements
+                this.remove(tracker);
+                continue;
+            }
+
+            try {
+                this.executor.execute(tracker);
+            } catch (RejectedExecutionException e) {
+                if (log.isErrorEnabled()) {
+                    log.error("Error checking ping/pong state of WebSocket session " + tracker.getSession().getId(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of sessions currently tracked
+     */
+    public int getSessionCount() {
+        return this.size.get();
+    }
+
+    public int getSlotCount() {
+        return this.slots.size();
+    }
+
+    public long getTickMs() {
+        return this.tickMs;
+    }
+}
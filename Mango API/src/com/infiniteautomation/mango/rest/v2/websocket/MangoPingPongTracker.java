@@ -22,8 +22,22 @@ public class MangoPingPongTracker implements Runnable {
     private final Log log = LogFactory.getLog(this.getClass());
     private final WebSocketSession session;
 
+    /**
+     * Slot of the {@link MangoPingPongSweeper} wheel this tracker is stored in
+     */
+    final int slot;
+
     protected MangoPingPongTracker(WebSocketSession session) {
+        this(session, -1);
+    }
+
+    protected MangoPingPongTracker(WebSocketSession session, int slot) {
         this.session = session;
+        this.slot = slot;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
     }
 
     @Override
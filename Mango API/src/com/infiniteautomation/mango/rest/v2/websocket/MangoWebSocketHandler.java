@@ -6,8 +6,6 @@ package com.infiniteautomation.mango.rest.v2.websocket;
 
 import java.io.IOException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -71,6 +69,10 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     protected PermissionService permissionService;
 
+    @Autowired
+    @Qualifier("mangoPingPongSweeperV2")
+    protected MangoPingPongSweeper pingPongSweeper;
+
     public MangoWebSocketHandler() {
         this(true);
     }
@@ -208,21 +210,17 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * Start the Ping/Pong Tracker for this session
+     * Start the Ping/Pong Tracker for this session, the shared sweeper sends the pings
      */
     private void startPingPong(WebSocketSession session) throws Exception {
-        ScheduledFuture<?> future = this.scheduledExecutor.scheduleAtFixedRate(new MangoPingPongTracker(session), 0, this.pingPongTimeoutMs, TimeUnit.MILLISECONDS);
-        session.getAttributes().put(PING_PONG_TRACKER_ATTRIBUTE, future);
+        this.pingPongSweeper.register(session);
     }
 
     /**
      * Stop the Ping/Pong Tracker for this session
      */
     private void stopPingPong(WebSocketSession session) throws Exception {
-        Object future = session.getAttributes().get(PING_PONG_TRACKER_ATTRIBUTE);
-        if (future instanceof ScheduledFuture) {
-            ((ScheduledFuture<?>) future).cancel(true);
-        }
+        this.pingPongSweeper.unregister(session);
     }
 
     @Override
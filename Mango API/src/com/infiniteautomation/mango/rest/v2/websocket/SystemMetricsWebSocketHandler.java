@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.infiniteautomation.mango.rest.v2.model.system.SystemMetricsHistory;
+import com.infiniteautomation.mango.rest.v2.model.system.SystemMetricsSampleModel;
+import com.serotonin.m2m2.module.ModuleRegistry;
+import com.serotonin.m2m2.module.definitions.permissions.SystemMetricsReadPermissionDefinition;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Pushes every sample taken by {@link SystemMetricsHistory} to the connected sessions
+ */
+@Component
+@WebSocketMapping("/websocket/system-metrics")
+public class SystemMetricsWebSocketHandler extends MultiSessionWebSocketHandler {
+
+    private final SystemMetricsHistory history;
+    private final SystemMetricsReadPermissionDefinition definition;
+    private final Consumer<SystemMetricsSampleModel> listener = this::sampleTaken;
+
+    @Autowired
+    public SystemMetricsWebSocketHandler(SystemMetricsHistory history) {
+        super(true);
+        this.history = history;
+        this.definition = (SystemMetricsReadPermissionDefinition) ModuleRegistry.getPermissionDefinition(SystemMetricsReadPermissionDefinition.PERMISSION);
+        history.addListener(listener);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        history.removeListener(listener);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        User user = getUser(session);
+        if (user == null) {
+            return;
+        } else if (!hasPermission(user)) {
+            if (session.isOpen()) {
+                session.close(MangoWebSocketHandler.NOT_AUTHORIZED);
+            }
+            return;
+        }
+
+        super.afterConnectionEstablished(session);
+    }
+
+    public void sampleTaken(SystemMetricsSampleModel sample) {
+        if (sessions.isEmpty()) return;
+
+        // serialize once for all sessions
+        String message;
+        try {
+            message = jacksonMapper.writeValueAsString(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, sample));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize system metrics", e);
+            return;
+        }
+
+        for (WebSocketSession session : sessions) {
+            User user = getUser(session);
+            if (user != null && hasPermission(user)) {
+                try {
+                    sendStringMessageAsync(session, message);
+                } catch (WebSocketClosedException e) {
+                    // session closed since we got it from the set
+                } catch (WebSocketSendException e) {
+                    log.warn("Error notifying websocket session", e);
+                }
+            }
+        }
+    }
+
+    protected boolean hasPermission(User user) {
+        return permissionService.hasPermission(user, definition.getPermission());
+    }
+}